@@ -0,0 +1,101 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/* The timeout of the queries to SIMBAD, derived from how long they have
+ * been taking lately: a multiple of the 99th percentile of the latencies,
+ * never shorter than 'min' nor longer than 'max'. Until enough latencies
+ * are known, 'max' is used. A fixed timeout is either too short for the
+ * bad days or, as the five seconds there used to be, way too long for the
+ * usual ones, in which SIMBAD answers within a few hundred milliseconds and
+ * a query that has taken five seconds is not going to be answered anyway.
+ *
+ * The latencies are kept in two histograms, the current one and the one
+ * before it, which are rotated every WINDOW queries, so that the timeout
+ * follows SIMBAD when it becomes slower or faster. Queries that time out
+ * are recorded too, with the timeout as their latency, which is the least
+ * they would have taken: otherwise, were SIMBAD to become slower than the
+ * timeout, every query would time out, nothing would ever be recorded, and
+ * the timeout would never grow. */
+
+public class AdaptiveTimeout {
+
+    /* The timeouts shared by all the resolvers, as SIMBAD is the same */
+    public static final AdaptiveTimeout SIMBAD = new AdaptiveTimeout(
+            Duration.ofSeconds(1), Duration.ofSeconds(TargetResolver.TIMEOUT));
+
+    public static final int WINDOW = 1000;
+    public static final int MIN_SAMPLES = 50;
+
+    public volatile Duration min;
+    public volatile Duration max;
+    public volatile double percentile = 99;
+    public volatile double multiplier = 3;
+
+    private volatile LatencyHistogram current = new LatencyHistogram("timeout");
+    private volatile LatencyHistogram previous = null;
+
+    public AdaptiveTimeout(Duration min, Duration max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    /* Records the latency of a query that was answered */
+    public void record(long duration, TimeUnit unit) {
+        LatencyHistogram histogram = this.current;
+        histogram.record(duration, unit);
+        if (histogram.getCount() >= WINDOW) {
+            synchronized (this) {
+                if (this.current == histogram) {
+                    this.previous = histogram;
+                    this.current = new LatencyHistogram("timeout");
+                }
+            }
+        }
+    }
+
+    /* Records a query that was not answered within 'timeout' */
+    public void timed_out(Duration timeout) {
+        this.record(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public Duration timeout() {
+        LatencyHistogram histogram = this.current;
+        if (histogram.getCount() < MIN_SAMPLES && this.previous != null)
+            histogram = this.previous;
+        if (histogram.getCount() < MIN_SAMPLES)
+            return this.max;
+
+        long micros = (long) (histogram.percentile(this.percentile) * this.multiplier);
+        Duration timeout = Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        if (timeout.compareTo(this.min) < 0)
+            return this.min;
+        if (timeout.compareTo(this.max) > 0)
+            return this.max;
+        return timeout;
+    }
+
+    /* Forgets the latencies, going back to 'max' */
+    public synchronized void reset() {
+        this.current = new LatencyHistogram("timeout");
+        this.previous = null;
+    }
+}
@@ -0,0 +1,110 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Maps each of the identifiers of an object to its main identifier in SIMBAD,
+ * so that, once one of them has been resolved, the rest are known to refer to
+ * the same object: "M101", "m 101", "NGC 5457" and "NAME Pinwheel Galaxy" are
+ * all "M 101". ResolutionKey only ignores case and repeated whitespace, as
+ * SIMBAD does, but here all whitespace is ignored, as well as SIMBAD's "NAME"
+ * prefix, since the identifiers indexed are known to exist. If two objects
+ * would then share the same identifier, it is considered ambiguous and not
+ * mapped to either of them.
+ *
+ * Up to 'capacity' identifiers are indexed; after that, new ones are ignored
+ * (they will simply be resolved by SIMBAD). Safe for use by multiple threads. */
+
+public class AliasIndex {
+
+    /* The default maximum number of identifiers */
+    public static final int DEFAULT_CAPACITY = 1000000;
+
+    public final int capacity;
+
+    /* Identifiers, as returned by key(), to main identifiers */
+    private final ConcurrentHashMap<String, String> aliases = new ConcurrentHashMap<String, String>();
+
+    /* The value of the identifiers that belong to more than one object,
+     * compared by reference so that no main identifier can be mistaken for it */
+    private static final String AMBIGUOUS = new String("(ambiguous)");
+
+    public AliasIndex(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    public AliasIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /* Lower case, without whitespace or SIMBAD's "NAME " prefix */
+    public static String key(String identifier) {
+        String key = ResolutionKey.normalize(identifier);
+        if (key.startsWith("name "))
+            key = key.substring(5);
+        StringBuilder compact = new StringBuilder(key.length());
+        for (int index = 0; index < key.length(); index++) {
+            char c = key.charAt(index);
+            if (c != ' ')
+                compact.append(c);
+        }
+        return compact.toString();
+    }
+
+    /* Records that the identifiers, and the main identifier itself, refer to
+     * the object whose main identifier is 'main_id' */
+    public void add(String main_id, String... identifiers) {
+        this.put(AliasIndex.key(main_id), main_id);
+        if (identifiers != null) {
+            for (String identifier : identifiers) {
+                if (identifier != null)
+                    this.put(AliasIndex.key(identifier), main_id);
+            }
+        }
+    }
+
+    private void put(String key, String main_id) {
+        if (key.isEmpty())
+            return;
+        if (this.aliases.size() >= this.capacity && !this.aliases.containsKey(key))
+            return;
+        this.aliases.merge(key, main_id, (known, added) ->
+            (known == AMBIGUOUS || !AliasIndex.key(known).equals(AliasIndex.key(added))) ? AMBIGUOUS : added);
+    }
+
+    /* The main identifier of the object with the given identifier; null if
+     * it is not known, or if it is ambiguous */
+    public String canonical(String targetName) {
+        if (targetName == null)
+            return null;
+        String main_id = this.aliases.get(AliasIndex.key(targetName));
+        return (main_id == AMBIGUOUS) ? null : main_id;
+    }
+
+    /* The number of identifiers indexed, including the ambiguous ones */
+    public int size() {
+        return this.aliases.size();
+    }
+
+    public void clear() {
+        this.aliases.clear();
+    }
+}
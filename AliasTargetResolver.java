@@ -0,0 +1,92 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* A TargetResolver that asks SIMBAD only once per object, whatever the name
+ * by which it is known: as SIMBAD returns all the identifiers of the objects
+ * that it finds, these are recorded in an AliasIndex, and the information of
+ * the object cached under its main identifier. Later queries for any of its
+ * identifiers (e.g., "NGC 5457" after "M101"), or for a different spelling of
+ * them ("M 101"), are then answered from the cache. Targets not found and
+ * connection failures are not cached: decorate this resolver with a
+ * CachingTargetResolver for that. If SIMBAD cannot be reached, expired
+ * information is returned, if any, as CachingTargetResolver does. */
+
+public class AliasTargetResolver extends TargetResolverDecorator {
+
+    public final AliasIndex aliases;
+    public final ResolutionCache cache;
+
+    /* The delegate, and those that it decorates, if any, are made to ask
+     * SIMBAD for the identifiers of the objects, which are not otherwise
+     * requested (see TargetResolver.identifiers) */
+    public AliasTargetResolver(TargetResolver delegate, AliasIndex aliases, ResolutionCache cache) {
+        super(delegate);
+        this.aliases = aliases;
+        this.cache = cache;
+        for (TargetResolver resolver = delegate; resolver != null; ) {
+            resolver.identifiers = true;
+            resolver = (resolver instanceof TargetResolverDecorator)
+                ? ((TargetResolverDecorator) resolver).delegate : null;
+        }
+    }
+
+    public AliasTargetResolver(TargetResolver delegate) {
+        this(delegate, new AliasIndex(), new ResolutionCache());
+    }
+
+    public AliasTargetResolver() {
+        this(new TargetResolver());
+    }
+
+    /* The key of the object in the cache, or null if the name is not known */
+    private ResolutionKey key(String targetName) {
+        String main_id = this.aliases.canonical(targetName);
+        return (main_id == null) ? null : new ResolutionKey(main_id, this.delegate);
+    }
+
+    protected Resolution lookup(String targetName) {
+        ResolutionKey key = this.key(targetName);
+        ResolutionCache.Entry entry = (key == null) ? null : this.cache.get(key);
+        return (entry == null) ? null : AliasTargetResolver.resolution(targetName, entry);
+    }
+
+    protected Resolution fallback(String targetName) {
+        ResolutionKey key = this.key(targetName);
+        ResolutionCache.Entry entry = (key == null) ? null : this.cache.get_stale(key);
+        return (entry == null) ? null : AliasTargetResolver.resolution(targetName, entry);
+    }
+
+    /* A copy of the cached information, under the name that was asked for */
+    private static Resolution resolution(String targetName, ResolutionCache.Entry entry) {
+        TargetInformation info = new TargetInformation(entry.info);
+        info.name = targetName;
+        return new Resolution(targetName, info);
+    }
+
+    /* The name asked for is an identifier of the object, too, even if it is
+     * spelled differently than in the list returned by SIMBAD */
+    protected void record(Resolution resolution) {
+        TargetInformation info = resolution.info;
+        if (info == null || info.main_id == null)
+            return;
+        this.aliases.add(info.main_id, info.identifiers);
+        this.aliases.add(info.main_id, resolution.name);
+        this.cache.put(new ResolutionKey(info.main_id, this.delegate), info);
+    }
+}
@@ -0,0 +1,374 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/* Plots, locally, what Staralt does: the altitude of one or more targets
+ * against time, from their tracks computed by Ephemeris, as PNG images. As
+ * many charts are usually needed at once (e.g., one per target of the night
+ * plus an overview), png(List) renders them in parallel, each thread drawing
+ * on an image of its own that is reused from one chart to the next, instead
+ * of allocating a new one every time. The PNG encoder is also our own, as
+ * ImageIO's takes several times longer than the drawing itself: it uses the
+ * fastest level of compression and the "Sub" filter, which suits the long
+ * runs of background of these charts, and reuses its buffers, too.
+ *
+ * Time (UTC) goes along the horizontal axis, over the whole grid of the
+ * Ephemeris; the altitude, from the horizon up to the zenith, along the
+ * vertical one, with the airmass on the right. Altitudes below 'limit'
+ * (Staralt's default is ten degrees) are shaded. */
+
+public class AltitudePlot {
+
+    public static final int DEFAULT_WIDTH = 800;
+    public static final int DEFAULT_HEIGHT = 500;
+
+    public final int width;
+    public final int height;
+    public double limit = 10.0;  /* degrees */
+
+    /* Margins of the area of the plot, in pixels */
+    private static final int LEFT = 50;
+    private static final int RIGHT = 50;
+    private static final int TOP = 30;
+    private static final int BOTTOM = 40;
+
+    /* Legends longer than this are cut, as they would not fit anyway */
+    private static final int MAX_LEGEND = 12;
+
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color GRID = new Color(0xDDDDDD);
+    private static final Color SHADE = new Color(0xF0F0F0);
+    private static final Color AXES = Color.DARK_GRAY;
+    private static final Color[] PALETTE = {
+        new Color(0x1F77B4), new Color(0xD62728), new Color(0x2CA02C), new Color(0xFF7F0E),
+        new Color(0x9467BD), new Color(0x8C564B), new Color(0xE377C2), new Color(0x7F7F7F),
+        new Color(0xBCBD22), new Color(0x17BECF)
+    };
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+    private static final Font TITLE = new Font(Font.SANS_SERIF, Font.BOLD, 13);
+
+    private static final double[] AIRMASSES = {1.0, 1.2, 1.5, 2.0, 3.0};
+
+    /* What each thread reuses from one chart to the next */
+    private static class Canvas {
+        BufferedImage image = null;
+        byte[] raw = new byte[0];  /* the filtered scanlines */
+        byte[] chunk = new byte[64 * 1024];
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        BufferedImage image(int width, int height) {
+            if (this.image == null || this.image.getWidth() != width || this.image.getHeight() != height)
+                this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            return this.image;
+        }
+    }
+
+    private static final ThreadLocal<Canvas> canvases = ThreadLocal.withInitial(Canvas::new);
+
+    public AltitudePlot(int width, int height) {
+        if (width < LEFT + RIGHT + 100 || height < TOP + BOTTOM + 100)
+            throw new IllegalArgumentException("too small: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+    }
+
+    public AltitudePlot() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    /* Draws the chart on 'image', which must be at least width x height.
+     * Null tracks (targets without coordinates) are skipped. */
+    public void render(Ephemeris night, List<Ephemeris.Track> tracks, String title, BufferedImage image) {
+
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                      RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setColor(BACKGROUND);
+            graphics.fillRect(0, 0, this.width, this.height);
+            this.axes(graphics, night, title);
+
+            graphics.setClip(LEFT, TOP, this.plot_width() + 1, this.plot_height() + 1);
+            graphics.setStroke(new BasicStroke(1.5f));
+            int color = 0;
+            for (Ephemeris.Track track : tracks) {
+                if (track == null)
+                    continue;
+                graphics.setColor(PALETTE[color++ % PALETTE.length]);
+                graphics.draw(this.curve(night, track));
+            }
+            graphics.setClip(null);
+            this.legend(graphics, tracks);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    private int plot_width() {
+        return this.width - LEFT - RIGHT;
+    }
+
+    private int plot_height() {
+        return this.height - TOP - BOTTOM;
+    }
+
+    private double x(Ephemeris night, long millis) {
+        long start = night.millis(0);
+        long span = Math.max(1, night.millis(night.size() - 1) - start);
+        return LEFT + (double) (millis - start) / span * this.plot_width();
+    }
+
+    private double y(double altitude) {
+        return TOP + (90.0 - altitude) / 90.0 * this.plot_height();
+    }
+
+    private Path2D curve(Ephemeris night, Ephemeris.Track track) {
+        Path2D.Double curve = new Path2D.Double(Path2D.WIND_NON_ZERO, night.size());
+        for (int index = 0; index < night.size(); index++) {
+            double x = this.x(night, night.millis(index));
+            double y = this.y(track.altitude[index]);
+            if (index == 0)
+                curve.moveTo(x, y);
+            else
+                curve.lineTo(x, y);
+        }
+        return curve;
+    }
+
+    private void axes(Graphics2D graphics, Ephemeris night, String title) {
+
+        int right = LEFT + this.plot_width();
+        int bottom = TOP + this.plot_height();
+        graphics.setFont(FONT);
+        FontMetrics metrics = graphics.getFontMetrics();
+
+        graphics.setColor(SHADE);
+        int shade = (int) Math.round(this.y(this.limit));
+        graphics.fillRect(LEFT, shade, this.plot_width(), bottom - shade);
+
+        /* Altitude, every fifteen degrees, and airmass */
+        for (int altitude = 0; altitude <= 90; altitude += 15) {
+            int y = (int) Math.round(this.y(altitude));
+            graphics.setColor(GRID);
+            graphics.drawLine(LEFT, y, right, y);
+            graphics.setColor(AXES);
+            String label = Integer.toString(altitude);
+            graphics.drawString(label, LEFT - 6 - metrics.stringWidth(label), y + metrics.getAscent() / 2);
+        }
+        for (double airmass : AIRMASSES) {
+            int y = (int) Math.round(this.y(AltitudePlot.altitude(airmass)));
+            graphics.drawLine(right, y, right + 4, y);
+            graphics.drawString(String.format("%.1f", airmass), right + 7, y + metrics.getAscent() / 2);
+        }
+
+        /* Every hour, on the hour */
+        ZonedDateTime hour = night.time(0).atZone(ZoneOffset.UTC).withMinute(0).withSecond(0).withNano(0);
+        if (hour.toInstant().isBefore(night.time(0)))
+            hour = hour.plusHours(1);
+        for (; !hour.toInstant().isAfter(night.time(night.size() - 1)); hour = hour.plusHours(1)) {
+            int x = (int) Math.round(this.x(night, hour.toInstant().toEpochMilli()));
+            graphics.setColor(GRID);
+            graphics.drawLine(x, TOP, x, bottom);
+            graphics.setColor(AXES);
+            String label = String.format("%02d", hour.getHour());
+            graphics.drawString(label, x - metrics.stringWidth(label) / 2, bottom + metrics.getAscent() + 4);
+        }
+
+        graphics.setColor(AXES);
+        graphics.drawRect(LEFT, TOP, this.plot_width(), this.plot_height());
+        String unit = "UT (hours)";
+        graphics.drawString(unit, LEFT + (this.plot_width() - metrics.stringWidth(unit)) / 2,
+                            this.height - 6);
+        graphics.drawString("Altitude", 4, TOP - 8);
+        graphics.drawString("Airmass", right - metrics.stringWidth("Airmass") / 2, TOP - 8);
+        if (title != null) {
+            graphics.setFont(TITLE);
+            int width = graphics.getFontMetrics().stringWidth(title);
+            graphics.drawString(title, LEFT + (this.plot_width() - width) / 2, TOP - 10);
+        }
+    }
+
+    /* The altitude at which Ephemeris.airmass() is the given one */
+    static double altitude(double airmass) {
+        double low = 0.0, high = 90.0;
+        for (int iteration = 0; iteration < 40; iteration++) {
+            double middle = (low + high) / 2;
+            if (Ephemeris.airmass(middle) > airmass)
+                low = middle;
+            else
+                high = middle;
+        }
+        return (low + high) / 2;
+    }
+
+    private void legend(Graphics2D graphics, List<Ephemeris.Track> tracks) {
+        graphics.setFont(FONT);
+        FontMetrics metrics = graphics.getFontMetrics();
+        int line = metrics.getHeight();
+        int x = LEFT + this.plot_width() - 10;
+        int y = TOP + 8;
+        int color = 0;
+        int shown = 0;
+        for (Ephemeris.Track track : tracks) {
+            if (track == null)
+                continue;
+            Color colour = PALETTE[color++ % PALETTE.length];
+            if (shown++ == MAX_LEGEND) {
+                AltitudePlot.label(graphics, metrics, "...", Color.GRAY, x, y);
+                break;
+            }
+            AltitudePlot.label(graphics, metrics, track.info.name, colour, x, y);
+            y += line;
+        }
+    }
+
+    /* Right-aligned at x, with a sample of the colour of the curve */
+    private static void label(Graphics2D graphics, FontMetrics metrics, String text,
+                              Color colour, int x, int y) {
+        int width = metrics.stringWidth(text);
+        graphics.setColor(colour);
+        graphics.fillRect(x - width - 16, y + 3, 10, 4);
+        graphics.setColor(AXES);
+        graphics.drawString(text, x - width, y + metrics.getAscent() - 2);
+    }
+
+    /* The chart as a PNG image, drawn on the image of this thread */
+    public byte[] png(Ephemeris night, List<Ephemeris.Track> tracks, String title) {
+        Canvas canvas = canvases.get();
+        BufferedImage image = canvas.image(this.width, this.height);
+        this.render(night, tracks, title, image);
+        return AltitudePlot.encode(image, canvas);
+    }
+
+    /* Several charts, in parallel in the common fork-join pool, in order */
+    public List<byte[]> png(Ephemeris night, List<List<Ephemeris.Track>> charts, List<String> titles) {
+        return IntStream.range(0, charts.size()).parallel()
+                .mapToObj(index -> this.png(night, charts.get(index),
+                                            (titles == null) ? null : titles.get(index)))
+                .collect(Collectors.toList());
+    }
+
+    public void write(Ephemeris night, List<Ephemeris.Track> tracks, String title, Path path)
+            throws IOException {
+        Files.write(path, this.png(night, tracks, title));
+    }
+
+    /* A new image, for those who want to draw something else on it */
+    public BufferedImage image(Ephemeris night, List<Ephemeris.Track> tracks, String title) {
+        BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+        this.render(night, tracks, title, image);
+        return image;
+    }
+
+    /* Encodes an RGB image as PNG: the signature, the header, the filtered
+     * and compressed pixels and the end marker, each chunk with its CRC */
+    static byte[] encode(BufferedImage image) {
+        return AltitudePlot.encode(image, new Canvas());
+    }
+
+    private static byte[] encode(BufferedImage image, Canvas canvas) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int stride = 1 + 3 * width;
+        if (canvas.raw.length < height * stride)
+            canvas.raw = new byte[height * stride];
+        byte[] raw = canvas.raw;
+
+        /* Sub: each byte minus the same one of the pixel to its left */
+        int position = 0;
+        for (int y = 0; y < height; y++) {
+            raw[position++] = 1;
+            int previous = 0;
+            for (int x = 0, offset = y * width; x < width; x++) {
+                int pixel = pixels[offset + x];
+                raw[position++] = (byte) ((pixel >> 16) - (previous >> 16));
+                raw[position++] = (byte) ((pixel >> 8) - (previous >> 8));
+                raw[position++] = (byte) (pixel - previous);
+                previous = pixel;
+            }
+        }
+
+        Deflater deflater = canvas.deflater;
+        ByteArrayOutputStream compressed = canvas.compressed;
+        deflater.reset();
+        compressed.reset();
+        deflater.setInput(raw, 0, height * stride);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int length = deflater.deflate(canvas.chunk);
+            compressed.write(canvas.chunk, 0, length);
+        }
+
+        try {
+            ByteArrayOutputStream png = new ByteArrayOutputStream(compressed.size() + 64);
+            DataOutputStream out = new DataOutputStream(png);
+            out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+            ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+            DataOutputStream fields = new DataOutputStream(header);
+            fields.writeInt(width);
+            fields.writeInt(height);
+            fields.write(new byte[] {8, 2, 0, 0, 0});  /* 8 bits, RGB, deflate, adaptive, no interlace */
+            AltitudePlot.chunk(out, "IHDR", header.toByteArray(), header.size());
+            AltitudePlot.chunk(out, "IDAT", compressed.toByteArray(), compressed.size());
+            AltitudePlot.chunk(out, "IEND", new byte[0], 0);
+            return png.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);  /* cannot happen in memory */
+        }
+    }
+
+    private static void chunk(DataOutputStream out, String type, byte[] data, int length)
+            throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,111 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class AltitudePlotTest {
+
+    private static final Ephemeris night = new Staralt().ephemeris(15, 10, 2026);
+
+    private static Ephemeris.Track track(String name, double ra_deg, double dec_deg) {
+        return night.compute(EphemerisTest.target(name, ra_deg, dec_deg));
+    }
+
+    private static BufferedImage decode(byte[] png) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    /* Our encoder must produce exactly the pixels that were drawn */
+    @Test
+    public void testEncode() throws IOException {
+        AltitudePlot plot = new AltitudePlot();
+        BufferedImage image = plot.image(night, Arrays.asList(track("M52", 351.2, 61.593)), "M52");
+        BufferedImage decoded = decode(AltitudePlot.encode(image));
+        assertEquals(plot.width, decoded.getWidth());
+        assertEquals(plot.height, decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                assertEquals((image.getRGB(x, y) & 0xFFFFFF), (decoded.getRGB(x, y) & 0xFFFFFF));
+    }
+
+    /* M52 culminates at about 81 degrees: its curve, the first one, must be there */
+    @Test
+    public void testCurve() throws IOException {
+        Ephemeris.Track m52 = track("M52", 351.2, 61.593);
+        AltitudePlot plot = new AltitudePlot();
+        BufferedImage image = decode(plot.png(night, Arrays.asList(m52, null), null));
+
+        int highest = m52.highest();
+        int x = (int) Math.round(50 + (double) highest / (night.size() - 1) * (plot.width - 100));
+        boolean found = false;
+        for (int y = 30; y < plot.height - 40 && !found; y++) {
+            int pixel = image.getRGB(x, y) & 0xFFFFFF;
+            found = (pixel & 0xFF) > 0x80 && (pixel >> 16) < 0x80;  /* blueish */
+        }
+        assertTrue(found);
+    }
+
+    /* Rendering in parallel, on reused images, gives the same charts */
+    @Test
+    public void testParallel() {
+        List<List<Ephemeris.Track>> charts = new ArrayList<List<Ephemeris.Track>>();
+        List<String> titles = new ArrayList<String>();
+        for (int index = 0; index < 24; index++) {
+            List<Ephemeris.Track> tracks = new ArrayList<Ephemeris.Track>();
+            for (int target = 0; target <= index % 5; target++)
+                tracks.add(track("T" + index + "-" + target, 15.0 * index + target, 10.0 * target));
+            charts.add(tracks);
+            titles.add("Chart " + index);
+        }
+
+        AltitudePlot plot = new AltitudePlot();
+        List<byte[]> parallel = plot.png(night, charts, titles);
+        assertEquals(charts.size(), parallel.size());
+        for (int index = 0; index < charts.size(); index++)
+            assertArrayEquals(plot.png(night, charts.get(index), titles.get(index)), parallel.get(index));
+    }
+
+    @Test
+    public void testAirmass() {
+        assertEquals(1.0, Ephemeris.airmass(AltitudePlot.altitude(1.0)), 1e-6);
+        assertEquals(1.5, Ephemeris.airmass(AltitudePlot.altitude(1.5)), 1e-6);
+        assertEquals(30.0, AltitudePlot.altitude(Ephemeris.airmass(30.0)), 1e-6);
+    }
+
+    @Test
+    public void testTooSmall() {
+        try {
+            new AltitudePlot(100, 100);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+            /* As expected */
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Resolves large lists of targets, such as those that the schedulers need at
+ * planning time, running each lookup in a thread of its own. These threads
+ * are virtual when the JVM supports them (Java 21 and later), so thousands of
+ * them, most of the time just waiting for SIMBAD, are cheap; otherwise, we
+ * fall back to regular daemon threads. In any case, no more than 'concurrency'
+ * lookups are in flight at the same time, in order not to flood SIMBAD.
+ *
+ * The results are returned in the order in which the lookups complete, not
+ * in that of the targets, so that they can be consumed as soon as they are
+ * available. A lookup does not free its slot until its result has been
+ * consumed, so a slow consumer also slows down the resolution. */
+
+public class BulkResolver {
+
+    /* The default maximum number of lookups in flight */
+    public static final int DEFAULT_CONCURRENCY = 32;
+
+    public TargetResolver resolver;
+    public int concurrency;
+
+    /* Virtual threads if available, platform ones otherwise */
+    private static final ThreadFactory threadFactory = BulkResolver.thread_factory();
+
+    public BulkResolver(TargetResolver resolver, int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive");
+        this.resolver = resolver;
+        this.concurrency = concurrency;
+    }
+
+    public BulkResolver(TargetResolver resolver) {
+        this(resolver, DEFAULT_CONCURRENCY);
+    }
+
+    /* Thread.ofVirtual() does not exist before Java 21, hence the reflection */
+    private static ThreadFactory thread_factory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            final AtomicInteger counter = new AtomicInteger();
+            return new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "bulk-resolver-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+    }
+
+    /* Starts the resolution of the targets, which are read from 'targetNames'
+     * only as slots become available, and returns the results as they are
+     * completed. Close the Results if they are not consumed until the end, so
+     * that no more lookups are started. */
+
+    public Results resolve(Iterable<String> targetNames) {
+        Results results = new Results(this.concurrency);
+        Thread feeder = threadFactory.newThread(new Feeder(targetNames.iterator(), results));
+        results.feeder = feeder;
+        feeder.start();
+        return results;
+    }
+
+    /* Reads the targets and starts a lookup for each one of them, waiting
+     * whenever there are already 'concurrency' of them in flight */
+
+    private class Feeder implements Runnable {
+
+        private final Iterator<String> targetNames;
+        private final Results results;
+
+        Feeder(Iterator<String> targetNames, Results results) {
+            this.targetNames = targetNames;
+            this.results = results;
+        }
+
+        public void run() {
+            int submitted = 0;
+            try {
+                while (this.targetNames.hasNext()) {
+                    final String targetName = this.targetNames.next();
+                    this.results.slots.acquire();
+                    threadFactory.newThread(new Runnable() {
+                        public void run() {
+                            results.completed.add(BulkResolver.this.lookup(targetName));
+                        }
+                    }).start();
+                    submitted++;
+                }
+            } catch (InterruptedException ex) {
+                /* The Results were closed: do not start any more lookups */
+            } finally {
+                this.results.total = submitted;
+                this.results.completed.add(Results.END);
+            }
+        }
+    }
+
+    private Resolution lookup(String targetName) {
+        try {
+            return new Resolution(targetName, this.resolver.submit(targetName));
+        } catch (TargetNotFoundException ex) {
+            return new Resolution(targetName, ex);
+        } catch (SIMBADQueryException ex) {
+            return new Resolution(targetName, ex);
+        }
+    }
+
+    /* The results of a bulk resolution, in order of completion */
+
+    public static class Results implements Iterator<Resolution>, AutoCloseable {
+
+        /* Signals that the feeder is done, and therefore 'total' is known */
+        private static final Resolution END = new Resolution(null, (TargetInformation) null);
+
+        /* Package-private, so that the tests can check that close() frees them */
+        final Semaphore slots;
+        private final LinkedBlockingQueue<Resolution> completed = new LinkedBlockingQueue<Resolution>();
+        Thread feeder = null;
+        private volatile int total = -1;  /* the number of lookups started */
+        private int taken = 0;            /* and that of results consumed */
+        private Resolution next = null;
+
+        Results(int concurrency) {
+            this.slots = new Semaphore(concurrency);
+        }
+
+        public boolean hasNext() {
+            while (this.next == null) {
+                if (this.total == this.taken)
+                    return false;
+                try {
+                    Resolution resolution = this.completed.take();
+                    if (resolution != END)
+                        this.next = resolution;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Resolution next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            Resolution resolution = this.next;
+            this.next = null;
+            this.taken++;
+            this.slots.release();
+            return resolution;
+        }
+
+        /* Stops starting new lookups; those already in flight are completed,
+         * and their results can still be consumed */
+        public void close() {
+            this.feeder.interrupt();
+        }
+    }
+
+    /* An illustration of how BulkResolver might be used in real code: the
+     * targets, one per line, are read from the file given as argument */
+    public static void main(String[] args) throws IOException {
+
+        BulkResolver bulk = new BulkResolver(new TargetResolver());
+        List<String> targetNames = Files.readAllLines(Paths.get(args[0]));
+
+        Results results = bulk.resolve(targetNames);
+        while (results.hasNext()) {
+            Resolution resolution = results.next();
+            String outcome;
+            if (resolution.found())
+                outcome = "OK";
+            else if (resolution.error instanceof TargetNotFoundException)
+                outcome = "not found!";
+            else
+                outcome = "connection failed";
+            System.out.printf("%s --> %s%n", resolution.name, outcome);
+        }
+        System.exit(0);
+    }
+}
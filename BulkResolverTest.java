@@ -0,0 +1,158 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* BulkResolver against SIMBADStandIn, with some latency, so that lookups
+ * really overlap */
+
+public class BulkResolverTest {
+
+    private static SIMBADStandIn standIn;
+    private static String simbadBaseURL;
+
+    @BeforeClass
+    public static void SetUp() throws IOException {
+        standIn = new SIMBADStandIn(SIMBADStandIn.fixtures()).start();
+        simbadBaseURL = SIMBADQuerier._simbadBaseURL;
+        SIMBADQuerier._simbadBaseURL = standIn.url();
+    }
+
+    @AfterClass
+    public static void TearDown() {
+        SIMBADQuerier._simbadBaseURL = simbadBaseURL;
+        standIn.stop();
+    }
+
+    /* Keeps track of how many lookups are in flight at the same time */
+    private static class CountingResolver extends TargetResolver {
+
+        final AtomicInteger in_flight = new AtomicInteger();
+        final AtomicInteger max_in_flight = new AtomicInteger();
+        final AtomicInteger submitted = new AtomicInteger();
+
+        public TargetInformation submit(String targetName)
+                throws SIMBADQueryException, TargetNotFoundException {
+            this.submitted.incrementAndGet();
+            this.max_in_flight.accumulateAndGet(this.in_flight.incrementAndGet(), Math::max);
+            try {
+                return super.submit(targetName);
+            } finally {
+                this.in_flight.decrementAndGet();
+            }
+        }
+    }
+
+    /* The first 'count' targets of SIMBAD_objects, all of them known */
+    private static List<String> targets(int count) throws IOException {
+        List<String> targetNames = new ArrayList<String>();
+        try (TargetListReader reader = TargetListReader.open(Paths.get(SIMBADStandIn.OBJECTS_PATH))) {
+            while (reader.hasNext() && targetNames.size() < count)
+                targetNames.add(reader.next());
+        }
+        return targetNames;
+    }
+
+    private static void reset() {
+        standIn.latency = 0;
+        standIn.jitter = 0;
+        standIn.failure_rate = 0;
+        standIn.error_rate = 0;
+        standIn.fail_next.set(0);
+        CircuitBreaker.SIMBAD.reset();
+        AdaptiveTimeout.SIMBAD.reset();
+    }
+
+    /* Never more than 'concurrency' in flight, and exactly one result per
+     * name, whether or not it was found */
+    @Test
+    public void testResolve() throws IOException {
+        reset();
+        standIn.latency = 20;
+        standIn.jitter = 10;
+
+        List<String> targetNames = targets(150);
+        for (int index = 0; index < 10; index++)
+            targetNames.add(TargetResolverTest.randomString());
+
+        CountingResolver resolver = new CountingResolver();
+        BulkResolver bulk = new BulkResolver(resolver, 8);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        int found = 0;
+        try (BulkResolver.Results results = bulk.resolve(targetNames)) {
+            while (results.hasNext()) {
+                Resolution resolution = results.next();
+                Integer count = counts.get(resolution.name);
+                counts.put(resolution.name, (count == null) ? 1 : count + 1);
+                if (resolution.found())
+                    found++;
+                else
+                    assertTrue(resolution.error instanceof TargetNotFoundException);
+            }
+        }
+
+        assertEquals(targetNames.size(), counts.size());
+        for (String targetName : targetNames)
+            assertEquals(Integer.valueOf(1), counts.get(targetName));
+        assertEquals(150, found);
+        assertTrue(resolver.max_in_flight.get() <= 8);
+        assertTrue(resolver.max_in_flight.get() > 1);
+        reset();
+    }
+
+    /* Once closed, no more lookups are started: the feeder thread exits and,
+     * once the results in flight are consumed, every slot is free again */
+    @Test
+    public void testClose() throws IOException, InterruptedException {
+        reset();
+        standIn.latency = 20;
+
+        List<String> targetNames = targets(500);
+        CountingResolver resolver = new CountingResolver();
+        BulkResolver bulk = new BulkResolver(resolver, 4);
+        BulkResolver.Results results = bulk.resolve(targetNames);
+        int consumed = 0;
+        while (consumed < 10 && results.hasNext()) {
+            results.next();
+            consumed++;
+        }
+        results.close();
+        results.feeder.join(5000);
+        assertFalse(results.feeder.isAlive());
+
+        while (results.hasNext()) {
+            results.next();
+            consumed++;
+        }
+        assertTrue(consumed <= 10 + 4 + 1);
+        assertEquals(consumed, resolver.submitted.get());
+        assertEquals(4, results.slots.availablePermits());
+        reset();
+    }
+}
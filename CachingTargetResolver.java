@@ -0,0 +1,74 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* A TargetResolver that remembers the outcome of its queries, so that asking
+ * again for the same target (as observers do, over and over, during a night)
+ * does not need another round trip to SIMBAD. Both the targets found and those
+ * that could not be found are cached, but not the connection failures. The
+ * queries themselves are delegated to another TargetResolver, whose reference
+ * system, epoch and equinox are therefore also those of this resolver.
+ * If SIMBAD cannot be reached, expired information is returned, if any. */
+
+public class CachingTargetResolver extends TargetResolverDecorator {
+
+    public final ResolutionCache cache;
+
+    public CachingTargetResolver(TargetResolver delegate, ResolutionCache cache) {
+        super(delegate);
+        this.cache = cache;
+    }
+
+    public CachingTargetResolver(TargetResolver delegate) {
+        this(delegate, new ResolutionCache());
+    }
+
+    public CachingTargetResolver() {
+        this(new TargetResolver());
+    }
+
+    protected Resolution lookup(String targetName) {
+        ResolutionCache.Entry entry = this.cache.get(new ResolutionKey(targetName, this.delegate));
+        if (entry == null)
+            return null;
+        if (!entry.found())
+            return new Resolution(targetName, new TargetNotFoundException());
+        return CachingTargetResolver.resolution(targetName, entry);
+    }
+
+    protected Resolution fallback(String targetName) {
+        ResolutionCache.Entry entry = this.cache.get_stale(new ResolutionKey(targetName, this.delegate));
+        return (entry == null) ? null : CachingTargetResolver.resolution(targetName, entry);
+    }
+
+    /* A copy of the cached information, under the name that was asked for
+     * this time, which may be spelled differently than the one cached */
+    private static Resolution resolution(String targetName, ResolutionCache.Entry entry) {
+        TargetInformation info = new TargetInformation(entry.info);
+        info.name = targetName;
+        return new Resolution(targetName, info);
+    }
+
+    protected void record(Resolution resolution) {
+        ResolutionKey key = new ResolutionKey(resolution.name, this.delegate);
+        if (resolution.found())
+            this.cache.put(key, resolution.info);
+        else if (resolution.error instanceof TargetNotFoundException)
+            this.cache.put_not_found(key);
+    }
+}
@@ -0,0 +1,91 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* Stops sending queries to SIMBAD while it is down. After 'threshold'
+ * failures in a row, the breaker opens, and every query fails right away,
+ * without waiting for a timeout, during 'open_time' milliseconds. Then a
+ * single query is let through, as a probe: if it is answered, the breaker
+ * closes again, and otherwise it stays open for another 'open_time'.
+ *
+ * Without it, every resolution during an outage blocks its caller for the
+ * full timeout (times the number of attempts), so that resolving a long
+ * list of targets can take hours before it is clear that nothing works. */
+
+public class CircuitBreaker {
+
+    /* Shared by all the resolvers, as SIMBAD being down affects all of them */
+    public static final CircuitBreaker SIMBAD = new CircuitBreaker(5, 30000);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public final int threshold;
+    public final long open_time;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long opened = 0;  /* System.nanoTime() */
+
+    public CircuitBreaker(int threshold, long open_time) {
+        this.threshold = threshold;
+        this.open_time = open_time;
+    }
+
+    /* Whether a query may be sent now. If it returns true, success() or
+     * failure() must be called once the query is answered or fails. */
+    public synchronized boolean allow() {
+        switch (this.state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.nanoTime() - this.opened >= this.open_time * 1000000L) {
+                this.state = State.HALF_OPEN;  /* this query is the probe */
+                return true;
+            }
+            return false;
+        default: /* the probe has not been answered yet */
+            return false;
+        }
+    }
+
+    public synchronized void success() {
+        this.state = State.CLOSED;
+        this.failures = 0;
+    }
+
+    public synchronized void failure() {
+        this.failures++;
+        if (this.state == State.HALF_OPEN || this.failures >= this.threshold) {
+            this.state = State.OPEN;
+            this.opened = System.nanoTime();
+        }
+    }
+
+    public synchronized State state() {
+        return this.state;
+    }
+
+    public synchronized void reset() {
+        this.state = State.CLOSED;
+        this.failures = 0;
+    }
+
+    public synchronized String toString() {
+        return this.state + " (" + this.failures + " failures in a row)";
+    }
+}
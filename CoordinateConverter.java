@@ -0,0 +1,255 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* Converts coordinates between the celestial reference systems allowed by
+ * SIMBAD (see ReferenceSystem), and propagates them in time using the proper
+ * motions, so that a target resolved once, in ICRS, can be given in any other
+ * system, epoch and equinox without having to ask SIMBAD again.
+ *
+ * The conversions are rotations of the unit vector of the position, going
+ * through ICRS: FK5 includes the frame bias and the IAU 1976 precession from
+ * J2000 to the equinox; FK4 uses the FK5 J2000 to FK4 B1950 rotation (the
+ * E-terms of aberration, up to 0.34 arcsec, are ignored) and Newcomb's
+ * precession from B1950 to the (Besselian) equinox; GAL and SGAL are the
+ * Galactic and de Vaucouleurs' supergalactic systems, for which the equinox
+ * is meaningless; and ECL is the mean ecliptic and equinox of the equinox,
+ * via FK5. Proper motions, in mas/yr, are those that SIMBAD gives: in ICRS,
+ * the one in right ascension multiplied by the cosine of the declination.
+ * Parallax and radial velocity are not taken into account. */
+
+public class CoordinateConverter {
+
+    private static final double ARCSEC = Math.PI / (180.0 * 3600.0);
+    private static final double MAS = ARCSEC / 1000.0;
+
+    /* ICRS to Galactic, as defined for the Hipparcos catalogue */
+    private static final double[][] ICRS_TO_GAL = {
+        {-0.0548755604162154, -0.8734370902348850, -0.4838350155487132},
+        {+0.4941094278755837, -0.4448296299600112, +0.7469822444972189},
+        {-0.8676661490190047, -0.1980763734312015, +0.4559837761750669}
+    };
+
+    /* Galactic to supergalactic: the north supergalactic pole is at l=47.37,
+     * b=+6.32 and the origin of supergalactic longitude at l=137.37, b=0 */
+    private static final double[][] GAL_TO_SGAL = {
+        {-0.7357425748043749, +0.6772612964138943, +0.0000000000000000},
+        {-0.0745537783652337, -0.0809914713069767, +0.9939225903997749},
+        {+0.6731453021092076, +0.7312711658169645, +0.1100812622247821}
+    };
+
+    /* FK5 J2000 to FK4 B1950, without the E-terms of aberration: the
+     * transpose of the position part of the FK4 to FK5 matrix of Standish */
+    private static final double[][] FK5_TO_FK4 = {
+        {+0.9999256782, +0.0111820610, +0.0048579479},
+        {-0.0111820611, +0.9999374784, -0.0000271474},
+        {-0.0048579477, -0.0000271765, +0.9999881997}
+    };
+
+    /* The frame bias, from ICRS to the mean equator and equinox of J2000 */
+    private static final double[][] ICRS_TO_FK5 = CoordinateConverter.multiply(
+            CoordinateConverter.rotate_x(6.8192 * MAS),
+            CoordinateConverter.multiply(CoordinateConverter.rotate_y(-16.617 * MAS),
+                                         CoordinateConverter.rotate_z(-14.6 * MAS)));
+
+    /* Rotation matrices about each of the axes, for an angle in radians */
+    private static double[][] rotate_x(double angle) {
+        double c = Math.cos(angle), s = Math.sin(angle);
+        return new double[][] {{1, 0, 0}, {0, c, s}, {0, -s, c}};
+    }
+
+    private static double[][] rotate_y(double angle) {
+        double c = Math.cos(angle), s = Math.sin(angle);
+        return new double[][] {{c, 0, -s}, {0, 1, 0}, {s, 0, c}};
+    }
+
+    private static double[][] rotate_z(double angle) {
+        double c = Math.cos(angle), s = Math.sin(angle);
+        return new double[][] {{c, s, 0}, {-s, c, 0}, {0, 0, 1}};
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b) {
+        double[][] product = new double[3][3];
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                product[i][j] = a[i][0] * b[0][j] + a[i][1] * b[1][j] + a[i][2] * b[2][j];
+        return product;
+    }
+
+    private static double[][] transpose(double[][] m) {
+        double[][] t = new double[3][3];
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                t[i][j] = m[j][i];
+        return t;
+    }
+
+    private static double[] apply(double[][] m, double[] v) {
+        return new double[] {
+            m[0][0] * v[0] + m[0][1] * v[1] + m[0][2] * v[2],
+            m[1][0] * v[0] + m[1][1] * v[1] + m[1][2] * v[2],
+            m[2][0] * v[0] + m[2][1] * v[1] + m[2][2] * v[2]
+        };
+    }
+
+    /* IAU 1976 precession, from J2000 to the mean equinox of the given year */
+    private static double[][] precession_fk5(double equinox) {
+        double t = (equinox - 2000.0) / 100.0;
+        double zeta = (2306.2181 + (0.30188 + 0.017998 * t) * t) * t * ARCSEC;
+        double z = (2306.2181 + (1.09468 + 0.018203 * t) * t) * t * ARCSEC;
+        double theta = (2004.3109 - (0.42665 + 0.041833 * t) * t) * t * ARCSEC;
+        return CoordinateConverter.multiply(CoordinateConverter.rotate_z(-z),
+               CoordinateConverter.multiply(CoordinateConverter.rotate_y(theta),
+                                            CoordinateConverter.rotate_z(-zeta)));
+    }
+
+    /* Newcomb's precession, from B1950 to the mean equinox of the given year */
+    private static double[][] precession_fk4(double equinox) {
+        double t0 = 0.5;  /* B1950, in tropical centuries since B1900 */
+        double t = (equinox - 1950.0) / 100.0;
+        double zeta = ((2304.250 + 1.396 * t0) + (0.302 + 0.018 * t) * t) * t * ARCSEC;
+        double z = zeta + 0.791 * t * t * ARCSEC;
+        double theta = ((2004.682 - 0.853 * t0) - (0.426 + 0.042 * t) * t) * t * ARCSEC;
+        return CoordinateConverter.multiply(CoordinateConverter.rotate_z(-z),
+               CoordinateConverter.multiply(CoordinateConverter.rotate_y(theta),
+                                            CoordinateConverter.rotate_z(-zeta)));
+    }
+
+    /* The mean obliquity of the ecliptic at the given year, in radians */
+    private static double obliquity(double equinox) {
+        double t = (equinox - 2000.0) / 100.0;
+        return (84381.448 - (46.8150 + (0.00059 - 0.001813 * t) * t) * t) * ARCSEC;
+    }
+
+    /* The rotation from ICRS to the reference system at the given equinox */
+    public static double[][] rotation(ReferenceSystem system, double equinox) {
+        switch (system) {
+        case ICRS:
+            return new double[][] {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+        case FK5:
+            return CoordinateConverter.multiply(
+                    CoordinateConverter.precession_fk5(equinox), ICRS_TO_FK5);
+        case FK4:
+            return CoordinateConverter.multiply(CoordinateConverter.precession_fk4(equinox),
+                   CoordinateConverter.multiply(FK5_TO_FK4, ICRS_TO_FK5));
+        case GAL:
+            return ICRS_TO_GAL;
+        case SGAL:
+            return CoordinateConverter.multiply(GAL_TO_SGAL, ICRS_TO_GAL);
+        case ECL:
+            return CoordinateConverter.multiply(
+                    CoordinateConverter.rotate_x(CoordinateConverter.obliquity(equinox)),
+                    CoordinateConverter.rotation(ReferenceSystem.FK5, equinox));
+        default:
+            throw new IllegalArgumentException("unknown reference system: " + system);
+        }
+    }
+
+    /* The unit vector of a position given in decimal degrees */
+    public static double[] vector(double lon_deg, double lat_deg) {
+        double lon = Math.toRadians(lon_deg);
+        double lat = Math.toRadians(lat_deg);
+        return new double[] {Math.cos(lat) * Math.cos(lon),
+                             Math.cos(lat) * Math.sin(lon),
+                             Math.sin(lat)};
+    }
+
+    /* And back: longitude in [0, 360) and latitude, in decimal degrees */
+    public static double[] angles(double[] v) {
+        double lon = Math.toDegrees(Math.atan2(v[1], v[0]));
+        double lat = Math.toDegrees(Math.atan2(v[2], Math.hypot(v[0], v[1])));
+        if (lon < 0)
+            lon += 360.0;
+        if (lon >= 360.0)
+            lon -= 360.0;
+        return new double[] {lon, lat};
+    }
+
+    /* Converts a position between reference systems, both at their equinox */
+    public static double[] convert(double lon_deg, double lat_deg,
+                                   ReferenceSystem from, double from_equinox,
+                                   ReferenceSystem to, double to_equinox) {
+        double[] icrs = CoordinateConverter.apply(CoordinateConverter.transpose(
+                CoordinateConverter.rotation(from, from_equinox)),
+                CoordinateConverter.vector(lon_deg, lat_deg));
+        return CoordinateConverter.angles(CoordinateConverter.apply(
+                CoordinateConverter.rotation(to, to_equinox), icrs));
+    }
+
+    /* Moves an ICRS position from one epoch to another, in years, along the
+     * great circle given by the proper motions (mas/yr, as described above) */
+    public static double[] propagate(double ra_deg, double dec_deg, double pm_ra, double pm_dec,
+                                     double from_epoch, double to_epoch) {
+
+        double ra = Math.toRadians(ra_deg);
+        double dec = Math.toRadians(dec_deg);
+        double[] p = CoordinateConverter.vector(ra_deg, dec_deg);
+
+        /* The unit vectors towards the east and the north, and the motion */
+        double[] east = {-Math.sin(ra), Math.cos(ra), 0};
+        double[] north = {-Math.sin(dec) * Math.cos(ra), -Math.sin(dec) * Math.sin(ra), Math.cos(dec)};
+        double mu = Math.hypot(pm_ra, pm_dec) * MAS;
+        if (mu == 0)
+            return new double[] {ra_deg, dec_deg};
+
+        double angle = mu * (to_epoch - from_epoch);
+        double[] direction = new double[3];
+        for (int i = 0; i < 3; i++)
+            direction[i] = (pm_ra * east[i] + pm_dec * north[i]) * MAS / mu;
+
+        double[] moved = new double[3];
+        for (int i = 0; i < 3; i++)
+            moved[i] = p[i] * Math.cos(angle) + direction[i] * Math.sin(angle);
+        return CoordinateConverter.angles(moved);
+    }
+
+    /* Returns a copy of the information of the target, with the coordinates
+     * in the given reference system, epoch and equinox. The proper motions,
+     * if known, are used to move the target to the new epoch; otherwise, the
+     * position is assumed to be the same at all epochs. */
+    public static TargetInformation transform(TargetInformation info, ReferenceSystem system,
+                                              int epoch, int equinox) {
+
+        TargetInformation converted = new TargetInformation(info);
+        converted.system = system;
+        converted.epoch = epoch;
+        converted.equinox = equinox;
+        if (info.ra_deg == null || info.dec_deg == null || info.system == null)
+            return converted;
+
+        double[] position = {info.ra_deg, info.dec_deg};
+        int from_equinox = (info.equinox == null) ? 2000 : info.equinox;
+        if (info.system != ReferenceSystem.ICRS) {
+            position = CoordinateConverter.convert(position[0], position[1], info.system,
+                                                   from_equinox, ReferenceSystem.ICRS, 2000);
+        }
+
+        if (info.pm_ra != null && info.pm_dec != null && info.epoch != null) {
+            position = CoordinateConverter.propagate(position[0], position[1],
+                                                     info.pm_ra, info.pm_dec, info.epoch, epoch);
+        }
+
+        position = CoordinateConverter.convert(position[0], position[1],
+                                               ReferenceSystem.ICRS, 2000, system, equinox);
+        converted.ra_deg = position[0];
+        converted.dec_deg = position[1];
+        converted.ra = TargetResolver.format_ra(converted.ra_deg);
+        converted.dec = TargetResolver.format_dec(converted.dec_deg);
+        return converted;
+    }
+}
@@ -0,0 +1,134 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CoordinateConverterTest {
+
+    /* Maximum delta, in degrees, for which two coordinates are considered
+     * equal: about a tenth of an arcsecond */
+    private static double delta = 0.00003;
+
+    private static void assertPosition(double lon, double lat, double[] position, double delta) {
+        double dlon = Math.abs(lon - position[0]);
+        dlon = Math.min(dlon, 360.0 - dlon) * Math.cos(Math.toRadians(lat));
+        assertEquals(0.0, dlon, delta);
+        assertEquals(lat, position[1], delta);
+    }
+
+    @Test
+    public void testGalactic() {
+
+        /* The Galactic center and the north Galactic pole */
+        assertPosition(0.0, 0.0, CoordinateConverter.convert(266.40499625, -28.93617242,
+                ReferenceSystem.ICRS, 2000, ReferenceSystem.GAL, 2000), 0.0001);
+        assertEquals(90.0, CoordinateConverter.convert(192.85948, 27.12825,
+                ReferenceSystem.ICRS, 2000, ReferenceSystem.GAL, 2000)[1], 0.0001);
+
+        /* The origin of supergalactic longitude and the supergalactic pole */
+        assertPosition(0.0, 0.0, CoordinateConverter.convert(137.37, 0.0,
+                ReferenceSystem.GAL, 2000, ReferenceSystem.SGAL, 2000), 0.0001);
+        assertEquals(90.0, CoordinateConverter.convert(47.37, 6.32,
+                ReferenceSystem.GAL, 2000, ReferenceSystem.SGAL, 2000)[1], 0.0001);
+    }
+
+    @Test
+    public void testEcliptic() {
+
+        /* The celestial north pole is at the obliquity of the ecliptic */
+        double[] pole = CoordinateConverter.convert(0.0, 90.0,
+                ReferenceSystem.FK5, 2000, ReferenceSystem.ECL, 2000);
+        assertPosition(90.0, 90.0 - 23.4392911, pole, delta);
+
+        /* Pollux, example 13.a of Meeus' "Astronomical Algorithms" */
+        double[] pollux = CoordinateConverter.convert(116.328942, 28.026183,
+                ReferenceSystem.FK5, 2000, ReferenceSystem.ECL, 2000);
+        assertPosition(113.215630, 6.684170, pollux, delta);
+    }
+
+    /* Theta Persei, example 21.b of Meeus' "Astronomical Algorithms": proper
+     * motion from J2000 to 2028 November 13.19, and precession to the mean
+     * equinox of that date */
+
+    @Test
+    public void testPrecessionAndProperMotion() {
+
+        double ra = (2 + 44 / 60.0 + 11.986 / 3600.0) * 15;
+        double dec = 49 + 13 / 60.0 + 42.48 / 3600.0;
+        double pm_ra = 0.03425 * 15 * 1000 * Math.cos(Math.toRadians(dec));
+        double pm_dec = -89.5;
+        double epoch = 2000.0 + (2462088.69 - 2451545.0) / 365.25;
+
+        double[] moved = CoordinateConverter.propagate(ra, dec, pm_ra, pm_dec, 2000.0, epoch);
+        double[] precessed = CoordinateConverter.convert(moved[0], moved[1],
+                ReferenceSystem.FK5, 2000, ReferenceSystem.FK5, epoch);
+        assertPosition((2 + 46 / 60.0 + 11.331 / 3600.0) * 15,
+                       49 + 20 / 60.0 + 54.54 / 3600.0, precessed, delta);
+    }
+
+    /* M31, in FK4 B1950 */
+
+    @Test
+    public void testFK4() {
+        double[] m31 = CoordinateConverter.convert(10.684708, 41.268750,
+                ReferenceSystem.ICRS, 2000, ReferenceSystem.FK4, 1950);
+        assertPosition(10.00125, 40.99528, m31, 0.001);
+    }
+
+    /* Converting back and forth must return the original coordinates */
+
+    @Test
+    public void testRoundTrip() {
+        for (ReferenceSystem system : ReferenceSystem.values()) {
+            double[] there = CoordinateConverter.convert(324.5362, -57.4467,
+                    ReferenceSystem.ICRS, 2000, system, 1975);
+            double[] back = CoordinateConverter.convert(there[0], there[1],
+                    system, 1975, ReferenceSystem.ICRS, 2000);
+            assertPosition(324.5362, -57.4467, back, 1e-7);
+        }
+    }
+
+    @Test
+    public void testTransform() {
+
+        TargetInformation info = new TargetInformation("Wolf 359");
+        info.system = ReferenceSystem.ICRS;
+        info.epoch = 2000;
+        info.equinox = 2000;
+        info.ra_deg = 164.120271;
+        info.dec_deg = 7.014658;
+        info.pm_ra = -3842.0;
+        info.pm_dec = -2725.0;
+
+        /* In 50 years, about 3.2 arcmin to the south-west */
+        TargetInformation moved = CoordinateConverter.transform(info, ReferenceSystem.ICRS, 2050, 2000);
+        assertEquals(2050, (int) moved.epoch);
+        assertEquals(info.dec_deg - 50 * 2.725 / 3600, moved.dec_deg, 0.0001);
+        assertTrue(moved.ra_deg < info.ra_deg);
+        assertEquals(TargetResolver.format_ra(moved.ra_deg), moved.ra);
+
+        /* Without proper motions, the position does not change */
+        info.pm_ra = null;
+        moved = CoordinateConverter.transform(info, ReferenceSystem.ICRS, 2050, 2000);
+        assertEquals(info.ra_deg, moved.ra_deg, 1e-9);
+        assertEquals(info.dec_deg, moved.dec_deg, 1e-9);
+    }
+}
@@ -0,0 +1,351 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/* Computes, locally, what Staralt plots: the altitude, airmass and hour angle
+ * of targets over a night, as seen from the site of a Staralt instance, so
+ * that we get numbers we can work with, instead of an image, and without
+ * one HTTP request per target.
+ *
+ * The times are a grid shared by all the targets, for which the local sidereal
+ * time, and its sine and cosine, are computed only once. Each target then
+ * needs just a few trigonometric functions of its own, after which every point
+ * of the grid costs a handful of multiplications, a square root and, above the
+ * horizon, a power for the airmass: a night, every five minutes, for a
+ * thousand targets takes a few tens of milliseconds on a single core, and
+ * compute(List) uses all of them. The coordinates are precessed to the mean
+ * equinox of the night and moved to its epoch with the proper motions, if
+ * known; nutation, aberration and refraction (which Staralt does not apply
+ * either) are ignored, as they are well below the half degree or so that
+ * matters for planning. The height of the site is not used: it only affects
+ * the dip of the horizon. Times are UTC, which is always within a second of
+ * UT1. */
+
+public class Ephemeris {
+
+    /* The default interval between the points of the grid */
+    public static final Duration DEFAULT_STEP = Duration.ofMinutes(5);
+
+    private static final double JD_UNIX_EPOCH = 2440587.5;  /* 1970-01-01T00:00Z */
+    private static final double JD_J2000 = 2451545.0;
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    public final Staralt site;
+    public final Instant start;
+    public final Duration step;
+
+    private final long[] times;    /* milliseconds since the epoch */
+    private final double[] lst;    /* local sidereal time, in hours */
+    private final double[] sin_lst;
+    private final double[] cos_lst;
+
+    private final double sin_latitude;
+    private final double cos_latitude;
+
+    /* The year (e.g., 2026.8) and the rotation from ICRS to the mean
+     * equinox of the middle of the grid, the same for all the targets */
+    private final double year;
+    private final double[][] precession;
+
+    /* The altitude, airmass and hour angle of a target at each point of the
+     * grid. The airmass is NaN when the target is below the horizon. */
+    public static class Track {
+
+        public final TargetInformation info;
+        public final double[] altitude;    /* degrees */
+        public final double[] airmass;
+        public final double[] hour_angle;  /* hours, in (-12, 12] */
+
+        Track(TargetInformation info, int size) {
+            this.info = info;
+            this.altitude = new double[size];
+            this.airmass = new double[size];
+            this.hour_angle = new double[size];
+        }
+
+        /* The point of the grid at which the target is highest */
+        public int highest() {
+            int highest = 0;
+            for (int index = 1; index < this.altitude.length; index++) {
+                if (this.altitude[index] > this.altitude[highest])
+                    highest = index;
+            }
+            return highest;
+        }
+    }
+
+    /* A grid of 'steps' points, 'step' apart, from 'start' on */
+    public Ephemeris(Staralt site, Instant start, Duration step, int steps) {
+        if (steps < 1 || step.isNegative() || step.isZero())
+            throw new IllegalArgumentException("the grid must have a positive step and size");
+        this.site = site;
+        this.start = start;
+        this.step = step;
+
+        double latitude = Math.toRadians(site.latitude);
+        this.sin_latitude = Math.sin(latitude);
+        this.cos_latitude = Math.cos(latitude);
+
+        this.times = new long[steps];
+        this.lst = new double[steps];
+        this.sin_lst = new double[steps];
+        this.cos_lst = new double[steps];
+        for (int index = 0; index < steps; index++) {
+            this.times[index] = start.toEpochMilli() + index * step.toMillis();
+            double lst = Ephemeris.lst(this.times[index], site.longitude);
+            this.lst[index] = lst;
+            this.sin_lst[index] = Math.sin(lst * Math.PI / 12.0);
+            this.cos_lst[index] = Math.cos(lst * Math.PI / 12.0);
+        }
+
+        long middle = (this.times[0] + this.times[steps - 1]) / 2;
+        this.year = 2000.0 + (Ephemeris.julian_date(middle) - JD_J2000) / 365.25;
+        this.precession = CoordinateConverter.rotation(ReferenceSystem.FK5, this.year);
+    }
+
+    /* The night that starts on the evening of the given date, as Staralt
+     * plots it: from local (mean solar) noon to noon of the next day */
+    public static Ephemeris night(Staralt site, int day, int month, int year, Duration step) {
+        double longitude = Ephemeris.normalize(site.longitude, 360.0);  /* east, (-180, 180] */
+        if (longitude > 180.0)
+            longitude -= 360.0;
+        Instant midnight = LocalDate.of(year, month, day).atStartOfDay(ZoneOffset.UTC).toInstant();
+        long noon = Math.round((12.0 - longitude / 15.0) * 3600000.0);
+        int steps = (int) (Duration.ofDays(1).toMillis() / step.toMillis()) + 1;
+        return new Ephemeris(site, midnight.plusMillis(noon), step, steps);
+    }
+
+    public static Ephemeris night(Staralt site, int day, int month, int year) {
+        return Ephemeris.night(site, day, month, year, DEFAULT_STEP);
+    }
+
+    public static double julian_date(long millis) {
+        return JD_UNIX_EPOCH + millis / MILLIS_PER_DAY;
+    }
+
+    /* Greenwich mean sidereal time (IAU 1982), in hours */
+    public static double gmst(long millis) {
+        double d = Ephemeris.julian_date(millis) - JD_J2000;
+        double t = d / 36525.0;
+        double degrees = 280.46061837 + 360.98564736629 * d + (0.000387933 - t / 38710000.0) * t * t;
+        return Ephemeris.normalize(degrees, 360.0) / 15.0;
+    }
+
+    /* Local mean sidereal time at the (east) longitude, in hours */
+    public static double lst(long millis, double longitude) {
+        return Ephemeris.normalize(Ephemeris.gmst(millis) + longitude / 15.0, 24.0);
+    }
+
+    /* Into [0, period) */
+    static double normalize(double value, double period) {
+        value %= period;
+        return (value < 0) ? value + period : value;
+    }
+
+    /* The number of points of the grid */
+    public int size() {
+        return this.times.length;
+    }
+
+    public Instant time(int index) {
+        return Instant.ofEpochMilli(this.times[index]);
+    }
+
+    public long millis(int index) {
+        return this.times[index];
+    }
+
+    /* In hours */
+    public double lst(int index) {
+        return this.lst[index];
+    }
+
+    /* The year of the mean equinox and epoch to which targets are moved */
+    public double year() {
+        return this.year;
+    }
+
+    /* Right ascension and declination, in decimal degrees, for the mean
+     * equinox and epoch of the night; null if the coordinates are unknown.
+     * Targets without a reference system are assumed to be in ICRS. */
+    public double[] of_date(TargetInformation info) {
+        if (info.ra_deg == null || info.dec_deg == null)
+            return null;
+
+        double[] position = {info.ra_deg, info.dec_deg};
+        if (info.system != null && info.system != ReferenceSystem.ICRS) {
+            int equinox = (info.equinox == null) ? 2000 : info.equinox;
+            position = CoordinateConverter.convert(position[0], position[1], info.system,
+                                                   equinox, ReferenceSystem.ICRS, 2000);
+        }
+        if (info.pm_ra != null && info.pm_dec != null && info.epoch != null) {
+            position = CoordinateConverter.propagate(position[0], position[1],
+                                                     info.pm_ra, info.pm_dec, info.epoch, this.year);
+        }
+
+        double[] v = CoordinateConverter.vector(position[0], position[1]);
+        double[][] m = this.precession;
+        return CoordinateConverter.angles(new double[] {
+            m[0][0] * v[0] + m[0][1] * v[1] + m[0][2] * v[2],
+            m[1][0] * v[0] + m[1][1] * v[1] + m[1][2] * v[2],
+            m[2][0] * v[0] + m[2][1] * v[1] + m[2][2] * v[2]
+        });
+    }
+
+    /* The altitude, in degrees, at a point of the grid, of a position (right
+     * ascension and declination, in degrees) for the equinox of the night */
+    public double altitude(double[] position, int index) {
+        double h = Math.toRadians(this.lst[index] * 15.0 - position[0]);
+        double dec = Math.toRadians(position[1]);
+        return Math.toDegrees(Math.asin(this.sin_latitude * Math.sin(dec) +
+                                        this.cos_latitude * Math.cos(dec) * Math.cos(h)));
+    }
+
+    /* The track of the target over the grid; null if its coordinates are
+     * unknown. With H = LST - RA, cos(H) is expanded so that only the
+     * precomputed sine and cosine of the LST are needed, and the hour angle
+     * itself is a mere subtraction. */
+    public Track compute(TargetInformation info) {
+        double[] position = this.of_date(info);
+        if (position == null)
+            return null;
+
+        double ra = Math.toRadians(position[0]);
+        double dec = Math.toRadians(position[1]);
+        double ra_hours = position[0] / 15.0;
+        double sin_ra = Math.sin(ra);
+        double cos_ra = Math.cos(ra);
+        double a = this.sin_latitude * Math.sin(dec);
+        double b = this.cos_latitude * Math.cos(dec);
+
+        Track track = new Track(info, this.times.length);
+        for (int index = 0; index < this.times.length; index++) {
+            double cos_h = this.cos_lst[index] * cos_ra + this.sin_lst[index] * sin_ra;
+            double sin_altitude = Math.max(-1.0, Math.min(1.0, a + b * cos_h));
+            double altitude = Math.toDegrees(Ephemeris.asin(sin_altitude));
+            track.altitude[index] = altitude;
+            track.airmass[index] = Ephemeris.airmass(altitude);
+
+            double hour_angle = this.lst[index] - ra_hours;
+            if (hour_angle > 12.0)
+                hour_angle -= 24.0;
+            else if (hour_angle <= -12.0)
+                hour_angle += 24.0;
+            track.hour_angle[index] = hour_angle;
+        }
+        return track;
+    }
+
+    /* The tracks of all the targets, in the same order, computed in parallel
+     * in the common fork-join pool; null for those without coordinates */
+    public Track[] compute(List<TargetInformation> targets) {
+        Track[] tracks = new Track[targets.size()];
+        IntStream.range(0, tracks.length).parallel()
+                 .forEach(index -> tracks[index] = this.compute(targets.get(index)));
+        return tracks;
+    }
+
+    /* The geocentric right ascension and declination of the Sun, in degrees,
+     * for the equinox of date, per the low-precision formulas of the
+     * Astronomical Almanac: accurate to 0.01 degrees between 1950 and 2050 */
+    public static double[] sun(long millis) {
+        double n = Ephemeris.julian_date(millis) - JD_J2000;
+        double l = 280.460 + 0.9856474 * n;
+        double g = Math.toRadians(357.528 + 0.9856003 * n);
+        double longitude = l + 1.915 * Math.sin(g) + 0.020 * Math.sin(2 * g);
+        return Ephemeris.ecliptic(longitude, 0.0, Ephemeris.obliquity(n));
+    }
+
+    /* The geocentric right ascension and declination of the Moon, in
+     * degrees, for the equinox of date, and its horizontal parallax, also
+     * from the Astronomical Almanac: accurate to about 0.3 degrees, which is
+     * more than enough to keep away from it. Seen from the site it is up to
+     * a degree lower (that is, the parallax) than from the centre of the Earth. */
+    public static double[] moon(long millis) {
+        double n = Ephemeris.julian_date(millis) - JD_J2000;
+        double t = n / 36525.0;
+        double longitude = 218.32 + 481267.881 * t
+            + 6.29 * Ephemeris.sin(135.0 + 477198.87 * t) - 1.27 * Ephemeris.sin(259.3 - 413335.36 * t)
+            + 0.66 * Ephemeris.sin(235.7 + 890534.22 * t) + 0.21 * Ephemeris.sin(269.9 + 954397.74 * t)
+            - 0.19 * Ephemeris.sin(357.5 + 35999.05 * t) - 0.11 * Ephemeris.sin(186.5 + 966404.03 * t);
+        double latitude = 5.13 * Ephemeris.sin(93.3 + 483202.02 * t) + 0.28 * Ephemeris.sin(228.2 + 960400.89 * t)
+            - 0.28 * Ephemeris.sin(318.3 + 6003.15 * t) - 0.17 * Ephemeris.sin(217.6 - 407332.21 * t);
+        double parallax = 0.9508 + 0.0518 * Ephemeris.cos(135.0 + 477198.87 * t)
+            + 0.0095 * Ephemeris.cos(259.3 - 413335.36 * t) + 0.0078 * Ephemeris.cos(235.7 + 890534.22 * t)
+            + 0.0028 * Ephemeris.cos(269.9 + 954397.74 * t);
+        double[] position = Ephemeris.ecliptic(longitude, latitude, Ephemeris.obliquity(n));
+        return new double[] {position[0], position[1], parallax};
+    }
+
+    /* Of the mean equator, in degrees, 'n' days after J2000.0 */
+    private static double obliquity(double n) {
+        return 23.439 - 0.0000004 * n;
+    }
+
+    /* From ecliptic to equatorial coordinates, all of them in degrees */
+    private static double[] ecliptic(double longitude, double latitude, double obliquity) {
+        double l = Math.toRadians(longitude);
+        double b = Math.toRadians(latitude);
+        double e = Math.toRadians(obliquity);
+        double x = Math.cos(b) * Math.cos(l);
+        double y = Math.cos(e) * Math.cos(b) * Math.sin(l) - Math.sin(e) * Math.sin(b);
+        double z = Math.sin(e) * Math.cos(b) * Math.sin(l) + Math.cos(e) * Math.sin(b);
+        return CoordinateConverter.angles(new double[] {x, y, z});
+    }
+
+    private static double sin(double degrees) {
+        return Math.sin(Math.toRadians(degrees));
+    }
+
+    private static double cos(double degrees) {
+        return Math.cos(Math.toRadians(degrees));
+    }
+
+    /* Abramowitz and Stegun 4.4.46: accurate to 2e-8 radians (a few
+     * milliarcseconds), and several times faster than Math.asin(), which
+     * would otherwise take most of the time of compute() */
+    static double asin(double x) {
+        double t = Math.abs(x);
+        double p = -0.0012624911;
+        p = p * t + 0.0066700901;
+        p = p * t - 0.0170881256;
+        p = p * t + 0.0308918810;
+        p = p * t - 0.0501743046;
+        p = p * t + 0.0889789874;
+        p = p * t - 0.2145988016;
+        p = p * t + 1.5707963050;
+        double angle = Math.PI / 2 - Math.sqrt(1.0 - t) * p;
+        return (x < 0) ? -angle : angle;
+    }
+
+    /* Kasten and Young (1989), which, unlike the secant of the zenith
+     * distance, remains finite down to the horizon; NaN below it */
+    public static double airmass(double altitude) {
+        if (altitude < 0)
+            return Double.NaN;
+        return 1.0 / (Math.sin(Math.toRadians(altitude)) +
+                      0.50572 * Math.pow(altitude + 6.07995, -1.6364));
+    }
+}
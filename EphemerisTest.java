@@ -0,0 +1,144 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EphemerisTest {
+
+    /* Maximum delta between real numbers for which they are considered equal */
+    private static double delta = 0.001;
+
+    /* A target at the given J2000.0 ICRS coordinates; also used by the
+     * tests of AltitudePlot and VisibilityFilter */
+    static TargetInformation target(String name, double ra_deg, double dec_deg) {
+        TargetInformation info = new TargetInformation(name);
+        info.ra_deg = ra_deg;
+        info.dec_deg = dec_deg;
+        info.system = ReferenceSystem.ICRS;
+        info.epoch = 2000;
+        info.equinox = 2000;
+        return info;
+    }
+
+    /* 18h 41m 50.54841s at J2000.0, per the Astronomical Almanac */
+    @Test
+    public void testSiderealTime() {
+        long j2000 = Instant.parse("2000-01-01T12:00:00Z").toEpochMilli();
+        assertEquals(18.697374558, Ephemeris.gmst(j2000), 1e-6);
+        assertEquals(18.697374558 - 2.5463 / 15.0, Ephemeris.lst(j2000, 357.4537), 1e-6);
+    }
+
+    /* From local noon to noon, at CAHA */
+    @Test
+    public void testNight() {
+        Ephemeris night = new Staralt().ephemeris(15, 10, 2026);
+        assertEquals(289, night.size());
+        assertEquals(Instant.parse("2026-10-15T12:10:11Z").getEpochSecond(),
+                     night.time(0).getEpochSecond(), 1);
+        assertEquals(Duration.ofDays(1), Duration.between(night.time(0), night.time(288)));
+        assertEquals(2026.79, night.year(), 0.01);
+    }
+
+    /* The fast evaluation must agree with the textbook formula */
+    @Test
+    public void testAltitude() {
+        Staralt caha = new Staralt();
+        Ephemeris night = Ephemeris.night(caha, 15, 10, 2026, Duration.ofMinutes(1));
+        TargetInformation m52 = target("M52", 351.2, 61.593);
+        Ephemeris.Track track = night.compute(m52);
+        double[] position = night.of_date(m52);
+
+        double latitude = Math.toRadians(caha.latitude);
+        double dec = Math.toRadians(position[1]);
+        for (int index = 0; index < night.size(); index += 37) {
+            double h = Math.toRadians((night.lst(index) * 15.0 - position[0]));
+            double altitude = Math.toDegrees(Math.asin(Math.sin(latitude) * Math.sin(dec) +
+                                                       Math.cos(latitude) * Math.cos(dec) * Math.cos(h)));
+            assertEquals(altitude, track.altitude[index], 1e-5);
+            assertEquals(Math.toDegrees(Math.atan2(Math.sin(h), Math.cos(h))) / 15.0,
+                         track.hour_angle[index], 1e-9);
+        }
+
+        /* At the meridian, the altitude is 90 - |latitude - declination| */
+        int transit = track.highest();
+        assertEquals(0.0, track.hour_angle[transit], 1.0 / 60.0);
+        assertEquals(90.0 - Math.abs(caha.latitude - position[1]), track.altitude[transit], 0.01);
+        assertEquals(1.0 / Math.sin(Math.toRadians(track.altitude[transit])), track.airmass[transit], 0.01);
+    }
+
+    /* Precession: a quarter of a degree in right ascension since J2000 */
+    @Test
+    public void testOfDate() {
+        Ephemeris night = new Staralt().ephemeris(15, 10, 2026);
+        double[] position = night.of_date(target("M101", 210.80212, 54.34808));
+        assertEquals(211.05, position[0], 0.02);
+        assertEquals(54.23, position[1], 0.02);
+        assertNull(night.of_date(new TargetInformation("3fed6a57652ea9b7")));
+    }
+
+    /* Polaris hardly moves, at an altitude close to the latitude */
+    @Test
+    public void testPolaris() {
+        Staralt caha = new Staralt();
+        Ephemeris.Track track = caha.ephemeris(1, 1, 2027).compute(target("Polaris", 37.95456, 89.26411));
+        for (double altitude : track.altitude)
+            assertEquals(caha.latitude, altitude, 1.0);
+    }
+
+    @Test
+    public void testArcsine() {
+        for (double x = -1.0; x <= 1.0; x += 0.001)
+            assertEquals(Math.asin(x), Ephemeris.asin(x), 3e-8);
+        assertEquals(Math.PI / 2, Ephemeris.asin(1.0), 1e-8);
+    }
+
+    @Test
+    public void testAirmass() {
+        assertEquals(1.0, Ephemeris.airmass(90), delta);
+        assertEquals(2.0, Ephemeris.airmass(30), 0.01);
+        assertEquals(37.92, Ephemeris.airmass(0), 0.01);
+        assertTrue(Double.isNaN(Ephemeris.airmass(-0.5)));
+    }
+
+    @Test
+    public void testParallel() {
+        Ephemeris night = new Staralt().ephemeris(15, 10, 2026);
+        List<TargetInformation> targets = new ArrayList<TargetInformation>();
+        for (int index = 0; index < 5000; index++)
+            targets.add(target("Target " + index, (index * 7.3) % 360, (index % 170) - 85));
+        targets.add(new TargetInformation("3fed6a57652ea9b7"));
+
+        Ephemeris.Track[] tracks = night.compute(targets);
+        assertEquals(targets.size(), tracks.length);
+        assertNull(tracks[5000]);
+        for (int index = 0; index < 5000; index += 123) {
+            Ephemeris.Track track = night.compute(targets.get(index));
+            assertTrue(tracks[index].info == targets.get(index));
+            for (int point = 0; point < night.size(); point++)
+                assertEquals(track.altitude[point], tracks[index].altitude[point], 0.0);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/* The HTTP client shared by all the requests to SIMBAD (and Staralt): opening
+ * a new connection for each query means a TCP handshake (or even a TLS one)
+ * every time, while a single client keeps the connections alive and reuses
+ * them across requests. All the work that follows a response, such as parsing
+ * the output of SIMBAD, runs on the same shared pool of threads, so there is
+ * no need to create a new thread for each query. */
+
+public class HttpTransport {
+
+    /* Daemon threads, so that pending queries never prevent the JVM from exiting */
+    private static final ThreadFactory threadFactory = new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "http-transport-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /* The maximum time, in seconds, to wait for a connection to be established */
+    public static final long CONNECT_TIMEOUT = 5;
+
+    public static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(threadFactory);
+
+    /* HTTP/1.1, as the upgrade to HTTP/2 of plain-text connections does not
+     * play well with POST requests; the connections are pooled anyway */
+    public static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(CONNECT_TIMEOUT))
+            .executor(EXECUTOR)
+            .build();
+
+    /* Sends a GET request and returns the body of the response, decompressed
+     * if the server chose to use gzip. The future completes exceptionally with
+     * an IOException if the request failed or the server returned an error. */
+    public static CompletableFuture<byte[]> get(String url, Duration timeout) {
+        return HttpTransport.get(url, timeout, null);
+    }
+
+    /* The same, noting in 'timing' (if not null) when each step happened */
+    public static CompletableFuture<byte[]> get(String url, Duration timeout, Timing timing) {
+        HttpRequest request = HttpTransport.request(url, timeout).GET().build();
+        return HttpTransport.send(request, timing);
+    }
+
+    /* Sends a POST request with an URL-encoded form as body */
+    public static CompletableFuture<byte[]> post(String url, String form, Duration timeout) {
+        return HttpTransport.post(url, form, timeout, null);
+    }
+
+    public static CompletableFuture<byte[]> post(String url, String form, Duration timeout,
+                                                 Timing timing) {
+        HttpRequest request = HttpTransport.request(url, timeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form, StandardCharsets.UTF_8))
+                .build();
+        return HttpTransport.send(request, timing);
+    }
+
+    /* Sends a GET request and waits only for the headers of the response,
+     * returning its body as a stream, to be read (and closed!) by the caller
+     * as it arrives, however large it is. Throws an IOException if the
+     * request failed, timed out or the server returned an error. */
+    public static InputStream open(String url, Duration timeout) throws IOException {
+        HttpRequest request = HttpTransport.request(url, timeout).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted: " + url, ex);
+        }
+        InputStream body = response.body();
+        try {
+            if (response.statusCode() >= 400)
+                throw new IOException("HTTP " + response.statusCode() + ": " + url);
+            String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+            return encoding.equalsIgnoreCase("gzip") ? new GZIPInputStream(body) : body;
+        } catch (IOException ex) {
+            body.close();
+            throw ex;
+        }
+    }
+
+    /* Sends a GET request and streams the body of the response, as it is,
+     * into 'file', which is created or truncated. As the body is written as
+     * received, compression is not asked for. The future completes with the
+     * path, or exceptionally with an IOException if the request failed or
+     * the server returned an error, in which case the file is deleted. */
+    public static CompletableFuture<Path> download(String url, Path file, Duration timeout) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET().build();
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofFile(file))
+                .handle((response, ex) -> {
+                    if (ex == null && response.statusCode() < 400)
+                        return file;
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {
+                        /* The error that matters is the one below */
+                    }
+                    if (ex != null)
+                        throw (ex instanceof CompletionException) ? (CompletionException) ex
+                                                                  : new CompletionException(ex);
+                    throw new CompletionException(
+                            new IOException("HTTP " + response.statusCode() + ": " + url));
+                });
+    }
+
+    /* When a request was sent, when the headers of its response arrived and
+     * when its body was fully received, as given by System.nanoTime(); zero
+     * for the steps that have not happened (yet) */
+    public static class Timing {
+        public volatile long sent;
+        public volatile long headers;
+        public volatile long received;
+    }
+
+    private static HttpRequest.Builder request(String url, Duration timeout) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Accept-Encoding", "gzip");
+    }
+
+    private static CompletableFuture<byte[]> send(HttpRequest request, Timing timing) {
+        HttpResponse.BodyHandler<byte[]> handler = HttpResponse.BodyHandlers.ofByteArray();
+        if (timing != null) {
+            final HttpResponse.BodyHandler<byte[]> body = handler;
+            handler = info -> {
+                timing.headers = System.nanoTime();
+                return body.apply(info);
+            };
+            timing.sent = System.nanoTime();
+        }
+        final CompletableFuture<HttpResponse<byte[]>> exchange = CLIENT.sendAsync(request, handler);
+        CompletableFuture<byte[]> body = exchange
+                .thenApply(response -> {
+                    if (timing != null)
+                        timing.received = System.nanoTime();
+                    if (response.statusCode() >= 400) {
+                        throw new CompletionException(
+                                new IOException("HTTP " + response.statusCode() + ": " + request.uri()));
+                    }
+                    return HttpTransport.decode(response);
+                });
+
+        /* Cancelling what we return would not reach the exchange, which would
+         * go on until the whole response were received (e.g., the loser of a
+         * hedged request, see SIMBADEndpoints): cancel it, too, so that the
+         * client aborts it and closes its connection */
+        body.whenComplete((bytes, ex) -> {
+            if (body.isCancelled())
+                exchange.cancel(true);
+        });
+        return body;
+    }
+
+    /* Undoes the gzip compression of the body of the response, if any */
+    private static byte[] decode(HttpResponse<byte[]> response) {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (!encoding.equalsIgnoreCase("gzip"))
+            return response.body();
+        try {
+            GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(response.body()));
+            try {
+                return gzip.readAllBytes();
+            } finally {
+                gzip.close();
+            }
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* A histogram of latencies, in microseconds, that can be updated by many
+ * threads at once without locking. The buckets grow exponentially, each
+ * power of two being split into SUB_BUCKETS linear ones, so that the
+ * percentiles are within some 6% of the true value whether the latency is
+ * of microseconds (parsing) or of seconds (a slow SIMBAD), at a fixed cost
+ * of a few kilobytes per histogram. */
+
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /* Enough for latencies of up to 2^40 microseconds, some twelve days */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    public final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /* The bucket of a latency: values below SUB_BUCKETS have one each, and
+     * from then on each power of two has SUB_BUCKETS of them */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) Math.max(micros, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /* The largest latency that falls into the bucket */
+    static long upper_bound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = unit.toMicros(duration);
+        this.counts.incrementAndGet(LatencyHistogram.bucket(micros));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(micros);
+        this.max.accumulateAndGet(micros, Math::max);
+    }
+
+    /* Records the time elapsed since 'start', as returned by System.nanoTime() */
+    public void record_since(long start) {
+        this.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /* The latency, in microseconds, below which 'percentile' (between zero
+     * and one hundred) percent of those recorded fall; zero if none */
+    public long percentile(double percentile) {
+        long total = this.count.get();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        rank = Math.max(1, Math.min(rank, total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += this.counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(LatencyHistogram.upper_bound(bucket), this.max.get());
+        }
+        return this.max.get();
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public double getMeanMicros() {
+        long total = this.count.get();
+        return (total == 0) ? 0.0 : (double) this.sum.get() / total;
+    }
+
+    public long getMaxMicros() {
+        return this.max.get();
+    }
+
+    public long getP50Micros() {
+        return this.percentile(50);
+    }
+
+    public long getP90Micros() {
+        return this.percentile(90);
+    }
+
+    public long getP99Micros() {
+        return this.percentile(99);
+    }
+
+    public long getP999Micros() {
+        return this.percentile(99.9);
+    }
+
+    /* Forgets everything recorded so far. Latencies recorded at the same
+     * time may be partially lost, which is fine for monitoring purposes. */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            this.counts.set(bucket, 0);
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    public String toString() {
+        return String.format("%s: n=%d p50=%dus p99=%dus max=%dus", this.name, this.getCount(),
+                             this.getP50Micros(), this.getP99Micros(), this.getMaxMicros());
+    }
+}
@@ -0,0 +1,72 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    /* Every latency must fall into a bucket whose upper bound is not below
+     * it and, from SUB_BUCKETS on, not more than some 6% above it */
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (long micros = 0; micros < 1000000; micros += 1 + micros / 100) {
+            int bucket = LatencyHistogram.bucket(micros);
+            long upper = LatencyHistogram.upper_bound(bucket);
+            assertTrue(micros + " > " + upper, micros <= upper);
+            assertTrue(micros + " << " + upper, upper - micros <= Math.max(1, micros / 16));
+            assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+    }
+
+    /* The percentiles must match those of the sorted values */
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.percentile(99));
+
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        for (int index = 0; index < values.length; index++) {
+            /* Log-normal, as latencies usually are: a median of ~20 ms */
+            values[index] = (long) Math.exp(10 + random.nextGaussian());
+            histogram.record(values[index], TimeUnit.MICROSECONDS);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMaxMicros());
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.percentile(percentile);
+            assertTrue(percentile + ": " + actual + " vs " + expected,
+                       actual >= expected && actual <= expected * 1.07);
+        }
+        assertEquals(histogram.percentile(100), histogram.getMaxMicros());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getP50Micros());
+    }
+}
@@ -0,0 +1,384 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/* A catalog of objects exported from SIMBAD and loaded into memory, so that
+ * targets can be resolved without network access (e.g., in the build
+ * machines or in the telescope control rooms). As it may have millions of
+ * rows, the values are stored column by column in arrays of primitives,
+ * instead of as one TargetInformation per object, and the names in a single
+ * array of bytes, indexed by an open-addressing hash table.
+ *
+ * The file must have one object per line, with the following columns, in
+ * this order, separated by tabs or commas: identifier, right ascension and
+ * declination (ICRS, J2000, in decimal degrees), proper motions on both axes
+ * (mas/yr) and object type. Several identifiers for the same object can be
+ * given in the first column, separated by '|'. Missing values are left empty
+ * or given as "~", as SIMBAD does. Lines starting with '#' are comments, and
+ * the first line is ignored if it is a header, i.e. if its right ascension
+ * is not a number. */
+
+public class LocalCatalog {
+
+    /* The reference system, epoch and equinox of the coordinates */
+    public static final ReferenceSystem SYSTEM = ReferenceSystem.ICRS;
+    public static final int EPOCH = 2000;
+    public static final int EQUINOX = 2000;
+
+    /* The columns: NaN for missing values, and -1 for a missing object type,
+     * which otherwise is an index into 'types', so that each different type
+     * is stored only once */
+    private int rows = 0;
+    private double[] ra_deg = new double[1024];
+    private double[] dec_deg = new double[1024];
+    private double[] pm_ra = new double[1024];
+    private double[] pm_dec = new double[1024];
+    private int[] type = new int[1024];
+    private int[] first_name = new int[1024];  /* of the identifiers of the row */
+
+    private String[] types = new String[64];
+    private int ntypes = 0;
+    private final HashMap<String, Integer> type_codes = new HashMap<String, Integer>();
+
+    /* The normalized identifiers, one after another, in UTF-8; identifier i
+     * is found at [name_start[i], name_start[i + 1]) and belongs to the row
+     * name_row[i]. There may be more identifiers than rows. Those of each
+     * row are chained, from first_name[row], through name_next (-1 ends). */
+    private byte[] names = new byte[16384];
+    private int names_length = 0;
+    private int[] name_start = new int[1025];
+    private int[] name_row = new int[1024];
+    private int[] name_next = new int[1024];
+    private int nnames = 0;
+
+    /* Identifier numbers plus one, with zero meaning an empty slot. The
+     * length is a power of two, at least twice the number of identifiers. */
+    private int[] table = new int[2048];
+
+    public LocalCatalog() {}
+
+    /* Loads the catalog from a file, in the format described above */
+    public static LocalCatalog load(Path path) throws IOException {
+        LocalCatalog catalog = new LocalCatalog();
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        try {
+            catalog.read(reader);
+        } finally {
+            reader.close();
+        }
+        return catalog;
+    }
+
+    /* Adds the objects read, one per line, from 'reader' */
+    public void read(BufferedReader reader) throws IOException {
+
+        boolean first = true;
+        String line = null;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String stripped = line.trim();
+            if (stripped.isEmpty() || stripped.startsWith("#"))
+                continue;
+
+            char separator = (line.indexOf('\t') != -1) ? '\t' : ',';
+            String[] columns = LocalCatalog.split(line, separator);
+            if (columns.length < 3)
+                throw new IOException("line " + lineNumber + ": at least three columns expected");
+
+            double ra;
+            try {
+                ra = LocalCatalog.value(columns, 1);
+            } catch (NumberFormatException ex) {
+                if (first) {  /* a header */
+                    first = false;
+                    continue;
+                }
+                throw new IOException("line " + lineNumber + ": invalid right ascension");
+            }
+            first = false;
+
+            try {
+                this.add(columns[0].split("\\|"), ra,
+                         LocalCatalog.value(columns, 2),
+                         LocalCatalog.value(columns, 3),
+                         LocalCatalog.value(columns, 4),
+                         columns.length > 5 ? columns[5].trim() : null);
+            } catch (NumberFormatException ex) {
+                throw new IOException("line " + lineNumber + ": invalid number");
+            }
+        }
+    }
+
+    /* Unlike String.split(), keeps the trailing empty columns */
+    private static String[] split(String line, char separator) {
+        int ncolumns = 1;
+        for (int index = 0; index < line.length(); index++) {
+            if (line.charAt(index) == separator)
+                ncolumns++;
+        }
+        String[] columns = new String[ncolumns];
+        int start = 0;
+        for (int column = 0; column < ncolumns; column++) {
+            int end = line.indexOf(separator, start);
+            if (end == -1)
+                end = line.length();
+            columns[column] = line.substring(start, end);
+            start = end + 1;
+        }
+        return columns;
+    }
+
+    /* The value of the column, or NaN if it is missing */
+    private static double value(String[] columns, int index) {
+        if (index >= columns.length)
+            return Double.NaN;
+        String column = columns[index].trim();
+        if (column.isEmpty() || column.equals("~"))
+            return Double.NaN;
+        return Double.parseDouble(column);
+    }
+
+    /* Adds an object to the catalog, known by all of the given identifiers.
+     * Use NaN for the missing values and null for a missing object type. */
+    public void add(String[] identifiers, double ra_deg, double dec_deg,
+                    double pm_ra, double pm_dec, String object_type) {
+
+        if (this.rows == this.ra_deg.length) {
+            int capacity = this.rows * 2;
+            this.ra_deg = Arrays.copyOf(this.ra_deg, capacity);
+            this.dec_deg = Arrays.copyOf(this.dec_deg, capacity);
+            this.pm_ra = Arrays.copyOf(this.pm_ra, capacity);
+            this.pm_dec = Arrays.copyOf(this.pm_dec, capacity);
+            this.type = Arrays.copyOf(this.type, capacity);
+            this.first_name = Arrays.copyOf(this.first_name, capacity);
+        }
+
+        int row = this.rows++;
+        this.ra_deg[row] = ra_deg;
+        this.dec_deg[row] = dec_deg;
+        this.pm_ra[row] = pm_ra;
+        this.pm_dec[row] = pm_dec;
+        this.type[row] = this.type_code(object_type);
+        this.first_name[row] = -1;
+
+        for (String identifier : identifiers) {
+            String name = ResolutionKey.normalize(identifier);
+            if (!name.isEmpty())
+                this.add_name(name.getBytes(StandardCharsets.UTF_8), row);
+        }
+    }
+
+    private int type_code(String object_type) {
+        if (object_type == null || object_type.isEmpty() || object_type.equals("~"))
+            return -1;
+        Integer code = this.type_codes.get(object_type);
+        if (code == null) {
+            if (this.ntypes == this.types.length)
+                this.types = Arrays.copyOf(this.types, this.ntypes * 2);
+            code = this.ntypes;
+            this.types[this.ntypes++] = object_type;
+            this.type_codes.put(object_type, code);
+        }
+        return code;
+    }
+
+    private void add_name(byte[] name, int row) {
+
+        /* An identifier already in the catalog now refers to the new row */
+        int slot = this.slot(name, 0, name.length);
+        if (this.table[slot] != 0) {
+            int existing = this.table[slot] - 1;
+            if (this.name_row[existing] != row) {
+                this.unlink(existing);
+                this.name_row[existing] = row;
+                this.link(existing, row);
+            }
+            return;
+        }
+
+        if (this.names_length + name.length > this.names.length)
+            this.names = Arrays.copyOf(this.names, Math.max(this.names.length * 2,
+                                                            this.names_length + name.length));
+        if (this.nnames + 1 == this.name_row.length) {
+            this.name_row = Arrays.copyOf(this.name_row, this.name_row.length * 2);
+            this.name_next = Arrays.copyOf(this.name_next, this.name_row.length);
+            this.name_start = Arrays.copyOf(this.name_start, this.name_row.length + 1);
+        }
+
+        System.arraycopy(name, 0, this.names, this.names_length, name.length);
+        this.name_start[this.nnames] = this.names_length;
+        this.names_length += name.length;
+        this.name_start[this.nnames + 1] = this.names_length;
+        this.name_row[this.nnames] = row;
+        this.link(this.nnames, row);
+        this.table[slot] = ++this.nnames;
+
+        if (this.nnames * 2 > this.table.length)
+            this.rehash();
+    }
+
+    /* Appends the identifier to the chain of the row, so that the first one
+     * given for the object remains the first one */
+    private void link(int name, int row) {
+        this.name_next[name] = -1;
+        if (this.first_name[row] == -1) {
+            this.first_name[row] = name;
+            return;
+        }
+        int last = this.first_name[row];
+        while (this.name_next[last] != -1)
+            last = this.name_next[last];
+        this.name_next[last] = name;
+    }
+
+    private void unlink(int name) {
+        int row = this.name_row[name];
+        if (this.first_name[row] == name) {
+            this.first_name[row] = this.name_next[name];
+            return;
+        }
+        int previous = this.first_name[row];
+        while (this.name_next[previous] != name)
+            previous = this.name_next[previous];
+        this.name_next[previous] = this.name_next[name];
+    }
+
+    private void rehash() {
+        this.table = new int[this.table.length * 2];
+        for (int name = 0; name < this.nnames; name++) {
+            int start = this.name_start[name];
+            int slot = this.slot(this.names, start, this.name_start[name + 1] - start);
+            this.table[slot] = name + 1;
+        }
+    }
+
+    /* FNV-1a, over the bytes of the normalized identifier */
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int index = offset; index < offset + length; index++) {
+            hash ^= bytes[index];
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /* The slot of the table where the identifier is, or where it would go */
+    private int slot(byte[] bytes, int offset, int length) {
+        int mask = this.table.length - 1;
+        int slot = LocalCatalog.hash(bytes, offset, length) & mask;
+        while (this.table[slot] != 0) {
+            int name = this.table[slot] - 1;
+            int start = this.name_start[name];
+            if (Arrays.equals(this.names, start, this.name_start[name + 1],
+                              bytes, offset, offset + length))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /* Returns the row of the object with the given identifier, or -1 if it
+     * is not in the catalog. Case and whitespace are normalized as SIMBAD
+     * does, as explained in ResolutionKey. */
+    public int find(String targetName) {
+        if (targetName == null)
+            return -1;
+        byte[] name = ResolutionKey.normalize(targetName).getBytes(StandardCharsets.UTF_8);
+        int entry = this.table[this.slot(name, 0, name.length)];
+        return (entry == 0) ? -1 : this.name_row[entry - 1];
+    }
+
+    /* The number of objects, and that of identifiers, in the catalog */
+    public int size() {
+        return this.rows;
+    }
+
+    public int identifiers() {
+        return this.nnames;
+    }
+
+    /* The values of the columns; NaN if missing */
+    public double ra_deg(int row) {
+        return this.ra_deg[row];
+    }
+
+    public double dec_deg(int row) {
+        return this.dec_deg[row];
+    }
+
+    public double pm_ra(int row) {
+        return this.pm_ra[row];
+    }
+
+    public double pm_dec(int row) {
+        return this.pm_dec[row];
+    }
+
+    /* The identifiers of the object, normalized, in the order in which they
+     * were given; the first one can be used as its main identifier */
+    public String[] identifiers(int row) {
+        int count = 0;
+        for (int name = this.first_name[row]; name != -1; name = this.name_next[name])
+            count++;
+        String[] identifiers = new String[count];
+        int index = 0;
+        for (int name = this.first_name[row]; name != -1; name = this.name_next[name]) {
+            int start = this.name_start[name];
+            identifiers[index++] = new String(this.names, start, this.name_start[name + 1] - start,
+                                              StandardCharsets.UTF_8);
+        }
+        return identifiers;
+    }
+
+    /* null if missing */
+    public String object_type(int row) {
+        int code = this.type[row];
+        return (code == -1) ? null : this.types[code];
+    }
+
+    /* The information of the object in the given row, under 'targetName' */
+    public TargetInformation get(int row, String targetName) {
+        TargetInformation info = new TargetInformation(targetName);
+        info.system = SYSTEM;
+        info.epoch = EPOCH;
+        info.equinox = EQUINOX;
+        info.ra_deg = LocalCatalog.boxed(this.ra_deg[row]);
+        info.dec_deg = LocalCatalog.boxed(this.dec_deg[row]);
+        info.pm_ra = LocalCatalog.boxed(this.pm_ra[row]);
+        info.pm_dec = LocalCatalog.boxed(this.pm_dec[row]);
+        info.object_type = this.object_type(row);
+        info.identifiers = this.identifiers(row);
+        info.main_id = (info.identifiers.length == 0) ? null : info.identifiers[0];
+        info.ra = TargetResolver.format_ra(info.ra_deg);
+        info.dec = TargetResolver.format_dec(info.dec_deg);
+        return info;
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
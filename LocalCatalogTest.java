@@ -0,0 +1,125 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class LocalCatalogTest {
+
+    /* Maximum delta between real numbers for which they are considered equal */
+    private static double delta = 0.001;
+
+    private static final String CATALOG =
+            "# identifier\tra\tdec\tpm_ra\tpm_dec\ttype\n" +
+            "id\tra\tdec\tpm_ra\tpm_dec\totype\n" +
+            "M52|NGC 7654\t351.2\t61.593\t-2.77\t-1.18\tOpen (galactic) Cluster\n" +
+            "M101|NGC 5457\t210.80212\t54.34808\t~\t\tInteracting Galaxies\n" +
+            "Mirach\t17.433016\t35.620558\t175.90\t-112.20\tVariable Star\n";
+
+    private static LocalCatalog catalog() throws IOException {
+        LocalCatalog catalog = new LocalCatalog();
+        catalog.read(new BufferedReader(new StringReader(CATALOG)));
+        return catalog;
+    }
+
+    @Test
+    public void testRead() throws IOException {
+
+        LocalCatalog catalog = catalog();
+        assertEquals(3, catalog.size());
+        assertEquals(5, catalog.identifiers());
+
+        int row = catalog.find("ngc  5457");
+        assertEquals(row, catalog.find("M101"));
+        assertEquals(210.80212, catalog.ra_deg(row), delta);
+        assertTrue(Double.isNaN(catalog.pm_ra(row)));
+        assertTrue(Double.isNaN(catalog.pm_dec(row)));
+        assertEquals("Interacting Galaxies", catalog.object_type(row));
+
+        assertArrayEquals(new String[] {"m101", "ngc 5457"}, catalog.identifiers(row));
+        assertEquals(-1, catalog.find("M 101"));
+        assertEquals(-1, catalog.find("3fed6a57652ea9b7"));
+        assertEquals(-1, catalog.find(null));
+    }
+
+    /* Many more objects than the initial capacity of the arrays */
+
+    @Test
+    public void testGrowth() {
+        LocalCatalog catalog = new LocalCatalog();
+        for (int index = 0; index < 100000; index++) {
+            String[] identifiers = {"Target " + index, "T" + index};
+            catalog.add(identifiers, index / 1000.0, -index / 10000.0,
+                        Double.NaN, Double.NaN, index % 2 == 0 ? "Star" : "Galaxy");
+        }
+        assertEquals(100000, catalog.size());
+        assertEquals(200000, catalog.identifiers());
+        for (int index = 0; index < 100000; index += 997) {
+            int row = catalog.find("target " + index);
+            assertEquals(row, catalog.find("T" + index));
+            assertEquals(index / 1000.0, catalog.ra_deg(row), delta);
+            assertEquals(index % 2 == 0 ? "Star" : "Galaxy", catalog.object_type(row));
+        }
+    }
+
+    /* An identifier given again belongs to the last object */
+
+    @Test
+    public void testIdentifiers() throws IOException {
+        LocalCatalog catalog = catalog();
+        catalog.add(new String[] {"Pinwheel", "NGC 5457"}, 210.8, 54.3, Double.NaN, Double.NaN, null);
+        assertArrayEquals(new String[] {"m101"}, catalog.identifiers(catalog.find("M101")));
+        assertArrayEquals(new String[] {"pinwheel", "ngc 5457"}, catalog.identifiers(3));
+        assertEquals(3, catalog.find("NGC 5457"));
+        assertEquals("m52", catalog.get(0, "M52").main_id);
+    }
+
+    @Test
+    public void testOfflineTargetResolver() throws IOException, SIMBADQueryException,
+                                                   TargetNotFoundException {
+
+        TargetResolver resolver = new OfflineTargetResolver(catalog());
+        TargetInformation info = resolver.submit("m52");
+        assertEquals("m52", info.name);
+        assertEquals("23 24 48.00", info.ra);
+        assertEquals("+61 35 34.8", info.dec);
+        assertEquals(-2.77, info.pm_ra, delta);
+        assertEquals(ReferenceSystem.ICRS, info.system);
+        assertEquals(2000, (int) info.epoch);
+
+        try {
+            resolver.submit("3fed6a57652ea9b7");
+            fail("non-existent object resolved");
+        } catch (TargetNotFoundException e) {}
+
+        /* Other reference systems are converted locally */
+        resolver = new OfflineTargetResolver(catalog(), ReferenceSystem.GAL, 2000, 2000);
+        info = resolver.submit("M52");
+        double[] expected = CoordinateConverter.convert(351.2, 61.593,
+                ReferenceSystem.ICRS, 2000, ReferenceSystem.GAL, 2000);
+        assertEquals(ReferenceSystem.GAL, info.system);
+        assertEquals(expected[0], info.ra_deg, delta);
+        assertEquals(expected[1], info.dec_deg, delta);
+    }
+}
@@ -0,0 +1,76 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/* A TargetResolver that asks another one for the coordinates of the target
+ * (in ICRS, J2000, by default) and converts them locally, with the help of
+ * CoordinateConverter, to its own reference system, epoch and equinox. As all
+ * these resolvers share the same underlying one, which caches its results,
+ * the same object is only sent to SIMBAD once, no matter in how many
+ * different systems, epochs and equinoxes we need its coordinates. */
+
+public class LocalFrameTargetResolver extends TargetResolver {
+
+    /* The resolver shared by those created without one of their own */
+    private static TargetResolver shared = null;
+
+    private static synchronized TargetResolver shared() {
+        if (shared == null)
+            shared = new CachingTargetResolver(new TargetResolver(ReferenceSystem.ICRS, 2000, 2000));
+        return shared;
+    }
+
+    public final TargetResolver delegate;
+
+    public LocalFrameTargetResolver(TargetResolver delegate, ReferenceSystem system,
+                                    int epoch, int equinox) {
+        super(system, epoch, equinox);
+        this.delegate = delegate;
+    }
+
+    public LocalFrameTargetResolver(ReferenceSystem system, int epoch, int equinox) {
+        this(LocalFrameTargetResolver.shared(), system, epoch, equinox);
+    }
+
+    public LocalFrameTargetResolver() {
+        this(DEFAULT_SYSTEM, DEFAULT_EPOCH, DEFAULT_EQUINOX);
+    }
+
+    private TargetInformation convert(TargetInformation info) {
+        return CoordinateConverter.transform(info, this.system, this.epoch, this.equinox);
+    }
+
+    public CompletableFuture<TargetInformation> submitAsync(String targetName) {
+        return this.delegate.submitAsync(targetName).thenApply(info -> this.convert(info));
+    }
+
+    public List<Resolution> submitAll(Collection<String> targetNames) {
+        List<Resolution> results = new ArrayList<Resolution>(targetNames.size());
+        for (Resolution resolution : this.delegate.submitAll(targetNames)) {
+            if (resolution.found())
+                resolution.info = this.convert(resolution.info);
+            results.add(resolution);
+        }
+        return results;
+    }
+}
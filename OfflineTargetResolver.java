@@ -0,0 +1,75 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/* A TargetResolver that never goes to SIMBAD, but resolves the targets from
+ * a LocalCatalog instead. The coordinates of the catalog (ICRS, J2000) are
+ * converted, if needed, to the reference system, epoch and equinox of the
+ * resolver. Targets that are not in the catalog are reported as not found. */
+
+public class OfflineTargetResolver extends TargetResolver {
+
+    public final LocalCatalog catalog;
+
+    public OfflineTargetResolver(LocalCatalog catalog, ReferenceSystem system,
+                                 int epoch, int equinox) {
+        super(system, epoch, equinox);
+        this.catalog = catalog;
+    }
+
+    public OfflineTargetResolver(LocalCatalog catalog) {
+        this(catalog, LocalCatalog.SYSTEM, LocalCatalog.EPOCH, LocalCatalog.EQUINOX);
+    }
+
+    private TargetInformation get(int row, String targetName) {
+        TargetInformation info = this.catalog.get(row, targetName);
+        if (!this.identifiers) {  /* as SIMBAD, only if asked for */
+            info.main_id = null;
+            info.identifiers = null;
+        }
+        if (this.system == LocalCatalog.SYSTEM && this.epoch == LocalCatalog.EPOCH &&
+                this.equinox == LocalCatalog.EQUINOX)
+            return info;
+        return CoordinateConverter.transform(info, this.system, this.epoch, this.equinox);
+    }
+
+    /* No need to wait for anything: the future is already completed */
+    public CompletableFuture<TargetInformation> submitAsync(String targetName) {
+        int row = this.catalog.find(targetName);
+        if (row == -1)
+            return CompletableFuture.failedFuture(new TargetNotFoundException());
+        return CompletableFuture.completedFuture(this.get(row, targetName));
+    }
+
+    public List<Resolution> submitAll(Collection<String> targetNames) {
+        List<Resolution> results = new ArrayList<Resolution>(targetNames.size());
+        for (String targetName : targetNames) {
+            int row = this.catalog.find(targetName);
+            if (row == -1)
+                results.add(new Resolution(targetName, new TargetNotFoundException()));
+            else
+                results.add(new Resolution(targetName, this.get(row, targetName)));
+        }
+        return results;
+    }
+}
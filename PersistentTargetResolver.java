@@ -0,0 +1,102 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/* A TargetResolver that saves every target found to a ResolutionStore, and
+ * answers from it, without going to SIMBAD, whenever the target is already
+ * there -- even if the store was written by a previous run of the program.
+ * Targets that could not be found are not saved, as they may well be found
+ * in the future. Put a CachingTargetResolver on top to remember those, too.
+ *
+ * Targets are saved in the background, so close() must be called once done
+ * with the resolver: until then, the last ones may not have been written,
+ * and are lost if the JVM exits. The store itself is not closed. */
+
+public class PersistentTargetResolver extends TargetResolverDecorator {
+
+    public final ResolutionStore store;
+
+    /* Appends are written here, one at a time, and not in the thread that
+     * completed the query, which is one of those of HttpTransport: writing
+     * to the store, and even more so growing and mapping it again, would
+     * hold it for as long as the disk takes. A daemon thread, so that it
+     * never prevents the JVM from exiting. */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "resolution-store-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PersistentTargetResolver(TargetResolver delegate, ResolutionStore store) {
+        super(delegate);
+        this.store = store;
+    }
+
+    protected Resolution lookup(String targetName) {
+        TargetInformation info = this.store.get(new ResolutionKey(targetName, this.delegate));
+        if (info == null)
+            return null;
+        info.name = targetName;
+        return new Resolution(targetName, info);
+    }
+
+    protected void record(Resolution resolution) {
+        if (!resolution.found())
+            return;
+        /* A copy, as the caller gets (and may modify) the same instance */
+        final TargetInformation info = new TargetInformation(resolution.info);
+        try {
+            this.writer.execute(() -> {
+                try {
+                    this.store.append(info);
+                } catch (IOException ex) {
+                    /* The target could not be saved, so it will have to be resolved
+                     * again by SIMBAD the next time. Not ideal, but we can live with
+                     * that: the information has been resolved anyway. */
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            /* Closed: not saved, as above */
+        }
+    }
+
+    /* Waits until all the targets found so far have been written to the
+     * store, and forces them to disk. No more targets are saved afterwards,
+     * although the store is still used to answer queries. */
+    public void close() {
+        this.writer.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (this.writer.awaitTermination(1, TimeUnit.MINUTES))
+                    break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        this.store.force();
+    }
+}
@@ -0,0 +1,52 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* The outcome of the resolution of one of the targets submitted together,
+ * such as with TargetResolver.submitAll(): either the information returned
+ * by SIMBAD or the exception that prevented us from getting it, which will
+ * be either TargetNotFoundException or SIMBADQueryException */
+public class Resolution {
+
+    public String name              = null;  /* Identifier used for the SIMBAD query */
+    public TargetInformation info   = null;  /* null if the target was not resolved */
+    public Exception error          = null;  /* null if the target was resolved */
+
+    public Resolution(String name, TargetInformation info) {
+        this.name = name;
+        this.info = info;
+    }
+
+    public Resolution(String name, Exception error) {
+        this.name = name;
+        this.error = error;
+    }
+
+    public boolean found() {
+        return this.info != null;
+    }
+
+    public String toString() {
+        if (this.found())
+            return this.info.toString();
+        else if (this.error instanceof TargetNotFoundException)
+            return String.format("Name: %s (not found)", this.name);
+        else
+            return String.format("Name: %s (connection failed)", this.name);
+    }
+}
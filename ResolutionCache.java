@@ -0,0 +1,210 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A bounded, in-memory cache of resolutions. When full, the least recently
+ * used entry is evicted; entries also expire after a time to live, which is
+ * shorter for targets that were not found, as these are more likely to be
+ * typos that will be corrected, or objects that SIMBAD will soon know about.
+ * Connection failures are never cached. Safe for use by multiple threads.
+ *
+ * The targets found are kept for 'max_stale' milliseconds after they expire:
+ * they are no longer returned by get(), but get_stale() still returns them,
+ * as outdated coordinates are better than none while SIMBAD is down. */
+
+public class ResolutionCache {
+
+    /* The default maximum number of entries and times to live, in milliseconds */
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final long DEFAULT_TTL = 24 * 60 * 60 * 1000L;      /* a day */
+    public static final long DEFAULT_NEGATIVE_TTL = 10 * 60 * 1000L;  /* ten minutes */
+    public static final long DEFAULT_MAX_STALE = 7 * 24 * 60 * 60 * 1000L;  /* a week */
+
+    public final int capacity;
+    public final long ttl;
+    public final long negative_ttl;
+    public final long max_stale;
+
+    /* The outcome of a resolution: info is null if the target was not found */
+    public static class Entry {
+        public final TargetInformation info;
+        public final long expires;  /* System.nanoTime() at which it expires */
+        final long discarded;       /* and at which it can no longer be stale */
+
+        Entry(TargetInformation info, long expires, long discarded) {
+            this.info = info;
+            this.expires = expires;
+            this.discarded = discarded;
+        }
+
+        public boolean found() {
+            return this.info != null;
+        }
+    }
+
+    private final LinkedHashMap<ResolutionKey, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong stale_hits = new AtomicLong();
+
+    public ResolutionCache(int capacity, long ttl, long negative_ttl, long max_stale) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.ttl = ttl;
+        this.negative_ttl = negative_ttl;
+        this.max_stale = max_stale;
+
+        /* In access order, so that the eldest entry is the least recently used */
+        this.entries = new LinkedHashMap<ResolutionKey, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<ResolutionKey, Entry> eldest) {
+                if (size() > ResolutionCache.this.capacity) {
+                    ResolutionCache.this.evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public ResolutionCache(int capacity, long ttl, long negative_ttl) {
+        this(capacity, ttl, negative_ttl, DEFAULT_MAX_STALE);
+    }
+
+    public ResolutionCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /* Returns the entry for the key, or null if there is none or it has
+     * expired. The TargetInformation of the entry must not be modified. */
+    public Entry get(ResolutionKey key) {
+        Entry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+            long now = System.nanoTime();
+            if (entry != null && entry.expires - now <= 0) {
+                if (entry.discarded - now <= 0) {
+                    this.entries.remove(key);
+                    this.evictions.incrementAndGet();
+                }
+                entry = null;
+            }
+        }
+        if (entry == null)
+            this.misses.incrementAndGet();
+        else
+            this.hits.incrementAndGet();
+        return entry;
+    }
+
+    /* Returns the entry for a target that was found, even if it has expired,
+     * as long as it has not been for more than max_stale; null otherwise */
+    public Entry get_stale(ResolutionKey key) {
+        Entry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+        }
+        if (entry == null || !entry.found() || entry.discarded - System.nanoTime() <= 0)
+            return null;
+        this.stale_hits.incrementAndGet();
+        return entry;
+    }
+
+    /* Caches the information of a target that was found. A copy is stored,
+     * so that later changes to 'info' do not affect the cache. */
+    public void put(ResolutionKey key, TargetInformation info) {
+        long expires = this.expiry(this.ttl);
+        this.store(key, new Entry(new TargetInformation(info), expires,
+                                  expires + this.max_stale * 1000000L));
+    }
+
+    /* Caches the fact that the target could not be found */
+    public void put_not_found(ResolutionKey key) {
+        long expires = this.expiry(this.negative_ttl);
+        this.store(key, new Entry(null, expires, expires));
+    }
+
+    private long expiry(long ttl) {
+        return System.nanoTime() + ttl * 1000000L;
+    }
+
+    private void store(ResolutionKey key, Entry entry) {
+        synchronized (this.entries) {
+            this.entries.put(key, entry);
+        }
+    }
+
+    /* Removes the expired entries that cannot be used as stale either,
+     * counting them as evictions */
+    public void purge() {
+        long now = System.nanoTime();
+        synchronized (this.entries) {
+            Iterator<Entry> it = this.entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().discarded - now <= 0) {
+                    it.remove();
+                    this.evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long hits() {
+        return this.hits.get();
+    }
+
+    public long misses() {
+        return this.misses.get();
+    }
+
+    /* Entries removed because the cache was full or they had expired */
+    public long evictions() {
+        return this.evictions.get();
+    }
+
+    /* Expired entries returned by get_stale() */
+    public long stale_hits() {
+        return this.stale_hits.get();
+    }
+
+    public String toString() {
+        return String.format("%d entries, %d hits, %d misses, %d evictions, %d stale",
+                             this.size(), this.hits(), this.misses(), this.evictions(),
+                             this.stale_hits());
+    }
+}
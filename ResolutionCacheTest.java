@@ -0,0 +1,130 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ResolutionCacheTest {
+
+    private static ResolutionKey key(String name) {
+        return new ResolutionKey(name, ReferenceSystem.ICRS, 2000, 2000);
+    }
+
+    private static TargetInformation info(String name) {
+        TargetInformation info = new TargetInformation(name);
+        info.ra_deg = 351.2;
+        info.dec_deg = 61.593;
+        return info;
+    }
+
+    /* Names that only differ in case or whitespace are the same target, but
+     * not if the reference system, epoch or equinox are different */
+
+    @Test
+    public void testResolutionKey() {
+        assertEquals(key("M101"), key(" m101 "));
+        assertEquals(key("NGC 5457"), key("ngc   5457"));
+        assertFalse(key("M101").equals(key("M 101")));
+        assertFalse(key("M101").equals(new ResolutionKey("M101", ReferenceSystem.FK5, 2000, 2000)));
+        assertFalse(key("M101").equals(new ResolutionKey("M101", ReferenceSystem.ICRS, 1950, 2000)));
+        assertEquals(key(null), key(null));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+
+        ResolutionCache cache = new ResolutionCache(10, 60000, 60000);
+        assertNull(cache.get(key("M52")));
+        cache.put(key("M52"), info("M52"));
+        cache.put_not_found(key("3fed6a57652ea9b7"));
+
+        ResolutionCache.Entry entry = cache.get(key("m52"));
+        assertTrue(entry.found());
+        assertEquals(351.2, entry.info.ra_deg, 0.001);
+        assertFalse(cache.get(key("3fed6a57652ea9b7")).found());
+
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0, cache.evictions());
+    }
+
+    /* Changes to the TargetInformation once cached must not affect the cache */
+
+    @Test
+    public void testCopy() {
+        ResolutionCache cache = new ResolutionCache(10, 60000, 60000);
+        TargetInformation info = info("M52");
+        cache.put(key("M52"), info);
+        info.ra_deg = 0.0;
+        assertEquals(351.2, cache.get(key("M52")).info.ra_deg, 0.001);
+    }
+
+    /* When full, the least recently used entry is the one evicted */
+
+    @Test
+    public void testLRU() {
+        ResolutionCache cache = new ResolutionCache(2, 60000, 60000);
+        cache.put(key("A"), info("A"));
+        cache.put(key("B"), info("B"));
+        assertNotNull(cache.get(key("A")));
+        cache.put(key("C"), info("C"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertNotNull(cache.get(key("A")));
+        assertNull(cache.get(key("B")));
+        assertNotNull(cache.get(key("C")));
+    }
+
+    /* Targets not found expire earlier than those found */
+
+    @Test
+    public void testTTL() throws InterruptedException {
+        ResolutionCache cache = new ResolutionCache(10, 60000, 50);
+        cache.put(key("M52"), info("M52"));
+        cache.put_not_found(key("3fed6a57652ea9b7"));
+        Thread.sleep(100);
+        assertNull(cache.get(key("3fed6a57652ea9b7")));
+        assertNotNull(cache.get(key("M52")));
+        assertEquals(1, cache.evictions());
+    }
+
+    /* Once expired, the targets found can still be used as stale, for a
+     * while, but not those that were not found */
+
+    @Test
+    public void testStale() throws InterruptedException {
+        ResolutionCache cache = new ResolutionCache(10, 50, 50, 60000);
+        cache.put(key("M52"), info("M52"));
+        cache.put_not_found(key("3fed6a57652ea9b7"));
+        assertNull(cache.get_stale(key("3fed6a57652ea9b7")));
+        Thread.sleep(100);
+        assertNull(cache.get(key("M52")));
+        assertEquals(351.2, cache.get_stale(key("M52")).info.ra_deg, 0.001);
+        assertEquals(1, cache.stale_hits());
+
+        cache.purge();
+        assertEquals(1, cache.size());
+
+        cache = new ResolutionCache(10, 50, 50, 0);
+        cache.put(key("M52"), info("M52"));
+        Thread.sleep(100);
+        assertNull(cache.get_stale(key("M52")));
+    }
+}
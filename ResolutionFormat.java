@@ -0,0 +1,166 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* How the outcome of each resolution is written by ResolutionPipeline: one
+ * line per target, identified by the line of the input in which it was
+ * found, as the results are written in the order in which they complete.
+ * Missing values are left empty in CSV and as null in JSON. */
+
+public enum ResolutionFormat {
+
+    /* JSON lines, one object per target */
+    JSONL {
+        public String header() {
+            return null;
+        }
+
+        public String format(long line, Resolution resolution) {
+            StringBuilder buffer = new StringBuilder(256);
+            buffer.append("{\"line\":").append(line);
+            buffer.append(",\"name\":");
+            ResolutionFormat.json(buffer, resolution.name);
+            buffer.append(",\"status\":\"").append(ResolutionFormat.status(resolution)).append('"');
+            TargetInformation info = resolution.info;
+            if (info != null) {
+                buffer.append(",\"ra_deg\":");
+                ResolutionFormat.json(buffer, info.ra_deg);
+                buffer.append(",\"dec_deg\":");
+                ResolutionFormat.json(buffer, info.dec_deg);
+                buffer.append(",\"ra\":");
+                ResolutionFormat.json(buffer, info.ra);
+                buffer.append(",\"dec\":");
+                ResolutionFormat.json(buffer, info.dec);
+                buffer.append(",\"object_type\":");
+                ResolutionFormat.json(buffer, info.object_type);
+                buffer.append(",\"pm_ra\":");
+                ResolutionFormat.json(buffer, info.pm_ra);
+                buffer.append(",\"pm_dec\":");
+                ResolutionFormat.json(buffer, info.pm_dec);
+                buffer.append(",\"system\":");
+                ResolutionFormat.json(buffer, (info.system == null) ? null : info.system.toString());
+                buffer.append(",\"epoch\":").append(info.epoch);
+                buffer.append(",\"equinox\":").append(info.equinox);
+            } else if (resolution.error != null && resolution.error.getMessage() != null) {
+                buffer.append(",\"message\":");
+                ResolutionFormat.json(buffer, resolution.error.getMessage());
+            }
+            return buffer.append('}').toString();
+        }
+    },
+
+    /* Comma-separated values, with a header */
+    CSV {
+        public String header() {
+            return "line,name,status,ra_deg,dec_deg,ra,dec,object_type,pm_ra,pm_dec,system,epoch,equinox";
+        }
+
+        public String format(long line, Resolution resolution) {
+            StringBuilder buffer = new StringBuilder(160);
+            buffer.append(line).append(',');
+            ResolutionFormat.csv(buffer, resolution.name);
+            buffer.append(',').append(ResolutionFormat.status(resolution));
+            TargetInformation info = resolution.info;
+            if (info != null) {
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.ra_deg);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.dec_deg);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.ra);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.dec);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.object_type);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.pm_ra);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.pm_dec);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.system);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.epoch);
+                buffer.append(',');
+                ResolutionFormat.csv(buffer, info.equinox);
+            } else {
+                buffer.append(",,,,,,,,,,");
+            }
+            return buffer.toString();
+        }
+    };
+
+    /* The first line of the output, if any */
+    public abstract String header();
+
+    /* The line, without the newline, for the outcome of the target */
+    public abstract String format(long line, Resolution resolution);
+
+    /* "found", "not_found" or, if the connection to SIMBAD failed, "failed" */
+    public static String status(Resolution resolution) {
+        if (resolution.found())
+            return "found";
+        if (resolution.error instanceof TargetNotFoundException)
+            return "not_found";
+        return "failed";
+    }
+
+    /* NaN and infinities are not valid JSON */
+    private static void json(StringBuilder buffer, Double value) {
+        if (value == null || value.isNaN() || value.isInfinite())
+            buffer.append("null");
+        else
+            buffer.append(value.doubleValue());
+    }
+
+    private static void json(StringBuilder buffer, String value) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':  buffer.append("\\\""); break;
+            case '\\': buffer.append("\\\\"); break;
+            case '\n': buffer.append("\\n"); break;
+            case '\r': buffer.append("\\r"); break;
+            case '\t': buffer.append("\\t"); break;
+            default:
+                if (c < 0x20)
+                    buffer.append(String.format("\\u%04x", (int) c));
+                else
+                    buffer.append(c);
+            }
+        }
+        buffer.append('"');
+    }
+
+    /* Quoted only if needed, doubling the quotes inside */
+    private static void csv(StringBuilder buffer, Object value) {
+        if (value == null)
+            return;
+        String text = value.toString();
+        if (text.indexOf(',') == -1 && text.indexOf('"') == -1 &&
+                text.indexOf('\n') == -1 && text.indexOf('\r') == -1) {
+            buffer.append(text);
+            return;
+        }
+        buffer.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,91 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.Locale;
+
+/* Identifies a resolution: the name of the target, normalized, together with
+ * the celestial reference system, epoch and equinox of the coordinates. Two
+ * names that only differ in case or whitespace (e.g., "m101" and " M101 ")
+ * are the same for SIMBAD, so they are for us too. */
+
+public final class ResolutionKey {
+
+    public final String name;  /* normalized */
+    public final ReferenceSystem system;
+    public final int epoch;
+    public final int equinox;
+
+    public ResolutionKey(String targetName, ReferenceSystem system, int epoch, int equinox) {
+        this.name = ResolutionKey.normalize(targetName);
+        this.system = system;
+        this.epoch = epoch;
+        this.equinox = equinox;
+    }
+
+    /* The key of the query that 'resolver' would submit for the target */
+    public ResolutionKey(String targetName, TargetResolver resolver) {
+        this(targetName, resolver.system, resolver.epoch, resolver.equinox);
+    }
+
+    /* Trim the name, collapse runs of whitespace into a single space and
+     * convert to lower case, as SIMBAD identifiers are case-insensitive */
+    public static String normalize(String targetName) {
+        if (targetName == null)
+            return null;
+
+        /* By hand, as regular expressions are too slow for the local lookups */
+        StringBuilder normalized = new StringBuilder(targetName.length());
+        boolean space = false;
+        for (int index = 0; index < targetName.length(); index++) {
+            char c = targetName.charAt(index);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space)
+                    normalized.append(' ');
+                space = false;
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof ResolutionKey))
+            return false;
+        ResolutionKey key = (ResolutionKey) other;
+        return (this.name == null ? key.name == null : this.name.equals(key.name)) &&
+               this.system == key.system &&
+               this.epoch == key.epoch &&
+               this.equinox == key.equinox;
+    }
+
+    public int hashCode() {
+        int hash = (this.name == null) ? 0 : this.name.hashCode();
+        hash = 31 * hash + (this.system == null ? 0 : this.system.hashCode());
+        hash = 31 * hash + this.epoch;
+        return 31 * hash + this.equinox;
+    }
+
+    public String toString() {
+        return String.format("%s (%s, J%d, %d)", this.name, this.system, this.epoch, this.equinox);
+    }
+}
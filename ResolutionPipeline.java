@@ -0,0 +1,328 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+/* Resolves a list of targets, read from a file in the format of SIMBAD_objects,
+ * and writes the outcome of each one of them to another file as soon as it is
+ * available, either as JSON lines or CSV (see ResolutionFormat). Unlike with
+ * BulkResolver.main(), the list is never loaded into memory: names are read
+ * only as slots become available, with no more than 'concurrency' of them in
+ * flight at the same time, so surveys of millions of names are processed with
+ * constant memory.
+ *
+ * As these runs take hours, every 'checkpoint_every' results the progress is
+ * saved to a checkpoint file, so that an interrupted run (stop(), Ctrl-C or a
+ * crash) can be resumed where it left off: the output is truncated to what it
+ * contained at the time of the checkpoint and the targets already written
+ * there are not resolved again. Since results are written in order of
+ * completion, the checkpoint stores the line of the input up to which every
+ * target has been written (the watermark) plus the lines, beyond it, of those
+ * that completed before some slower one. The checkpoint is deleted once the
+ * whole list has been processed.
+ *
+ * Targets that cannot be resolved, whether not found or because the query
+ * failed, are also written, with their status, and are not retried on resume:
+ * filter them from the output and run them again if needed. */
+
+public class ResolutionPipeline {
+
+    /* The default maximum number of resolutions in flight */
+    public static final int DEFAULT_CONCURRENCY = 64;
+
+    /* The default number of results written between checkpoints */
+    public static final int DEFAULT_CHECKPOINT_EVERY = 1000;
+
+    public TargetResolver resolver;
+    public ResolutionFormat format;
+    public int concurrency;
+    public int checkpoint_every = DEFAULT_CHECKPOINT_EVERY;
+
+    private volatile boolean stopped = false;
+
+    /* The state of the run in progress, guarded by 'this' */
+    private FileChannel output = null;
+    private Path checkpoint = null;
+    private final TreeSet<Long> pending = new TreeSet<Long>();  /* lines in flight */
+    private final TreeSet<Long> done = new TreeSet<Long>();     /* written, beyond the watermark */
+    private long reached = 0;       /* line of the last name read from the input */
+    private long written = 0;       /* results written in this run */
+    private long since_checkpoint = 0;
+    private IOException failure = null;
+
+    public ResolutionPipeline(TargetResolver resolver, ResolutionFormat format, int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive");
+        this.resolver = resolver;
+        this.format = format;
+        this.concurrency = concurrency;
+    }
+
+    public ResolutionPipeline(TargetResolver resolver, ResolutionFormat format) {
+        this(resolver, format, DEFAULT_CONCURRENCY);
+    }
+
+    /* Resolves the targets in 'input', writing the results to 'output'. If
+     * 'checkpoint' exists, the run that saved it is resumed; if not, 'output'
+     * is overwritten. Returns the number of results written by this call,
+     * which returns early, with the checkpoint saved, if stop() is called. */
+
+    public long run(Path input, Path output, Path checkpoint) throws IOException {
+
+        Checkpoint resumed = Checkpoint.read(checkpoint);
+        synchronized (this) {
+            this.stopped = false;
+            this.checkpoint = checkpoint;
+            this.pending.clear();
+            this.done.clear();
+            this.written = 0;
+            this.since_checkpoint = 0;
+            this.failure = null;
+            this.reached = 0;
+            if (resumed != null) {
+                this.reached = resumed.watermark;
+                this.done.addAll(resumed.done);
+            }
+        }
+
+        Semaphore slots = new Semaphore(this.concurrency);
+        try (TargetListReader reader = TargetListReader.open(input);
+             FileChannel channel = open(output, resumed)) {
+
+            synchronized (this) {
+                this.output = channel;
+            }
+            if (resumed == null && this.format.header() != null)
+                this.write(this.format.header());
+
+            while (!this.stopped && reader.hasNext()) {
+                final String targetName = reader.next();
+                final long line = reader.line();
+                synchronized (this) {
+                    if (this.failure != null)
+                        break;
+                    if (resumed != null && (line <= resumed.watermark || resumed.done.contains(line))) {
+                        this.reached = line;
+                        continue;
+                    }
+                }
+                slots.acquireUninterruptibly();
+                synchronized (this) {
+                    this.pending.add(line);
+                    this.reached = line;
+                }
+                this.resolver.submitAsync(targetName).whenComplete((info, ex) -> {
+                    Resolution resolution = (ex == null)
+                        ? new Resolution(targetName, info)
+                        : new Resolution(targetName, TargetResolver.unwrap(ex));
+                    try {
+                        this.complete(line, resolution);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+
+            /* Wait for the resolutions in flight, whether or not we stopped */
+            slots.acquireUninterruptibly(this.concurrency);
+            slots.release(this.concurrency);
+
+            synchronized (this) {
+                if (this.failure != null)
+                    throw this.failure;
+                if (this.stopped || reader.hasNext()) {
+                    this.save();
+                } else {
+                    this.output.force(false);
+                    Files.deleteIfExists(checkpoint);
+                }
+                this.output = null;
+                return this.written;
+            }
+        }
+    }
+
+    /* Stops reading targets: those in flight are completed and written, the
+     * checkpoint is saved, and run() returns */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /* The output, truncated to where it was at the time of the checkpoint,
+     * if we are resuming; otherwise, a brand new one */
+    private static FileChannel open(Path output, Checkpoint resumed) throws IOException {
+        if (resumed == null)
+            return FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < resumed.offset) {
+            channel.close();
+            throw new IOException(String.format("%s is shorter than its checkpoint (%d < %d bytes)",
+                                                output, channel.size(), resumed.offset));
+        }
+        channel.truncate(resumed.offset);
+        channel.position(resumed.offset);
+        return channel;
+    }
+
+    private synchronized void write(String text) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(text + "\n");
+        while (bytes.hasRemaining())
+            this.output.write(bytes);
+    }
+
+    /* Writes the result and updates the progress: both under the same lock,
+     * so that a checkpoint never refers to a partially written output */
+    private synchronized void complete(long line, Resolution resolution) {
+        if (this.failure != null)
+            return;
+        try {
+            this.write(this.format.format(line, resolution));
+            this.pending.remove(line);
+            this.done.add(line);
+            this.done.headSet(this.watermark(), true).clear();
+            this.written++;
+            if (++this.since_checkpoint >= this.checkpoint_every)
+                this.save();
+        } catch (IOException ex) {
+            this.failure = ex;
+            this.stopped = true;
+        }
+    }
+
+    /* Every target up to this line (inclusive) has been written */
+    private long watermark() {
+        return this.pending.isEmpty() ? this.reached : this.pending.first() - 1;
+    }
+
+    /* The output is flushed to disk first, so that it always contains at
+     * least as much as the checkpoint says; the checkpoint is written to a
+     * temporary file and then moved over the old one, atomically, so that a
+     * crash while saving it leaves the previous one intact */
+    private synchronized void save() throws IOException {
+        this.output.force(false);
+        long watermark = this.watermark();
+        Path temporary = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(String.format("%d %d%n", this.output.position(), watermark));
+            for (Long line : this.done.tailSet(watermark, false)) {
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, this.checkpoint, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        this.since_checkpoint = 0;
+    }
+
+    /* The progress of an interrupted run: the size of the output, the
+     * watermark and the lines beyond it already written. The first line of
+     * the file contains the first two values, and each one of the following
+     * lines one of the others. */
+
+    static class Checkpoint {
+
+        final long offset;
+        final long watermark;
+        final TreeSet<Long> done = new TreeSet<Long>();
+
+        Checkpoint(long offset, long watermark) {
+            this.offset = offset;
+            this.watermark = watermark;
+        }
+
+        /* null if there is no checkpoint */
+        static Checkpoint read(Path path) throws IOException {
+            if (!Files.exists(path))
+                return null;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String header = reader.readLine();
+                if (header == null)
+                    throw new IOException("empty checkpoint: " + path);
+                String[] values = header.trim().split("\\s+");
+                Checkpoint checkpoint;
+                try {
+                    checkpoint = new Checkpoint(Long.parseLong(values[0]), Long.parseLong(values[1]));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isEmpty())
+                            checkpoint.done.add(Long.parseLong(line.trim()));
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                    throw new IOException("malformed checkpoint: " + path, ex);
+                }
+                return checkpoint;
+            }
+        }
+    }
+
+    /* Resolves the targets listed in the file given as first argument and
+     * writes the results to the second one, as CSV if its name ends with
+     * ".csv" and as JSON lines otherwise. The checkpoint is saved next to
+     * it, with ".checkpoint" appended to its name, so running the same
+     * command again after an interruption resumes it. */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        if (args.length != 2) {
+            System.err.println("usage: ResolutionPipeline <targets> <output.jsonl|output.csv>");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Path checkpoint = output.resolveSibling(output.getFileName() + ".checkpoint");
+        ResolutionFormat format = output.toString().toLowerCase().endsWith(".csv")
+            ? ResolutionFormat.CSV : ResolutionFormat.JSONL;
+
+        final ResolutionPipeline pipeline = new ResolutionPipeline(new TargetResolver(), format);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        /* On Ctrl-C, drain the resolutions in flight and save the checkpoint */
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                pipeline.stop();
+                try {
+                    finished.await();
+                } catch (InterruptedException ex) {
+                    /* Nothing else we can do */
+                }
+            }
+        });
+
+        try {
+            long written = pipeline.run(input, output, checkpoint);
+            System.err.printf("%d targets written to %s%n", written, output);
+        } finally {
+            finished.countDown();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,219 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ResolutionPipelineTest {
+
+    private static final int TARGETS = 2000;
+
+    /* Resolves the targets from a LocalCatalog, but after a random delay,
+     * so that they complete out of order, as they do with SIMBAD, and keeps
+     * track of how many of them are in flight; "Failed" ones fail, and
+     * "Broken" ones fail with an IllegalStateException. After 'stop_after'
+     * submissions it stops the pipeline, if any. Also used by the tests of
+     * ResolutionPublisher. */
+    static class SlowResolver extends OfflineTargetResolver {
+
+        ResolutionPipeline pipeline = null;
+        int stop_after = Integer.MAX_VALUE;
+        final AtomicInteger submitted = new AtomicInteger();
+        final AtomicInteger in_flight = new AtomicInteger();
+        final AtomicInteger max_in_flight = new AtomicInteger();
+
+        SlowResolver(LocalCatalog catalog) {
+            super(catalog);
+        }
+
+        public CompletableFuture<TargetInformation> submitAsync(String targetName) {
+            if (this.submitted.incrementAndGet() == this.stop_after)
+                this.pipeline.stop();
+            this.max_in_flight.accumulateAndGet(this.in_flight.incrementAndGet(), Math::max);
+            long delay = ThreadLocalRandom.current().nextLong(5);
+            return CompletableFuture.supplyAsync(() -> targetName,
+                       CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                   .thenCompose(name -> name.startsWith("Failed")
+                                ? CompletableFuture.failedFuture(new SIMBADQueryException())
+                                : name.startsWith("Broken")
+                                ? CompletableFuture.failedFuture(new IllegalStateException(name))
+                                : super.submitAsync(name))
+                   .whenComplete((info, ex) -> this.in_flight.decrementAndGet());
+        }
+    }
+
+    /* "Target 0" to "Target <size - 1>", all of them stars */
+    static LocalCatalog catalog(int size) {
+        LocalCatalog catalog = new LocalCatalog();
+        for (int index = 0; index < size; index++) {
+            String[] identifiers = {"Target " + index};
+            catalog.add(identifiers, index * 0.1, index * 0.01 - 10, Double.NaN, Double.NaN, "Star");
+        }
+        return catalog;
+    }
+
+    /* Every tenth name is not in the catalog; there are also comments and
+     * blank lines, so that line numbers and indexes do not match */
+    private static Path targets(Path directory) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        lines.add("# A survey of fake targets");
+        for (int index = 0; index < TARGETS; index++) {
+            if (index % 100 == 0)
+                lines.add("");
+            if (index % 250 == 0)
+                lines.add("  # Block " + index / 250);
+            lines.add(index % 10 == 9 ? "Unknown " + index : "Target " + index);
+        }
+        Path input = directory.resolve("targets");
+        Files.write(input, lines, StandardCharsets.UTF_8);
+        return input;
+    }
+
+    /* Maps each name in the output to the number of times it appears */
+    private static Map<String, Integer> names(Path output, ResolutionFormat format) throws IOException {
+        Map<String, Integer> names = new HashMap<String, Integer>();
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        if (format.header() != null) {
+            assertEquals(format.header(), lines.get(0));
+            lines = lines.subList(1, lines.size());
+        }
+        for (String line : lines) {
+            String name;
+            if (format == ResolutionFormat.CSV) {
+                name = line.split(",")[1];
+            } else {
+                int start = line.indexOf("\"name\":\"") + 8;
+                name = line.substring(start, line.indexOf('"', start));
+            }
+            boolean unknown = name.startsWith("Unknown");
+            assertEquals(unknown, line.contains("not_found"));
+            names.merge(name, 1, Integer::sum);
+        }
+        return names;
+    }
+
+    private static void assertComplete(Map<String, Integer> names) {
+        assertEquals(TARGETS, names.size());
+        for (Map.Entry<String, Integer> entry : names.entrySet())
+            assertEquals(entry.getKey(), 1, (int) entry.getValue());
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        String list = "# comment\n\nM52\n   # indented comment\n  Mirach  \n\n";
+        TargetListReader reader = new TargetListReader(new BufferedReader(new StringReader(list)));
+        assertTrue(reader.hasNext());
+        assertEquals("M52", reader.next());
+        assertEquals(3, reader.line());
+        assertEquals("  Mirach  ", reader.next());
+        assertEquals(5, reader.line());
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test
+    public void testFormat() {
+        TargetInformation info = new TargetInformation("M52");
+        info.ra_deg = 351.2;
+        info.dec_deg = 61.593;
+        info.ra = "23 24 48.00";
+        info.dec = "+61 35 34.80";
+        info.object_type = "Open (galactic) Cluster";
+        info.system = ReferenceSystem.ICRS;
+        info.epoch = 2000;
+        info.equinox = 2000;
+        Resolution found = new Resolution("M52", info);
+        Resolution missing = new Resolution("Say \"cheese\", world", new TargetNotFoundException());
+
+        assertEquals("3,M52,found,351.2,61.593,23 24 48.00,+61 35 34.80,Open (galactic) Cluster,,,ICRS,2000,2000",
+                     ResolutionFormat.CSV.format(3, found));
+        assertEquals("7,\"Say \"\"cheese\"\", world\",not_found,,,,,,,,,,",
+                     ResolutionFormat.CSV.format(7, missing));
+        assertEquals("{\"line\":7,\"name\":\"Say \\\"cheese\\\", world\",\"status\":\"not_found\"}",
+                     ResolutionFormat.JSONL.format(7, missing));
+        String json = ResolutionFormat.JSONL.format(3, found);
+        assertTrue(json.contains("\"ra_deg\":351.2,"));
+        assertTrue(json.contains("\"pm_ra\":null,"));
+        assertTrue(json.contains("\"system\":\"ICRS\""));
+        assertEquals("failed", ResolutionFormat.status(new Resolution("M52", new SIMBADQueryException())));
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        Path directory = Files.createTempDirectory("pipeline");
+        Path output = directory.resolve("results.jsonl");
+        Path checkpoint = directory.resolve("results.checkpoint");
+
+        SlowResolver resolver = new SlowResolver(catalog(TARGETS));
+        ResolutionPipeline pipeline = new ResolutionPipeline(resolver, ResolutionFormat.JSONL, 16);
+        pipeline.checkpoint_every = 100;
+        assertEquals(TARGETS, pipeline.run(targets(directory), output, checkpoint));
+        assertComplete(names(output, ResolutionFormat.JSONL));
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    /* Stop the run half-way, simulate a crash that leaves a partial line
+     * after the checkpoint, and resume it: every target must be written,
+     * and only once */
+
+    @Test
+    public void testResume() throws IOException {
+        Path directory = Files.createTempDirectory("pipeline");
+        Path input = targets(directory);
+        Path output = directory.resolve("results.csv");
+        Path checkpoint = directory.resolve("results.checkpoint");
+
+        SlowResolver resolver = new SlowResolver(catalog(TARGETS));
+        ResolutionPipeline pipeline = new ResolutionPipeline(resolver, ResolutionFormat.CSV, 32);
+        pipeline.checkpoint_every = 50;
+        resolver.pipeline = pipeline;
+        resolver.stop_after = 700;
+
+        long first = pipeline.run(input, output, checkpoint);
+        assertTrue(first >= 700 && first < TARGETS);
+        assertTrue(Files.exists(checkpoint));
+        assertEquals(first, names(output, ResolutionFormat.CSV).size());
+
+        Files.write(output, "1234,Target 0,fou".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        resolver.stop_after = Integer.MAX_VALUE;
+        long second = pipeline.run(input, output, checkpoint);
+        assertEquals(TARGETS, first + second);
+        assertComplete(names(output, ResolutionFormat.CSV));
+        assertFalse(Files.exists(checkpoint));
+    }
+}
@@ -0,0 +1,275 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Resolves a list of targets and publishes the information of each one of
+ * them, as a Flow.Publisher (i.e., Reactive Streams), in order of completion.
+ * Lookups are started only as the subscriber asks for results: there are
+ * never more in flight, plus resolved but not yet delivered, than what has
+ * been requested and not delivered yet, nor more than 'concurrency'. A slow
+ * subscriber thus holds back the resolutions, while a fast one that requests
+ * many results at once keeps up to 'concurrency' queries to SIMBAD
+ * overlapping; and no results pile up in memory either way.
+ *
+ * Targets that are not found (TargetNotFoundException) are skipped, as in
+ * a list of them there will always be a few. If a lookup fails for any other
+ * reason, such as a SIMBADQueryException, the subscriber receives onError()
+ * with that error and no more targets are resolved, since the results would
+ * be incomplete, unless 'skip_failures' is set, in which case these targets
+ * are skipped too.
+ *
+ * The publisher is cold: each subscriber resolves the whole list, from a new
+ * iterator, although the queries in flight for the same target are shared
+ * (see TargetResolver.submitAsync()). The subscriber is always signalled
+ * from 'executor', never from the threads of the resolver or from within
+ * Subscription.request(), so it may block or request more from onNext() --
+ * unless the executor rejects the task, in which case onError() is called
+ * from the thread that was refused, with the RejectedExecutionException. */
+
+public class ResolutionPublisher implements Flow.Publisher<TargetInformation> {
+
+    /* The default maximum number of resolutions in flight per subscriber */
+    public static final int DEFAULT_CONCURRENCY = 32;
+
+    public final TargetResolver resolver;
+    public final Iterable<String> targetNames;
+    public final int concurrency;
+    public boolean skip_failures = false;
+    public Executor executor = ForkJoinPool.commonPool();
+
+    public ResolutionPublisher(TargetResolver resolver, Iterable<String> targetNames, int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive");
+        this.resolver = resolver;
+        this.targetNames = targetNames;
+        this.concurrency = concurrency;
+    }
+
+    public ResolutionPublisher(TargetResolver resolver, Iterable<String> targetNames) {
+        this(resolver, targetNames, DEFAULT_CONCURRENCY);
+    }
+
+    /* The error with which a lookup failed, as given to onError(): not
+     * TargetResolver.unwrap(), which would hide whatever is not a query
+     * failure behind a SIMBADQueryException without a cause */
+    private static Exception error(Throwable ex) {
+        while (ex instanceof CompletionException && ex.getCause() != null)
+            ex = ex.getCause();
+        if (ex instanceof Exception)
+            return (Exception) ex;
+        SIMBADQueryException failure = new SIMBADQueryException();
+        failure.initCause(ex);
+        return failure;
+    }
+
+    public void subscribe(Flow.Subscriber<? super TargetInformation> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Lookups lookups = new Lookups(subscriber, this.skip_failures);
+        lookups.signal();  /* onSubscribe(), then whatever is requested */
+    }
+
+    /* The subscription of a subscriber. All the work (calling the subscriber,
+     * starting lookups, handling those completed) is done in drain(), which
+     * runs in 'executor' and never twice at the same time: 'pending' counts
+     * the calls to signal() since drain() started, so that if something
+     * happens while it runs it goes through the loop once more instead of
+     * a second drain() being scheduled. */
+    private class Lookups implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super TargetInformation> subscriber;
+        private final boolean skip_failures;
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final ConcurrentLinkedQueue<Resolution> completed = new ConcurrentLinkedQueue<Resolution>();
+        private volatile boolean cancelled = false;
+        private volatile Throwable invalid = null;  /* a request() that was not positive */
+
+        /* Only used within drain(), or rejected() */
+        private boolean subscribed = false;
+        private boolean finished = false;
+        private Iterator<String> names = null;
+        private long delivered = 0;
+        private int outstanding = 0;  /* lookups started whose result was not yet taken */
+
+        Lookups(Flow.Subscriber<? super TargetInformation> subscriber, boolean skip_failures) {
+            this.subscriber = subscriber;
+            this.skip_failures = skip_failures;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                /* Rule 3.9 */
+                this.invalid = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                this.requested.accumulateAndGet(n, (total, more) -> {
+                    long sum = total + more;
+                    return (sum < 0) ? Long.MAX_VALUE : sum;  /* overflow: unbounded */
+                });
+            }
+            this.signal();
+        }
+
+        public void cancel() {
+            this.cancelled = true;
+            this.signal();
+        }
+
+        void signal() {
+            if (this.pending.getAndIncrement() == 0) {
+                try {
+                    ResolutionPublisher.this.executor.execute(this::drain);
+                } catch (RuntimeException ex) {
+                    this.rejected(ex);
+                }
+            }
+        }
+
+        /* The executor rejected drain(), so nothing could ever be signalled
+         * from it: the subscriber is told here instead, in place of drain()
+         * (which is not running, as 'pending' was zero), that the publisher
+         * failed (rule 1.9). 'pending' is then reset, so that a later signal()
+         * tries again, and will find the subscription finished. */
+        private void rejected(RuntimeException ex) {
+            try {
+                if (!this.finished) {
+                    if (!this.subscribed) {
+                        this.subscribed = true;
+                        this.subscriber.onSubscribe(this);
+                    }
+                    this.fail(ex);
+                }
+            } catch (RuntimeException thrown) {
+                /* The subscriber threw, as in drain() */
+                this.finish();
+            }
+            this.pending.set(0);
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    this.step();
+                } catch (RuntimeException ex) {
+                    /* The subscriber threw, which it must not do (rule 2.13) */
+                    this.finish();
+                }
+                missed = this.pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void step() {
+
+            if (this.finished) {
+                this.completed.clear();
+                return;
+            }
+            if (!this.subscribed) {
+                this.subscribed = true;
+                try {
+                    this.names = ResolutionPublisher.this.targetNames.iterator();
+                } catch (RuntimeException ex) {
+                    this.subscriber.onSubscribe(this);
+                    this.fail(ex);
+                    return;
+                }
+                this.subscriber.onSubscribe(this);
+            }
+            if (this.cancelled) {
+                this.finish();
+                return;
+            }
+            if (this.invalid != null) {
+                this.fail(this.invalid);
+                return;
+            }
+
+            /* Deliver as many results as requested, and skip the targets not
+             * found whether or not there is demand, as they deliver nothing */
+            Resolution resolution;
+            while ((resolution = this.completed.peek()) != null) {
+                if (resolution.found() && this.delivered >= this.requested.get())
+                    break;
+                this.completed.poll();
+                this.outstanding--;
+                if (resolution.found()) {
+                    this.delivered++;
+                    this.subscriber.onNext(resolution.info);
+                } else if (!(resolution.error instanceof TargetNotFoundException) && !this.skip_failures) {
+                    this.fail(resolution.error);
+                    return;
+                }
+                if (this.cancelled) {
+                    this.finish();
+                    return;
+                }
+            }
+
+            /* Start as many lookups as results are still wanted */
+            long requested = this.requested.get();
+            boolean exhausted;
+            try {
+                while (this.outstanding < ResolutionPublisher.this.concurrency &&
+                       this.outstanding < requested - this.delivered && this.names.hasNext()) {
+                    String targetName = this.names.next();
+                    this.outstanding++;
+                    ResolutionPublisher.this.resolver.submitAsync(targetName).whenComplete((info, ex) -> {
+                        this.completed.add((ex == null)
+                                           ? new Resolution(targetName, info)
+                                           : new Resolution(targetName, ResolutionPublisher.error(ex)));
+                        this.signal();
+                    });
+                }
+                exhausted = this.outstanding == 0 && !this.names.hasNext();
+            } catch (RuntimeException ex) {
+                /* The iterator or the resolver threw, not the subscriber */
+                this.fail(ex);
+                return;
+            }
+
+            if (exhausted) {
+                this.finish();
+                this.subscriber.onComplete();
+            }
+        }
+
+        private void fail(Throwable ex) {
+            this.finish();
+            this.subscriber.onError(ex);
+        }
+
+        /* No more signals, lookups or references to what is left (rule 3.13) */
+        private void finish() {
+            this.finished = true;
+            this.cancelled = true;
+            this.names = null;
+            this.completed.clear();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ResolutionPublisherTest {
+
+    private static final int TARGETS = 500;
+
+    /* See ResolutionPipelineTest.SlowResolver */
+    private static ResolutionPipelineTest.SlowResolver resolver() {
+        return new ResolutionPipelineTest.SlowResolver(ResolutionPipelineTest.catalog(TARGETS));
+    }
+
+    /* Every tenth name, if 'unknown', is not in the catalog */
+    private static List<String> names(boolean unknown) {
+        List<String> names = new ArrayList<String>();
+        for (int index = 0; index < TARGETS; index++)
+            names.add(unknown && index % 10 == 9 ? "Unknown " + index : "Target " + index);
+        return names;
+    }
+
+    /* Requests 'batch' results at a time, once the previous ones arrive, and
+     * cancels after 'cancel_after' of them, if any */
+    private static class Recorder implements Flow.Subscriber<TargetInformation> {
+
+        final long batch;
+        int cancel_after = Integer.MAX_VALUE;
+        final ResolutionPipelineTest.SlowResolver resolver;
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error = null;
+        volatile boolean completed = false;
+        volatile int most_ahead = 0;  /* lookups started beyond those delivered and requested */
+        Flow.Subscription subscription;
+        long left = 0;
+
+        Recorder(ResolutionPipelineTest.SlowResolver resolver, long batch) {
+            this.resolver = resolver;
+            this.batch = batch;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.left = this.batch;
+            subscription.request(this.batch);
+        }
+
+        public void onNext(TargetInformation info) {
+            this.names.add(info.name);
+            int ahead = this.resolver.submitted.get() - this.names.size();
+            this.most_ahead = Math.max(this.most_ahead, ahead);
+            if (this.names.size() == this.cancel_after) {
+                this.subscription.cancel();
+                this.done.countDown();
+                return;
+            }
+            if (--this.left == 0) {
+                this.left = this.batch;
+                this.subscription.request(this.batch);
+            }
+        }
+
+        public void onError(Throwable ex) {
+            this.error = ex;
+            this.done.countDown();
+        }
+
+        public void onComplete() {
+            this.completed = true;
+            this.done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(this.done.await(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testAll() throws InterruptedException {
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names(true), 16);
+        Recorder recorder = new Recorder(resolver, Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        recorder.await();
+
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+        assertEquals(TARGETS - TARGETS / 10, recorder.names.size());
+        assertEquals(TARGETS - TARGETS / 10, new HashSet<String>(recorder.names).size());
+        assertEquals(TARGETS, resolver.submitted.get());
+        assertTrue(resolver.max_in_flight.get() <= 16);
+        assertTrue(resolver.max_in_flight.get() > 1);
+    }
+
+    /* One at a time: never more than one lookup ahead of the subscriber */
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names(false).subList(0, 100));
+        Recorder recorder = new Recorder(resolver, 1);
+        publisher.subscribe(recorder);
+        recorder.await();
+
+        assertTrue(recorder.completed);
+        assertEquals(100, recorder.names.size());
+        assertTrue(recorder.most_ahead <= 1);
+        assertEquals(1, resolver.max_in_flight.get());
+
+        /* In batches of ten: up to ten lookups in flight */
+        resolver = resolver();
+        publisher = new ResolutionPublisher(resolver, names(false).subList(0, 100));
+        recorder = new Recorder(resolver, 10);
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertEquals(100, recorder.names.size());
+        assertTrue(recorder.most_ahead <= 10);
+        assertTrue(resolver.max_in_flight.get() <= 10);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names(false), 8);
+        Recorder recorder = new Recorder(resolver, 20);
+        recorder.cancel_after = 25;
+        publisher.subscribe(recorder);
+        recorder.await();
+
+        Thread.sleep(50);
+        assertEquals(25, recorder.names.size());
+        assertFalse(recorder.completed);
+        assertNull(recorder.error);
+        assertTrue(resolver.submitted.get() <= 40);
+    }
+
+    /* Rule 3.9 */
+    @Test
+    public void testInvalidRequest() throws InterruptedException {
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names(false));
+        Recorder recorder = new Recorder(resolver, 0);
+        publisher.subscribe(recorder);
+        recorder.await();
+
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertEquals(0, resolver.submitted.get());
+    }
+
+    @Test
+    public void testFailure() throws InterruptedException {
+        List<String> names = names(false).subList(0, 100);
+        names.set(50, "Failed");
+
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        Recorder recorder = new Recorder(resolver, Long.MAX_VALUE);
+        new ResolutionPublisher(resolver, names, 4).subscribe(recorder);
+        recorder.await();
+        assertTrue(recorder.error instanceof SIMBADQueryException);
+        assertFalse(recorder.completed);
+        assertTrue(recorder.names.size() < 100);
+
+        resolver = resolver();
+        recorder = new Recorder(resolver, Long.MAX_VALUE);
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names, 4);
+        publisher.skip_failures = true;
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertTrue(recorder.completed);
+        assertEquals(99, recorder.names.size());
+    }
+
+    /* Not only query failures: any error but TargetNotFoundException */
+    @Test
+    public void testOtherFailure() throws InterruptedException {
+        List<String> names = names(true).subList(0, 100);
+        names.set(50, "Broken 50");
+
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        Recorder recorder = new Recorder(resolver, Long.MAX_VALUE);
+        new ResolutionPublisher(resolver, names, 4).subscribe(recorder);
+        recorder.await();
+        assertTrue(recorder.error instanceof IllegalStateException);
+        assertEquals("Broken 50", recorder.error.getMessage());
+        assertFalse(recorder.completed);
+
+        resolver = resolver();
+        recorder = new Recorder(resolver, Long.MAX_VALUE);
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names, 4);
+        publisher.skip_failures = true;
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertTrue(recorder.completed);
+        assertEquals(89, recorder.names.size());
+    }
+
+    /* An iterator that throws is reported, also once all the lookups started
+     * have been delivered and no more have been requested */
+    @Test
+    public void testIteratorThrows() throws InterruptedException {
+        final List<String> names = names(false);
+        Iterable<String> broken = () -> new Iterator<String>() {
+            int index = 0;
+            public boolean hasNext() {
+                if (this.index == 5)
+                    throw new UncheckedIOException(new IOException("truncated"));
+                return true;
+            }
+            public String next() {
+                return names.get(this.index++);
+            }
+        };
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        Recorder recorder = new Recorder(resolver, 5) {
+            public void onNext(TargetInformation info) {
+                this.names.add(info.name);
+            }
+        };
+        new ResolutionPublisher(resolver, broken, 4).subscribe(recorder);
+        recorder.await();
+        assertEquals(5, recorder.names.size());
+        assertTrue(recorder.error instanceof UncheckedIOException);
+        assertFalse(recorder.completed);
+    }
+
+    /* If the executor refuses to run it, the subscriber is still told */
+    @Test
+    public void testRejected() throws InterruptedException {
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names(false));
+        publisher.executor = task -> {
+            throw new RejectedExecutionException();
+        };
+        Recorder recorder = new Recorder(resolver, Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        recorder.await();
+        assertNotNull(recorder.subscription);
+        assertTrue(recorder.error instanceof RejectedExecutionException);
+        assertEquals(0, resolver.submitted.get());
+
+        /* Nothing more once finished, even if the executor is back */
+        publisher.executor = Runnable::run;
+        recorder.error = null;
+        recorder.subscription.request(10);
+        assertNull(recorder.error);
+        assertEquals(0, resolver.submitted.get());
+    }
+
+    /* Each subscriber resolves the whole list */
+    @Test
+    public void testSubscribers() throws InterruptedException {
+        ResolutionPipelineTest.SlowResolver resolver = resolver();
+        ResolutionPublisher publisher = new ResolutionPublisher(resolver, names(true));
+        Recorder first = new Recorder(resolver, 7);
+        Recorder second = new Recorder(resolver, Long.MAX_VALUE);
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        first.await();
+        second.await();
+
+        Set<String> expected = new HashSet<String>(second.names);
+        assertEquals(TARGETS - TARGETS / 10, expected.size());
+        assertEquals(expected, new HashSet<String>(first.names));
+    }
+
+    /* Rule 1.9 */
+    @Test
+    public void testNullSubscriber() {
+        try {
+            new ResolutionPublisher(resolver(), names(false)).subscribe(null);
+            fail("NullPointerException expected");
+        } catch (NullPointerException ex) {
+            /* As expected */
+        }
+    }
+}
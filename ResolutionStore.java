@@ -0,0 +1,263 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/* An on-disk store of the targets resolved so far, so that a restarted
+ * Observation Tool does not begin cold, depending on SIMBAD for every name,
+ * and can keep working when the network is down. The file is memory-mapped
+ * at startup and read in place: each target is a fixed-width record, so no
+ * parsing is needed other than scanning the names to build the index.
+ *
+ * The layout is as follows, with all values in big-endian byte order:
+ *
+ *   Header (32 bytes): magic number "TRGSTORE" (8 bytes), format version
+ *   (int), record size (int), number of records (int), reserved (12 bytes).
+ *
+ *   Records (176 bytes each): name (64 bytes: length as an unsigned byte,
+ *   followed by the UTF-8 bytes), object type (64 bytes, same encoding),
+ *   presence flags (byte), reference system (byte, its ordinal), reserved
+ *   (2 bytes), epoch (int), equinox (int), right ascension, declination and
+ *   proper motions (four doubles).
+ *
+ * Records are only ever appended: storing a target that is already in the
+ * store adds a new record which from then on replaces the old one. The number
+ * of records in the header is updated after each record has been written, so
+ * a record left half-written by a crash is ignored when the file is opened. */
+
+public class ResolutionStore implements Closeable {
+
+    private static final long MAGIC = 0x54524753544f5245L;  /* "TRGSTORE" */
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 16;
+
+    public static final int RECORD_SIZE = 176;
+    public static final int MAX_STRING_BYTES = 63;  /* of the name and object type */
+
+    private static final int NAME_OFFSET = 0;
+    private static final int TYPE_OFFSET = 64;
+    private static final int FLAGS_OFFSET = 128;
+    private static final int SYSTEM_OFFSET = 129;
+    private static final int EPOCH_OFFSET = 132;
+    private static final int EQUINOX_OFFSET = 136;
+    private static final int RA_OFFSET = 140;
+    private static final int DEC_OFFSET = 148;
+    private static final int PM_RA_OFFSET = 156;
+    private static final int PM_DEC_OFFSET = 164;
+
+    /* Which of the optional values are present in a record */
+    private static final int HAS_RA = 1;
+    private static final int HAS_DEC = 1 << 1;
+    private static final int HAS_PM_RA = 1 << 2;
+    private static final int HAS_PM_DEC = 1 << 3;
+    private static final int HAS_TYPE = 1 << 4;
+
+    /* The number of records for which room is made at a time */
+    private static final int GROWTH = 1024;
+
+    public final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;  /* records that fit in the mapped region */
+    private int count;     /* and records actually written */
+
+    /* The record, by number, in which each target is found */
+    private final HashMap<ResolutionKey, Integer> index = new HashMap<ResolutionKey, Integer>();
+
+    /* Opens the store at 'path', creating it if it does not exist. Throws
+     * IOException if the file exists but is not a valid store. */
+    public ResolutionStore(Path path) throws IOException {
+
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            long size = this.channel.size();
+            if (size == 0) {
+                this.map(GROWTH);
+                this.buffer.putLong(0, MAGIC);
+                this.buffer.putInt(8, VERSION);
+                this.buffer.putInt(12, RECORD_SIZE);
+                this.buffer.putInt(COUNT_OFFSET, 0);
+                this.count = 0;
+            } else {
+                if (size < HEADER_SIZE)
+                    throw new IOException("not a resolution store: " + path);
+                this.map((int) ((size - HEADER_SIZE) / RECORD_SIZE));
+                if (this.buffer.getLong(0) != MAGIC ||
+                        this.buffer.getInt(8) != VERSION ||
+                        this.buffer.getInt(12) != RECORD_SIZE)
+                    throw new IOException("not a resolution store: " + path);
+                this.count = Math.min(this.buffer.getInt(COUNT_OFFSET), this.capacity);
+                for (int record = 0; record < this.count; record++)
+                    this.index.put(this.key(record), record);
+            }
+        } catch (IOException ex) {
+            this.channel.close();
+            throw ex;
+        }
+    }
+
+    /* Maps the header and room for 'capacity' records, growing the file if needed */
+    private void map(int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.capacity = capacity;
+    }
+
+    private static int offset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    /* The key of a record, checking that it makes sense, as the file may have
+     * been truncated or corrupted: the lengths of the strings must fit in
+     * their fields and the reference system must be one that we know */
+    private ResolutionKey key(int record) throws IOException {
+        int offset = ResolutionStore.offset(record);
+        int system = this.buffer.get(offset + SYSTEM_OFFSET);
+        if (system < 0 || system >= ReferenceSystem.values().length ||
+                (this.buffer.get(offset + NAME_OFFSET) & 0xff) > MAX_STRING_BYTES ||
+                (this.buffer.get(offset + TYPE_OFFSET) & 0xff) > MAX_STRING_BYTES)
+            throw new IOException("corrupt record " + record + " in resolution store: " + this.path);
+        return new ResolutionKey(this.get_string(offset + NAME_OFFSET),
+                ReferenceSystem.values()[system],
+                this.buffer.getInt(offset + EPOCH_OFFSET),
+                this.buffer.getInt(offset + EQUINOX_OFFSET));
+    }
+
+    private String get_string(int offset) {
+        int length = this.buffer.get(offset) & 0xff;
+        byte[] bytes = new byte[length];
+        this.buffer.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void put_string(int offset, byte[] bytes) {
+        this.buffer.put(offset, (byte) bytes.length);
+        this.buffer.put(offset + 1, bytes);
+    }
+
+    /* Returns the information of the target, under the name that was stored,
+     * or null if it is not in the store */
+    public synchronized TargetInformation get(ResolutionKey key) {
+
+        Integer record = this.index.get(key);
+        if (record == null)
+            return null;
+
+        int offset = ResolutionStore.offset(record);
+        int flags = this.buffer.get(offset + FLAGS_OFFSET);
+
+        /* The reference system of the record is that of the key, and was
+         * checked, as the rest of it, when the store was opened */
+        TargetInformation info = new TargetInformation(this.get_string(offset + NAME_OFFSET));
+        info.system = key.system;
+        info.epoch = this.buffer.getInt(offset + EPOCH_OFFSET);
+        info.equinox = this.buffer.getInt(offset + EQUINOX_OFFSET);
+        if ((flags & HAS_RA) != 0)
+            info.ra_deg = this.buffer.getDouble(offset + RA_OFFSET);
+        if ((flags & HAS_DEC) != 0)
+            info.dec_deg = this.buffer.getDouble(offset + DEC_OFFSET);
+        if ((flags & HAS_PM_RA) != 0)
+            info.pm_ra = this.buffer.getDouble(offset + PM_RA_OFFSET);
+        if ((flags & HAS_PM_DEC) != 0)
+            info.pm_dec = this.buffer.getDouble(offset + PM_DEC_OFFSET);
+        if ((flags & HAS_TYPE) != 0)
+            info.object_type = this.get_string(offset + TYPE_OFFSET);
+        info.ra = TargetResolver.format_ra(info.ra_deg);
+        info.dec = TargetResolver.format_dec(info.dec_deg);
+        return info;
+    }
+
+    /* Appends the information of the target to the store. Returns false if it
+     * cannot be stored, as the name or object type are too long or the
+     * reference system, epoch or equinox are unknown. */
+    public synchronized boolean append(TargetInformation info) throws IOException {
+
+        if (info.name == null || info.system == null || info.epoch == null || info.equinox == null)
+            return false;
+
+        byte[] name = info.name.getBytes(StandardCharsets.UTF_8);
+        byte[] type = (info.object_type == null) ? new byte[0] :
+                info.object_type.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_STRING_BYTES || type.length > MAX_STRING_BYTES)
+            return false;
+
+        if (this.count == this.capacity)
+            this.map(this.capacity + GROWTH);
+
+        int flags = 0;
+        int offset = ResolutionStore.offset(this.count);
+        this.put_string(offset + NAME_OFFSET, name);
+        this.put_string(offset + TYPE_OFFSET, type);
+        this.buffer.put(offset + SYSTEM_OFFSET, (byte) info.system.ordinal());
+        this.buffer.putInt(offset + EPOCH_OFFSET, info.epoch);
+        this.buffer.putInt(offset + EQUINOX_OFFSET, info.equinox);
+        if (info.ra_deg != null) {
+            this.buffer.putDouble(offset + RA_OFFSET, info.ra_deg);
+            flags |= HAS_RA;
+        }
+        if (info.dec_deg != null) {
+            this.buffer.putDouble(offset + DEC_OFFSET, info.dec_deg);
+            flags |= HAS_DEC;
+        }
+        if (info.pm_ra != null) {
+            this.buffer.putDouble(offset + PM_RA_OFFSET, info.pm_ra);
+            flags |= HAS_PM_RA;
+        }
+        if (info.pm_dec != null) {
+            this.buffer.putDouble(offset + PM_DEC_OFFSET, info.pm_dec);
+            flags |= HAS_PM_DEC;
+        }
+        if (info.object_type != null)
+            flags |= HAS_TYPE;
+        this.buffer.put(offset + FLAGS_OFFSET, (byte) flags);
+
+        /* Only now is the record part of the store */
+        this.buffer.putInt(COUNT_OFFSET, ++this.count);
+        this.index.put(new ResolutionKey(info.name, info.system, info.epoch, info.equinox),
+                       this.count - 1);
+        return true;
+    }
+
+    /* The number of distinct targets in the store */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /* Writes the changes to the storage device */
+    public synchronized void force() {
+        this.buffer.force();
+    }
+
+    public synchronized void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+}
@@ -0,0 +1,184 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+public class ResolutionStoreTest {
+
+    /* Maximum delta between real numbers for which they are considered equal */
+    private static double delta = 0.001;
+
+    private static TargetInformation mirach() {
+        TargetInformation info = new TargetInformation("Mirach");
+        info.ra_deg = 17.433016;
+        info.dec_deg = 35.620558;
+        info.epoch = 2000;
+        info.equinox = 2000;
+        info.system = ReferenceSystem.ICRS;
+        info.pm_ra = 175.90;
+        info.pm_dec = -112.20;
+        info.object_type = "Variable Star";
+        return info;
+    }
+
+    /* What is written to the store must be read back, also after reopening
+     * it, and missing values (such as the proper motions of galaxies) must
+     * still be missing */
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+
+        File file = File.createTempFile("resolution_store_", ".bin");
+        file.delete();
+        file.deleteOnExit();
+
+        ResolutionStore store = new ResolutionStore(file.toPath());
+        assertTrue(store.append(mirach()));
+
+        TargetInformation galaxy = new TargetInformation("M101");
+        galaxy.ra_deg = 210.80212;
+        galaxy.dec_deg = 54.34808;
+        galaxy.epoch = 2012;
+        galaxy.equinox = 2000;
+        galaxy.system = ReferenceSystem.FK5;
+        galaxy.object_type = "Interacting Galaxies";
+        assertTrue(store.append(galaxy));
+
+        /* More records than fit in the initially mapped region */
+        for (int index = 0; index < 3000; index++) {
+            TargetInformation info = mirach();
+            info.name = "Target " + index;
+            info.ra_deg = (double) index / 10;
+            assertTrue(store.append(info));
+        }
+        store.close();
+
+        store = new ResolutionStore(file.toPath());
+        assertEquals(3002, store.size());
+
+        TargetInformation info = store.get(new ResolutionKey("mirach", ReferenceSystem.ICRS, 2000, 2000));
+        assertEquals("Mirach", info.name);
+        assertEquals(17.433016, info.ra_deg, delta);
+        assertEquals(35.620558, info.dec_deg, delta);
+        assertEquals("01 09 43.92", info.ra);
+        assertEquals(175.90, info.pm_ra, delta);
+        assertEquals(-112.20, info.pm_dec, delta);
+        assertEquals("Variable Star", info.object_type);
+        assertEquals(ReferenceSystem.ICRS, info.system);
+
+        info = store.get(new ResolutionKey("M101", ReferenceSystem.FK5, 2012, 2000));
+        assertEquals(54.34808, info.dec_deg, delta);
+        assertNull(info.pm_ra);
+        assertNull(info.pm_dec);
+
+        assertEquals(299.9, store.get(new ResolutionKey("Target 2999",
+                ReferenceSystem.ICRS, 2000, 2000)).ra_deg, delta);
+
+        /* Different reference system, epoch or equinox: not the same query */
+        assertNull(store.get(new ResolutionKey("M101", ReferenceSystem.ICRS, 2012, 2000)));
+        store.close();
+    }
+
+    /* Storing a target again replaces the previous record */
+
+    @Test
+    public void testReplace() throws IOException {
+
+        File file = File.createTempFile("resolution_store_", ".bin");
+        file.delete();
+        file.deleteOnExit();
+
+        ResolutionStore store = new ResolutionStore(file.toPath());
+        store.append(mirach());
+        TargetInformation info = mirach();
+        info.object_type = "Red Giant Branch star";
+        store.append(info);
+        assertEquals(1, store.size());
+        assertEquals("Red Giant Branch star", store.get(
+                new ResolutionKey("Mirach", ReferenceSystem.ICRS, 2000, 2000)).object_type);
+        store.close();
+    }
+
+    /* A record with an unknown reference system, as left by a corrupt or
+     * truncated file, must be reported, naming the store */
+
+    @Test
+    public void testCorrupt() throws IOException {
+
+        File file = File.createTempFile("resolution_store_", ".bin");
+        file.delete();
+        file.deleteOnExit();
+
+        ResolutionStore store = new ResolutionStore(file.toPath());
+        store.append(mirach());
+        store.close();
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(32 + 129);  /* the reference system of the first record */
+            raw.write(99);
+        }
+        try {
+            new ResolutionStore(file.toPath());
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains(file.getPath()));
+        }
+    }
+
+    /* What is saved is what was resolved, even if the caller then modifies
+     * it, and all of it is in the store once the resolver is closed */
+
+    @Test
+    public void testPersistentResolver()
+            throws IOException, SIMBADQueryException, TargetNotFoundException {
+
+        File file = File.createTempFile("resolution_store_", ".bin");
+        file.delete();
+        file.deleteOnExit();
+
+        LocalCatalog catalog = new LocalCatalog();
+        for (int index = 0; index < 100; index++) {
+            String[] identifiers = {"Target " + index};
+            catalog.add(identifiers, index, 10, Double.NaN, Double.NaN, "Star");
+        }
+        ResolutionStore store = new ResolutionStore(file.toPath());
+        PersistentTargetResolver resolver =
+            new PersistentTargetResolver(new OfflineTargetResolver(catalog), store);
+        for (int index = 0; index < 100; index++) {
+            TargetInformation info = resolver.submit("Target " + index);
+            info.ra_deg = -1.0;
+            info.object_type = "Modified";
+        }
+        resolver.close();
+        assertEquals(100, store.size());
+        for (int index = 0; index < 100; index++) {
+            TargetInformation info = store.get(new ResolutionKey("Target " + index,
+                    ReferenceSystem.ICRS, 2000, 2000));
+            assertEquals(index, info.ra_deg, delta);
+            assertEquals("Star", info.object_type);
+        }
+        store.close();
+    }
+}
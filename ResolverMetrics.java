@@ -0,0 +1,186 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* What the resolver has been doing, published as MBeans so that it can be
+ * watched with jconsole, VisualVM or any JMX-to-whatever bridge: how long
+ * each phase of the queries takes, how they end and how many of them are
+ * in flight. There is a single instance, METRICS, shared by all the
+ * resolvers, in the same way that they share HttpTransport.
+ *
+ * The phases of a query are: building the script, 'connect' (from sending
+ * the request until the headers of the response arrive, as the HTTP client
+ * does not tell apart the connection from the wait for SIMBAD), 'transfer'
+ * (receiving the body) and parsing the output. 'total' is the time from
+ * submitAsync(String) until the TargetInformation is ready. */
+
+public class ResolverMetrics implements ResolverMetricsMBean {
+
+    public static final String DOMAIN = "TargetResolver";
+
+    public static final ResolverMetrics METRICS = new ResolverMetrics();
+    static {
+        METRICS.register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public final LatencyHistogram script_build = new LatencyHistogram("script_build");
+    public final LatencyHistogram connect = new LatencyHistogram("connect");
+    public final LatencyHistogram transfer = new LatencyHistogram("transfer");
+    public final LatencyHistogram parse = new LatencyHistogram("parse");
+    public final LatencyHistogram total = new LatencyHistogram("total");
+
+    /* The outcome of each resolution, whether single or part of a batch */
+    public final AtomicLong successes = new AtomicLong();
+    public final AtomicLong not_found = new AtomicLong();
+    public final AtomicLong query_failures = new AtomicLong();
+
+    /* The requests to SIMBAD that timed out, which are also counted as
+     * query failures, and the resolutions abandoned by their callers */
+    public final AtomicLong timeouts = new AtomicLong();
+    public final AtomicLong cancellations = new AtomicLong();
+
+    /* The duplicate requests sent to a second endpoint, be it because the
+     * first one was too slow or because it failed (see SIMBADEndpoints) */
+    public final AtomicLong hedges = new AtomicLong();
+
+    /* The queries attempted again after a failure, and those not even
+     * attempted because the circuit breaker was open */
+    public final AtomicLong retries = new AtomicLong();
+    public final AtomicLong rejections = new AtomicLong();
+
+    /* The requests to SIMBAD sent and not yet answered */
+    public final AtomicInteger in_flight = new AtomicInteger();
+
+    public ResolverMetrics() {}
+
+    /* Registers this instance and its histograms with the server. Failing
+     * to do so (e.g., because they are already registered) is not reason
+     * enough to stop resolving targets, so it is silently ignored. */
+    public void register(MBeanServer server) {
+        try {
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=ResolverMetrics"));
+            for (LatencyHistogram histogram : this.histograms()) {
+                server.registerMBean(histogram, new ObjectName(
+                        DOMAIN + ":type=Latency,name=" + histogram.name));
+            }
+        } catch (JMException ex) {}
+    }
+
+    public LatencyHistogram[] histograms() {
+        return new LatencyHistogram[] {this.script_build, this.connect, this.transfer,
+                                       this.parse, this.total};
+    }
+
+    /* Counts the outcome of a resolution: successful if 'ex' is null */
+    public void outcome(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException)
+                && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex == null)
+            this.successes.incrementAndGet();
+        else if (ex instanceof TargetNotFoundException)
+            this.not_found.incrementAndGet();
+        else if (ex instanceof CancellationException)
+            this.cancellations.incrementAndGet();
+        else
+            this.query_failures.incrementAndGet();
+    }
+
+    /* Whether the request failed because it took too long */
+    public static boolean is_timeout(Throwable ex) {
+        for (; ex != null; ex = ex.getCause()) {
+            if (ex instanceof TimeoutException || ex instanceof HttpTimeoutException)
+                return true;
+        }
+        return false;
+    }
+
+    public long getSuccesses() {
+        return this.successes.get();
+    }
+
+    public long getNotFound() {
+        return this.not_found.get();
+    }
+
+    public long getQueryFailures() {
+        return this.query_failures.get();
+    }
+
+    public long getTimeouts() {
+        return this.timeouts.get();
+    }
+
+    public long getCancellations() {
+        return this.cancellations.get();
+    }
+
+    public long getHedges() {
+        return this.hedges.get();
+    }
+
+    public long getRetries() {
+        return this.retries.get();
+    }
+
+    public long getRejections() {
+        return this.rejections.get();
+    }
+
+    public int getInFlight() {
+        return this.in_flight.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : this.histograms())
+            histogram.reset();
+        this.successes.set(0);
+        this.not_found.set(0);
+        this.query_failures.set(0);
+        this.timeouts.set(0);
+        this.cancellations.set(0);
+        this.hedges.set(0);
+        this.retries.set(0);
+        this.rejections.set(0);
+    }
+
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(String.format("found=%d not_found=%d failed=%d timeouts=%d cancelled=%d " +
+                                    "hedges=%d retries=%d rejected=%d in_flight=%d",
+                                    this.getSuccesses(), this.getNotFound(), this.getQueryFailures(),
+                                    this.getTimeouts(), this.getCancellations(), this.getHedges(),
+                                    this.getRetries(), this.getRejections(), this.getInFlight()));
+        for (LatencyHistogram histogram : this.histograms())
+            buffer.append(TargetInformation.newline).append(histogram);
+        return buffer.toString();
+    }
+}
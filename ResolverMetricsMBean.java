@@ -0,0 +1,34 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+/* The counters of ResolverMetrics published over JMX; the latencies of each
+ * phase are published separately, one LatencyHistogramMBean per phase */
+public interface ResolverMetricsMBean {
+
+    public long getSuccesses();
+    public long getNotFound();
+    public long getQueryFailures();
+    public long getTimeouts();
+    public long getCancellations();
+    public long getHedges();
+    public long getRetries();
+    public long getRejections();
+    public int getInFlight();
+    public void reset();
+}
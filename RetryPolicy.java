@@ -0,0 +1,61 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/* How many times a query to SIMBAD that failed (because of a connection
+ * error or a timeout; not finding the target is not a failure) is attempted
+ * again, and how long to wait before each attempt. The delay grows
+ * exponentially, but a random amount of it ("full jitter") is used, so that
+ * the many queries that failed at the same time, for the same hiccup, are
+ * not all retried at once again. */
+
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 100, 2000);
+
+    /* Never retry: a single attempt */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    /* Including the first one */
+    public final int max_attempts;
+
+    /* In milliseconds: the delay before the second attempt is up to
+     * base_delay, that before the third one up to twice as much, and so on,
+     * up to max_delay */
+    public final long base_delay;
+    public final long max_delay;
+
+    public RetryPolicy(int max_attempts, long base_delay, long max_delay) {
+        if (max_attempts < 1)
+            throw new IllegalArgumentException("at least one attempt is needed");
+        this.max_attempts = max_attempts;
+        this.base_delay = base_delay;
+        this.max_delay = max_delay;
+    }
+
+    /* The delay, in milliseconds, after the given attempt (the first one
+     * being zero) failed */
+    public long delay(int attempt) {
+        long ceiling = Math.min(this.max_delay, this.base_delay << Math.min(attempt, 30));
+        if (ceiling <= 0)
+            return 0;
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
@@ -0,0 +1,308 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/* Several SIMBAD servers (e.g., the one at Strasbourg and its mirror at the
+ * CfA) to which the same script can be submitted. Each query goes first to
+ * the one that has been the fastest lately and, if it has not answered
+ * after the usual time (a percentile of its latencies), a duplicate, hedged
+ * request is sent to the next one; whichever answers first wins. A request
+ * that fails is immediately retried on the next server, if any.
+ *
+ * This trades a few percent more requests for much shorter tail latencies:
+ * with the default 95th percentile, at most one in twenty queries is sent
+ * twice, and these are exactly the ones that would otherwise be the slowest.
+ * Once there is a winner the other requests are cancelled, and HttpTransport
+ * aborts their exchanges, closing the connections; but by then SIMBAD has
+ * usually received the script and may well be running it, so each hedged
+ * query does cost the servers twice, not merely race on our side.
+ *
+ * Set the simbad.mirrors system property to a comma-separated list of base
+ * URLs (see SIMBADQuerier._simbadBaseURL) to use them by default. */
+
+public class SIMBADEndpoints {
+
+    public static final String STRASBOURG = "http://simbad.u-strasbg.fr/simbad/sim-script?script=";
+    public static final String CFA = "http://simbad.cfa.harvard.edu/simbad/sim-script?script=";
+
+    /* The endpoints of new resolvers; null means just SIMBADQuerier._simbadBaseURL */
+    public static final SIMBADEndpoints DEFAULT = SIMBADEndpoints.from_property("simbad.mirrors");
+
+    /* The number of latencies needed before the percentile is trusted */
+    private static final int MIN_SAMPLES = 20;
+
+    /* Weight of each new latency in the moving average used for ranking */
+    private static final double SMOOTHING = 0.2;
+
+    public static class Endpoint {
+
+        public final String url;
+        public final LatencyHistogram latency;
+
+        /* Exponentially weighted moving average of the latencies, in
+         * microseconds (negative until the first one is known), and the
+         * number of requests that have failed in a row */
+        private volatile double average = -1;
+        private final AtomicInteger failures = new AtomicInteger();
+
+        public Endpoint(String url) {
+            this.url = url;
+            this.latency = new LatencyHistogram(url);
+        }
+
+        private synchronized void success(long micros) {
+            this.latency.record(micros, TimeUnit.MICROSECONDS);
+            this.average = (this.average < 0) ? micros
+                    : SMOOTHING * micros + (1 - SMOOTHING) * this.average;
+            this.failures.set(0);
+        }
+
+        /* A request still unanswered after 'micros', when another endpoint
+         * already answered it: we only know that this one is slower */
+        private synchronized void slower_than(long micros) {
+            if (micros > this.average)
+                this.average = (this.average < 0) ? micros
+                        : SMOOTHING * micros + (1 - SMOOTHING) * this.average;
+        }
+
+        private void failure() {
+            this.failures.incrementAndGet();
+        }
+
+        /* The lower, the better. Servers not tried yet come first, so that
+         * they get the chance to be measured; each failure in a row counts
+         * as one extra second. */
+        public double score() {
+            double average = Math.max(this.average, 0);
+            int failures = this.failures.get();
+            return average * (1 + failures) + failures * 1e6;
+        }
+
+        public String toString() {
+            return String.format("%s (%.1f ms, %d failures)", this.url,
+                                 Math.max(this.average, 0) / 1000.0, this.failures.get());
+        }
+    }
+
+    public final List<Endpoint> endpoints;
+
+    /* The percentile of the latencies of an endpoint after which the hedged
+     * request is sent, and the delay used until enough latencies are known.
+     * The delay is never shorter than min_hedge_delay, in milliseconds. */
+    public volatile double hedge_percentile = 95;
+    public volatile long initial_hedge_delay = 1000;
+    public volatile long min_hedge_delay = 50;
+
+    public SIMBADEndpoints(List<String> urls) {
+        if (urls.isEmpty())
+            throw new IllegalArgumentException("at least one endpoint is needed");
+        List<Endpoint> endpoints = new ArrayList<Endpoint>(urls.size());
+        for (String url : urls)
+            endpoints.add(new Endpoint(url));
+        this.endpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    public SIMBADEndpoints(String... urls) {
+        this(Arrays.asList(urls));
+    }
+
+    /* The primary SIMBAD server and its mirror */
+    public static SIMBADEndpoints mirrors() {
+        return new SIMBADEndpoints(STRASBOURG, CFA);
+    }
+
+    private static SIMBADEndpoints from_property(String property) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty())
+            return null;
+        List<String> urls = new ArrayList<String>();
+        for (String url : value.split(",")) {
+            if (!url.trim().isEmpty())
+                urls.add(url.trim());
+        }
+        return new SIMBADEndpoints(urls);
+    }
+
+    /* The endpoints, from the fastest to the slowest; for equal scores, in
+     * the order in which they were given */
+    public List<Endpoint> ranked() {
+        List<Endpoint> ranked = new ArrayList<Endpoint>(this.endpoints);
+        ranked.sort(Comparator.comparingDouble(Endpoint::score));
+        return ranked;
+    }
+
+    /* How long, in milliseconds, to wait for the endpoint before hedging */
+    public long hedge_delay(Endpoint endpoint) {
+        if (endpoint.latency.getCount() < MIN_SAMPLES)
+            return this.initial_hedge_delay;
+        long micros = endpoint.latency.percentile(this.hedge_percentile);
+        return Math.max(this.min_hedge_delay, TimeUnit.MICROSECONDS.toMillis(micros));
+    }
+
+    /* Sends the request, built by 'request' for the base URL of an endpoint,
+     * to the endpoints in order of preference, as described above, until one
+     * of them answers or all of them fail. The latencies are recorded, and
+     * used for hedging, only if 'hedged': batch queries take much longer than
+     * single ones, and would spoil the percentiles. 'timing' is filled in with
+     * that of the request that won. */
+
+    public CompletableFuture<byte[]> send(
+            BiFunction<String, HttpTransport.Timing, CompletableFuture<byte[]>> request,
+            HttpTransport.Timing timing, boolean hedged) {
+        return new Attempts(this.ranked(), request, timing, hedged).result;
+    }
+
+    private static class Attempt {
+
+        final Endpoint endpoint;
+        final long start;
+        final CompletableFuture<byte[]> future;
+
+        Attempt(Endpoint endpoint, long start, CompletableFuture<byte[]> future) {
+            this.endpoint = endpoint;
+            this.start = start;
+            this.future = future;
+        }
+    }
+
+    private class Attempts {
+
+        final List<Endpoint> ranked;
+        final BiFunction<String, HttpTransport.Timing, CompletableFuture<byte[]>> request;
+        final HttpTransport.Timing timing;
+        final boolean hedged;
+
+        final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+        final List<Attempt> sent = new CopyOnWriteArrayList<Attempt>();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+
+        Attempts(List<Endpoint> ranked,
+                 BiFunction<String, HttpTransport.Timing, CompletableFuture<byte[]>> request,
+                 HttpTransport.Timing timing, boolean hedged) {
+            this.ranked = ranked;
+            this.request = request;
+            this.timing = timing;
+            this.hedged = hedged;
+            this.launch();
+            /* The losers are not needed any more, whoever the winner was
+             * (or if the caller gave up, e.g. because of the timeout) */
+            this.result.whenComplete((body, ex) -> {
+                for (Attempt attempt : this.sent)
+                    attempt.future.cancel(true);
+            });
+        }
+
+        /* The endpoints still waiting for their answers are now known to be
+         * slower than the winner */
+        void slower_than(Endpoint winner) {
+            long now = System.nanoTime();
+            for (Attempt attempt : this.sent) {
+                if (attempt.endpoint != winner && !attempt.future.isDone())
+                    attempt.endpoint.slower_than(TimeUnit.NANOSECONDS.toMicros(now - attempt.start));
+            }
+        }
+
+        /* Sends the request to the next endpoint, if any and if there is
+         * still no answer; returns whether it was sent */
+        boolean launch() {
+            if (this.result.isDone())
+                return false;
+            final int index = this.next.getAndIncrement();
+            if (index >= this.ranked.size())
+                return false;
+
+            final Endpoint endpoint = this.ranked.get(index);
+            final HttpTransport.Timing timing = new HttpTransport.Timing();
+            final long start = System.nanoTime();
+            this.pending.incrementAndGet();
+            if (index > 0)
+                ResolverMetrics.METRICS.hedges.incrementAndGet();
+
+            /* A request that cannot even be sent is one more failed attempt,
+             * or 'pending' would never go back to zero */
+            CompletableFuture<byte[]> attempt;
+            try {
+                attempt = this.request.apply(endpoint.url, timing);
+            } catch (RuntimeException ex) {
+                attempt = CompletableFuture.failedFuture(ex);
+            }
+            this.sent.add(new Attempt(endpoint, start, attempt));
+            attempt.whenComplete((body, ex) -> {
+                if (ex == null) {
+                    if (this.hedged)
+                        endpoint.success(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    synchronized (this) {
+                        if (this.result.isDone())
+                            return;
+                        /* Before anyone is told, so that the ranking is
+                         * already up to date when the result arrives */
+                        if (this.hedged)
+                            this.slower_than(endpoint);
+                        this.timing.sent = timing.sent;
+                        this.timing.headers = timing.headers;
+                        this.timing.received = timing.received;
+                        this.result.complete(body);
+                    }
+                } else {
+                    if (this.result.isDone())
+                        return;  /* e.g., cancelled because another one won */
+                    endpoint.failure();
+                    /* This one first, as the next attempt may fail (and get
+                     * here) before launch() returns */
+                    int left = this.pending.decrementAndGet();
+                    boolean retried = this.launch();
+                    if (left == 0 && !retried)
+                        this.result.completeExceptionally(ex);
+                }
+            });
+
+            /* The hedged request, if this one takes longer than usual */
+            if (this.hedged && index + 1 < this.ranked.size()) {
+                CompletableFuture.delayedExecutor(SIMBADEndpoints.this.hedge_delay(endpoint),
+                                                  TimeUnit.MILLISECONDS, HttpTransport.EXECUTOR)
+                        .execute(() -> {
+                            if (this.next.get() == index + 1)
+                                this.launch();
+                        });
+            }
+            return true;
+        }
+    }
+
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        for (Endpoint endpoint : this.ranked()) {
+            if (buffer.length() > 0)
+                buffer.append(TargetInformation.newline);
+            buffer.append(endpoint);
+        }
+        return buffer.toString();
+    }
+}
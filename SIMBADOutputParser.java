@@ -0,0 +1,268 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Parses the output of the SIMBAD scripts submitted by SIMBADQuerier straight
+ * from the bytes of the response, without first decoding them into a String
+ * and then splitting it into lines. The numbers are parsed in place, too, and
+ * a value that is not a number (SIMBAD seems to always return "~" when a data
+ * item is not known, e.g. the proper motions of most galaxies) is detected as
+ * such, instead of having to catch the exception thrown by Double.parseDouble.
+ * The only objects created are the TargetInformation and its object type. */
+
+public final class SIMBADOutputParser {
+
+    private static final byte[] ERROR_START =
+            TargetResolver._simbadErrorStart.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OBJECT_START =
+            SIMBADQuerier._batchObjectStart.getBytes(StandardCharsets.US_ASCII);
+
+    /* Powers of ten that can be represented exactly as a double */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+
+    private SIMBADOutputParser() {}
+
+    /* Whether the output starts with _simbadErrorStart */
+    public static boolean is_error(byte[] output) {
+        return SIMBADOutputParser.starts_with(output, 0, output.length, ERROR_START);
+    }
+
+    private static boolean starts_with(byte[] output, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (output[start + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /* The position of the newline that ends the line starting at 'start', or
+     * the length of the output if it is the last one */
+    private static int line_end(byte[] output, int start) {
+        int end = start;
+        while (end < output.length && output[end] != '\n')
+            end++;
+        return end;
+    }
+
+    /* The end of the line, excluding the carriage return, if any */
+    private static int content_end(byte[] output, int start, int end) {
+        return (end > start && output[end - 1] == '\r') ? end - 1 : end;
+    }
+
+    /* Parses the data items of an object, in the order in which they are
+     * requested by SIMBADQuerier.build_format(), starting at 'start', into
+     * 'info'. Empty lines are skipped, and the values that are missing or
+     * not a number are left as null. The identifiers, one per line, go on
+     * until the start of the next object, if any, or the end of the output;
+     * older outputs, without them, are also accepted. Returns the position
+     * where the next object, if any, would start. */
+
+    public static int parse_object(byte[] output, int start, TargetInformation info) {
+
+        int position = start;
+        List<String> identifiers = null;
+        for (int item = 0; position < output.length; ) {
+            int end = SIMBADOutputParser.line_end(output, position);
+            int content = SIMBADOutputParser.content_end(output, position, end);
+            if (item >= 5 && SIMBADOutputParser.starts_with(output, position, content, OBJECT_START) &&
+                    content - position == OBJECT_START.length)
+                break;
+            if (content > position) {
+                switch (item) {
+                case 0: /* First line of the output: right ascension, in decimal degrees */
+                    info.ra_deg = SIMBADOutputParser.boxed(output, position, content);
+                    break;
+                case 1: /* Second line: declination, in decimal degrees */
+                    info.dec_deg = SIMBADOutputParser.boxed(output, position, content);
+                    break;
+                case 2: /* Third line: classification of the object */
+                    info.object_type = new String(output, position, content - position,
+                                                  StandardCharsets.UTF_8);
+                    break;
+                case 3: /* Fourth line: proper motion on the right ascension axis */
+                    info.pm_ra = SIMBADOutputParser.boxed(output, position, content);
+                    break;
+                case 4: /* Fifth line: proper motion on the declination axis */
+                    info.pm_dec = SIMBADOutputParser.boxed(output, position, content);
+                    break;
+                case 5: /* Sixth line: main identifier */
+                    info.main_id = SIMBADOutputParser.text(output, position, content);
+                    break;
+                default: /* The rest: all the identifiers of the object */
+                    String identifier = SIMBADOutputParser.text(output, position, content);
+                    if (identifier != null) {
+                        if (identifiers == null)
+                            identifiers = new ArrayList<String>();
+                        identifiers.add(identifier);
+                    }
+                }
+                item++;
+            }
+            position = end + 1;
+        }
+        if (identifiers != null)
+            info.identifiers = identifiers.toArray(new String[identifiers.size()]);
+        return position;
+    }
+
+    /* The line, trimmed; null if empty or "~" */
+    private static String text(byte[] output, int start, int end) {
+        String text = new String(output, start, end - start, StandardCharsets.UTF_8).trim();
+        return (text.isEmpty() || text.equals("~")) ? null : text;
+    }
+
+    private static Double boxed(byte[] output, int start, int end) {
+        double value = SIMBADOutputParser.parse_double(output, start, end);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /* Parses the decimal number in [start, end), such as "-112.20" or
+     * "1.5E-3", surrounded by optional whitespace. Returns NaN if it is not
+     * a number. Numbers with up to 18 significant digits and small exponents,
+     * which is what SIMBAD returns, are converted exactly without creating
+     * any object; anything else is left to Double.parseDouble(). */
+
+    public static double parse_double(byte[] bytes, int start, int end) {
+
+        while (start < end && bytes[start] <= ' ')
+            start++;
+        while (end > start && bytes[end - 1] <= ' ')
+            end--;
+        if (start == end)
+            return Double.NaN;
+
+        int position = start;
+        boolean negative = false;
+        if (bytes[position] == '-' || bytes[position] == '+') {
+            negative = bytes[position] == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;        /* significant digits in the mantissa */
+        int exponent = 0;      /* of the power of ten the mantissa is multiplied by */
+        boolean any = false;   /* whether there was at least one digit */
+        boolean point = false;
+        boolean exact = true;  /* whether the mantissa has all the digits */
+
+        for (; position < end; position++) {
+            byte b = bytes[position];
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    if (point)
+                        exponent--;
+                } else {
+                    exact = false;
+                    if (!point)
+                        exponent++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!any)
+            return Double.NaN;
+
+        if (position < end) {
+            if (bytes[position] != 'e' && bytes[position] != 'E')
+                return Double.NaN;
+            position++;
+            boolean negative_exponent = false;
+            if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+                negative_exponent = bytes[position] == '-';
+                position++;
+            }
+            if (position == end)
+                return Double.NaN;
+            int value = 0;
+            for (; position < end; position++) {
+                byte b = bytes[position];
+                if (b < '0' || b > '9')
+                    return Double.NaN;
+                if (value < 10000)
+                    value = value * 10 + (b - '0');
+            }
+            exponent += negative_exponent ? -value : value;
+        }
+
+        /* Both the mantissa and the power of ten are exact doubles, so the
+         * result of a single multiplication or division is correctly rounded */
+        double result;
+        if (exact && mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+            result = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent]
+                                    : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -result : result;
+        }
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    /* The output of a batch script, as described in SIMBADQuerier: the error
+     * messages, by line of the script, and the positions at which the data
+     * items of each one of the objects found start */
+    public static class Batch {
+        public final Map<Integer, String> errors = new HashMap<Integer, String>();
+        public final List<Integer> objects = new ArrayList<Integer>();
+    }
+
+    public static Batch split_batch(byte[] output) {
+
+        Batch batch = new Batch();
+        int position = 0;
+        while (position < output.length) {
+            int end = SIMBADOutputParser.line_end(output, position);
+            int content = SIMBADOutputParser.content_end(output, position, end);
+
+            /* Errors are reported as "[line] message", before any object */
+            if (SIMBADOutputParser.starts_with(output, position, content, OBJECT_START) &&
+                    content - position == OBJECT_START.length) {
+                batch.objects.add(end + 1);
+            } else if (batch.objects.isEmpty() && content > position && output[position] == '[') {
+                int close = position + 1;
+                while (close < content && output[close] != ']')
+                    close++;
+                double line = SIMBADOutputParser.parse_double(output, position + 1, close);
+                if (close < content && !Double.isNaN(line) && line == Math.rint(line)) {
+                    String message = new String(output, close + 1, content - close - 1,
+                                                StandardCharsets.UTF_8).trim();
+                    batch.errors.put((int) line, message);
+                }
+            }
+            position = end + 1;
+        }
+        return batch;
+    }
+}
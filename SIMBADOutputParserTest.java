@@ -0,0 +1,127 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class SIMBADOutputParserTest {
+
+    /* Maximum delta between real numbers for which they are considered equal */
+    private static double delta = 0.001;
+
+    private static byte[] bytes(String output) {
+        return output.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double parse(String number) {
+        byte[] output = bytes(number);
+        return SIMBADOutputParser.parse_double(output, 0, output.length);
+    }
+
+    /* The numbers must be exactly those that Double.parseDouble() returns */
+
+    @Test
+    public void testParseDouble() {
+        String[] numbers = {"0", "351.2", "-112.20", "+61.593", "0.05", "324.53625000",
+                            "17.43301611", "-3842", "1.5E-3", "2e10", "  7.014658 ",
+                            "0.1234567890123456789", "12345678901234567890",
+                            "1e-30", "-0.0"};
+        for (String number : numbers)
+            assertEquals(number, Double.parseDouble(number), parse(number), 0.0);
+
+        assertTrue(Double.isNaN(parse("~")));
+        assertTrue(Double.isNaN(parse("")));
+        assertTrue(Double.isNaN(parse("-")));
+        assertTrue(Double.isNaN(parse(".")));
+        assertTrue(Double.isNaN(parse("1.2.3")));
+        assertTrue(Double.isNaN(parse("12a")));
+        assertTrue(Double.isNaN(parse("1e")));
+    }
+
+    /* M101, whose proper motions are unknown to SIMBAD */
+
+    @Test
+    public void testParseObject() {
+        byte[] output = bytes("210.80212\r\n54.34808\n\nInteracting Galaxies\n~\n~\n");
+        TargetInformation info = new TargetInformation("M101");
+        assertEquals(output.length, SIMBADOutputParser.parse_object(output, 0, info));
+        assertEquals(210.80212, info.ra_deg, delta);
+        assertEquals(54.34808, info.dec_deg, delta);
+        assertEquals("Interacting Galaxies", info.object_type);
+        assertNull(info.pm_ra);
+        assertNull(info.pm_dec);
+        assertFalse(SIMBADOutputParser.is_error(output));
+        assertTrue(SIMBADOutputParser.is_error(bytes("::error:::::::::\n\n[3] not found")));
+    }
+
+    @Test
+    public void testSplitBatch() {
+
+        byte[] output = bytes(
+                "::error::::::::::::::::::::::::::::::::::::::::\n\n" +
+                "[4] Identifier not found in the database : NAME 3FED6A57652EA9B7\n\n" +
+                "::data:::::::::::::::::::::::::::::::::::::::::\n\n" +
+                "::target::\n351.2\n61.593\nOpen (galactic) Cluster\n-2.77\n-1.18\n" +
+                "::target::\n164.120271\n7.014658\nFlare Star\n-3842\n-2725\n");
+
+        SIMBADOutputParser.Batch batch = SIMBADOutputParser.split_batch(output);
+        assertEquals(1, batch.errors.size());
+        assertEquals("Identifier not found in the database : NAME 3FED6A57652EA9B7",
+                     batch.errors.get(4));
+        assertEquals(2, batch.objects.size());
+
+        TargetInformation info = new TargetInformation("Wolf 359");
+        SIMBADOutputParser.parse_object(output, batch.objects.get(1), info);
+        assertEquals(164.120271, info.ra_deg, delta);
+        assertEquals("Flare Star", info.object_type);
+        assertEquals(-2725, info.pm_dec, delta);
+        assertNull(info.main_id);
+        assertNull(info.identifiers);
+    }
+
+    /* The identifiers, which go on until the next object */
+
+    @Test
+    public void testIdentifiers() {
+
+        byte[] output = bytes(
+                "::target::\n210.80212\n54.34808\nInteracting Galaxies\n~\n~\nM 101\n" +
+                "M 101\nNGC  5457\n\nNAME Pinwheel Galaxy\n" +
+                "::target::\n351.2\n61.593\nOpen (galactic) Cluster\n-2.77\n-1.18\nM  52\n" +
+                "M  52\nNGC  7654\n");
+
+        SIMBADOutputParser.Batch batch = SIMBADOutputParser.split_batch(output);
+        assertEquals(2, batch.objects.size());
+
+        TargetInformation info = new TargetInformation("M101");
+        int next = SIMBADOutputParser.parse_object(output, batch.objects.get(0), info);
+        assertEquals((int) batch.objects.get(1), next + "::target::\n".length());
+        assertNull(info.pm_dec);
+        assertEquals("M 101", info.main_id);
+        assertArrayEquals(new String[] {"M 101", "NGC  5457", "NAME Pinwheel Galaxy"}, info.identifiers);
+
+        info = new TargetInformation("M52");
+        SIMBADOutputParser.parse_object(output, batch.objects.get(1), info);
+        assertEquals("M  52", info.main_id);
+        assertArrayEquals(new String[] {"M  52", "NGC  7654"}, info.identifiers);
+    }
+}
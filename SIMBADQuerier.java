@@ -17,25 +17,37 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  **********************************************************************/
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class SIMBADQuerier implements Callable<String>{
 
-    /* The URL to which the script is submitted to SIMBAD */
-    public static final String _simbadBaseURL =
-            "http://simbad.u-strasbg.fr/simbad/sim-script?script=";
+    /* The URL to which the script is submitted to SIMBAD. It can be changed,
+     * either here or with the simbad.url system property, to point to a
+     * mirror or to a local stand-in (see SIMBADStandIn). */
+    public static volatile String _simbadBaseURL = System.getProperty("simbad.url",
+            "http://simbad.u-strasbg.fr/simbad/sim-script?script=");
 
     public String targetName;
     public ReferenceSystem system;
     public int epoch;
     public int equinox;
 
+    /* The SIMBAD servers to which the script is submitted, with hedging (see
+     * SIMBADEndpoints); if null, it is sent only to _simbadBaseURL */
+    public SIMBADEndpoints endpoints = null;
+
+    /* Whether to ask for the identifiers of the objects, too: a bright one may
+     * have hundreds of them, so they are only requested if they are needed
+     * (see AliasTargetResolver) */
+    public boolean identifiers = false;
+
     /* As explained and seen here: http://stackoverflow.com/q/1660000 */
     public SIMBADQuerier(String targetName, ReferenceSystem system, int epoch, int equinox) {
         this.targetName = targetName;
@@ -48,7 +60,9 @@ public class SIMBADQuerier implements Callable<String>{
     public static double[] DD_to_DMS(double decimal_degrees){
         double degrees, arcminutes, arcseconds, tmp;
 
-        degrees = (int) decimal_degrees; /* Take integer part */
+        /* Take integer part, keeping the sign (-0.0) even if it is zero, as
+         * otherwise it would be lost for declinations between 0 and -1 */
+        degrees = Math.copySign((int) decimal_degrees, decimal_degrees);
         /* Get decimal part; do not propagate the minus sign, if any.
          * Then convert from degrees to arcminutes */
         tmp = (Math.abs(decimal_degrees) - Math.abs(degrees)) * 60;
@@ -76,22 +90,27 @@ public class SIMBADQuerier implements Callable<String>{
         return coords;
     }
 
-    /* Queries SIMBAD by identifier (in layman's terms, the name of the object)
-     * and returns the output as a String. If the connection to SIMBAD fails,
-     * for whatever arcane reason, SIMBADQueryException is thrown.
-     *
-     * The complete syntax of the SIMBAD scripts can be found at:
-     * http://simbad.u-strasbg.fr/simbad/sim-help?Page=sim-fscript */
+    /* The beginning of each object in the output of a batch script: as
+     * targets that cannot be found do not produce any output other than an
+     * error message, this marker allows us to tell where the data items of
+     * each of the objects that were found begin */
+    public static final String _batchObjectStart = "::target::";
 
-    public String query_SIMBAD (String targetName) throws SIMBADQueryException {
+    /* The line of a batch script at which the first 'query id' is found,
+     * after those of the output options and the format. SIMBAD reports
+     * errors using the line number of the script, so we need it in order to
+     * know which of the targets caused them */
+    public static final int _batchFirstQueryLine = 3;
 
-        /* Used for both the SIMBAD script and its output */
-        StringBuilder buffer = new StringBuilder();
+    /* Returns the line of the SIMBAD script which defines the data items of
+     * the object that we want to retrieve, preceded by 'prefix', if any */
+    public String build_format(String prefix) {
 
-        /* Mask the script display in the output as well as the execution details */
-        buffer.append("output console=off script=off\n");
-        /* This defines the data items of the object that we want to retrieve */
+        StringBuilder buffer = new StringBuilder();
         buffer.append("format object form1 \"");
+        if (prefix != null) {
+            buffer.append(prefix + "\\n");
+        }
 
         /* In %COO(options), the option string is made of 5 parts separated by
          * semicolons: formatting options, ('s' for sexagesimal coordinates, 'd'
@@ -110,49 +129,173 @@ public class SIMBADQuerier implements Callable<String>{
         buffer.append("%OTYPE(V)\\n");  /* Verbose display of the main object type */
         buffer.append("%PM(A)\\n");     /* Proper motion on the right ascension axis */
         buffer.append("%PM(D)\\n");     /* Proper motion on the declination axis */
+        if (this.identifiers) {
+            buffer.append("%MAIN_ID\\n");  /* The main identifier of the object... */
+            buffer.append("%IDLIST\\n");   /* and all of them, one per line, which must go last */
+        }
         buffer.append("\"\n");          /* marks the end of the parameters we want */
+        return buffer.toString();
+    }
+
+    /* Returns the SIMBAD script that queries the database by identifier (in
+     * layman's terms, the name of the object).
+     *
+     * The complete syntax of the SIMBAD scripts can be found at:
+     * http://simbad.u-strasbg.fr/simbad/sim-help?Page=sim-fscript */
+
+    public String build_script(String targetName) {
+
+        StringBuilder buffer = new StringBuilder();
+
+        /* Mask the script display in the output as well as the execution details */
+        buffer.append("output console=off script=off\n");
+        /* This defines the data items of the object that we want to retrieve */
+        buffer.append(this.build_format(null));
         buffer.append("query id " + targetName);  /* The object to find in SIMBAD */
+        return buffer.toString();
+    }
 
-        final String simbadScript = buffer.toString();
-        buffer.setLength(0); /* reset the buffer */
+    /* The script for several objects at once, with one 'query id' line per
+     * target. The data items of each object found are preceded by a line with
+     * the value of _batchObjectStart, while those that could not be found are
+     * listed in the error section of the output, using their line in the
+     * script (the first one being _batchFirstQueryLine) */
 
-        InputStream scriptOutput = null;
-        try {
+    public String build_script(List<String> targetNames) {
+
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("output console=off script=off\n");
+        buffer.append(this.build_format(_batchObjectStart));
+        for (String targetName : targetNames) {
+            buffer.append("query id " + targetName + "\n");
+        }
+        return buffer.toString();
+    }
+
+    /* Submits the script for the given target to SIMBAD without blocking,
+     * returning a future that holds its output, as the raw bytes of the
+     * response (see SIMBADOutputParser). If the connection to SIMBAD
+     * fails, for whatever arcane reason, or 'timeout' is exceeded, the future
+     * completes exceptionally with SIMBADQueryException. */
 
-            /* Forge the full URL of the script, using the UTF-8 unicode charset */
-            final String encodedScript = URLEncoder.encode(simbadScript, "UTF-8");
+    public CompletableFuture<byte[]> query_SIMBAD_async(String targetName, Duration timeout) {
+
+        long start = System.nanoTime();
+        final String simbadScript = this.build_script(targetName);
+
+        /* Forge the full URL of the script, using the UTF-8 unicode charset */
+        final String encodedScript = URLEncoder.encode(simbadScript, StandardCharsets.UTF_8);
+        ResolverMetrics.METRICS.script_build.record_since(start);
+
+        HttpTransport.Timing timing = new HttpTransport.Timing();
+        CompletableFuture<byte[]> response;
+        if (this.endpoints == null) {
             final String simbadURL = _simbadBaseURL + encodedScript;
+            response = HttpTransport.get(simbadURL, timeout, timing);
+        } else {
+            response = this.endpoints.send((baseURL, attempt) ->
+                    HttpTransport.get(baseURL + encodedScript, timeout, attempt), timing, true);
+        }
+        return SIMBADQuerier.output(response, timeout, timing);
+    }
+
+    /* The same, for several objects at once. As the script may be too long to
+     * fit into a URL, it is sent in the body of a POST request instead. */
+
+    public CompletableFuture<byte[]> query_SIMBAD_async(List<String> targetNames, Duration timeout) {
+
+        long start = System.nanoTime();
+        final String simbadScript = this.build_script(targetNames);
 
-            /* Submit the SIMBAD script and read the output, line by line */
-            scriptOutput = new URL(simbadURL).openStream();
-            final InputStreamReader inputStreamReader = new InputStreamReader(scriptOutput);
-            final BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-
-            String currentLine = null;
-            while ((currentLine = bufferedReader.readLine()) != null) {
-                if (buffer.length() > 0) {
-                    buffer.append('\n');
-                }
-                buffer.append(currentLine);
+        final String form = "script=" + URLEncoder.encode(simbadScript, StandardCharsets.UTF_8);
+        ResolverMetrics.METRICS.script_build.record_since(start);
+
+        /* Failed requests are sent to the next endpoint, but there is no
+         * hedging: a batch is too expensive to be submitted twice */
+        HttpTransport.Timing timing = new HttpTransport.Timing();
+        CompletableFuture<byte[]> response;
+        if (this.endpoints == null) {
+            response = HttpTransport.post(SIMBADQuerier.form_url(_simbadBaseURL), form, timeout, timing);
+        } else {
+            response = this.endpoints.send((baseURL, attempt) ->
+                    HttpTransport.post(SIMBADQuerier.form_url(baseURL), form, timeout, attempt),
+                    timing, false);
+        }
+        return SIMBADQuerier.output(response, timeout, timing);
+    }
+
+    /* The base URL already ends with the name of the parameter */
+    private static String form_url(String baseURL) {
+        int query = baseURL.indexOf('?');
+        return (query == -1) ? baseURL : baseURL.substring(0, query);
+    }
+
+    /* Any failure, including the timeout, becomes a SIMBADQueryException.
+     * The latencies of the request are recorded in ResolverMetrics. */
+    private static CompletableFuture<byte[]> output(CompletableFuture<byte[]> response,
+                                                    Duration timeout,
+                                                    HttpTransport.Timing timing) {
+
+        final ResolverMetrics metrics = ResolverMetrics.METRICS;
+        metrics.in_flight.incrementAndGet();
+        CompletableFuture<byte[]> output = new CompletableFuture<byte[]>();
+        response.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((body, ex) -> {
+            metrics.in_flight.decrementAndGet();
+            if (timing.headers != 0)
+                metrics.connect.record(timing.headers - timing.sent, TimeUnit.NANOSECONDS);
+            if (timing.received != 0)
+                metrics.transfer.record(timing.received - timing.headers, TimeUnit.NANOSECONDS);
+            if (ex != null) {
+                if (ResolverMetrics.is_timeout(ex))
+                    metrics.timeouts.incrementAndGet();
+                /* With the cause, so that timeouts can be told apart */
+                SIMBADQueryException failure = new SIMBADQueryException();
+                failure.initCause(ex);
+                output.completeExceptionally(failure);
+            } else {
+                output.complete(body);
             }
+        });
+        return output;
+    }
+
+    /* Blocking version of query_SIMBAD_async(), with TargetResolver.TIMEOUT,
+     * which returns the output as a String */
+    public String query_SIMBAD (String targetName) throws SIMBADQueryException {
+        return SIMBADQuerier.text(SIMBADQuerier.await(this.query_SIMBAD_async(
+                targetName, Duration.ofSeconds(TargetResolver.TIMEOUT))));
+    }
 
-            /* Return the string representation of the SIMBAD output */
-            return buffer.toString();
+    public String query_SIMBAD (List<String> targetNames) throws SIMBADQueryException {
+        return SIMBADQuerier.text(SIMBADQuerier.await(this.query_SIMBAD_async(
+                targetNames, Duration.ofSeconds(TargetResolver.BATCH_TIMEOUT))));
+    }
 
-        } catch (IOException ex) {
+    /* Waits for the output of a query, rethrowing the exception with which
+     * it failed, if any */
+    public static byte[] await(CompletableFuture<byte[]> output) throws SIMBADQueryException {
+        try {
+            return output.get();
+        } catch (InterruptedException ex) {
+            output.cancel(true);
+            ResolverMetrics.METRICS.cancellations.incrementAndGet();
+            throw new SIMBADQueryException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof SIMBADQueryException)
+                throw (SIMBADQueryException) ex.getCause();
             throw new SIMBADQueryException();
-        } finally {
-            try {
-                scriptOutput.close();
-            }
-            catch (IOException ex) {
-                /* No need to abort the execution if the connection to SIMBAD
-                 * could not be properly closed. Not an ideal scenario, of
-                 * course, but neither apocalyptic. We can live with that. */
-                }
         }
     }
 
+    /* The string representation of the SIMBAD output, line by line */
+    private static String text(byte[] output) {
+        String text = new String(output, StandardCharsets.UTF_8);
+        /* Get rid of the trailing newline, as the lines used to be
+         * read one by one and joined afterwards */
+        return text.replace("\r\n", "\n").replaceAll("\n+$", "");
+    }
+
     public String call() throws SIMBADQueryException {
         return this.query_SIMBAD(this.targetName);
     }
@@ -23,4 +23,13 @@ public class SIMBADQueryException extends Exception {
     /* Eclipse's "Add general serial version ID" quick fix */
     private static final long serialVersionUID = -8431593232576223153L;
 
+    public SIMBADQueryException() {
+        super();
+    }
+
+    /* E.g., why the query was not even attempted */
+    public SIMBADQueryException(String message) {
+        super(message);
+    }
+
 }
@@ -0,0 +1,355 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/* A local stand-in for the sim-script endpoint of SIMBAD, so that the
+ * resolver can be tested (and load-tested) without hammering the real
+ * service, and so that slow or failing responses can be reproduced at will.
+ *
+ * The scripts built by SIMBADQuerier are interpreted: the format line is
+ * evaluated for each 'query id' line, against the objects of a LocalCatalog
+ * (the fixtures), converting their coordinates to the reference system,
+ * epoch and equinox asked for, and the identifiers that are not in the
+ * catalog are reported in the error section, as SIMBAD does. Latency,
+ * jitter, failed requests and spurious errors can be injected by setting
+ * the public fields, even while the server is running.
+ *
+ * Point the resolver at it with SIMBADQuerier._simbadBaseURL = url(), or,
+ * for a separate process, with -Dsimbad.url=... */
+
+public class SIMBADStandIn {
+
+    /* The objects whose values are known exactly, in the format of
+     * LocalCatalog, and the list of objects used by TargetResolverTest */
+    public static final String FIXTURES_PATH = "SIMBAD_fixtures";
+    public static final String OBJECTS_PATH = "SIMBAD_objects";
+
+    public static final String PATH = "/simbad/sim-script";
+
+    /* What SIMBAD prints at the beginning of each section of the output */
+    private static final String ERROR_SECTION =
+            TargetResolver._simbadErrorStart + "::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::\n\n";
+    private static final String DATA_SECTION =
+            "::data::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::\n\n";
+
+    /* A data item in the format, such as "%COO(d;A;FK5;J2000;2000)" */
+    private static final Pattern FIELD = Pattern.compile("%([A-Z_]+)(?:\\(([^)]*)\\))?");
+
+    public final LocalCatalog catalog;
+
+    /* Milliseconds each response is delayed, plus a random amount of up to
+     * 'jitter' milliseconds */
+    public volatile long latency = 0;
+    public volatile long jitter = 0;
+
+    /* The fraction of the requests answered with HTTP 503, and that of the
+     * queries reported in the error section even if the object is known */
+    public volatile double failure_rate = 0;
+    public volatile double error_rate = 0;
+
+    /* The number of requests, from now on, answered with HTTP 503 whatever
+     * the failure rate, e.g. to reproduce a short outage */
+    public final AtomicInteger fail_next = new AtomicInteger();
+
+    /* Whether to compress the responses, if the client accepts it */
+    public volatile boolean gzip = false;
+
+    /* The number of requests received, and of the queries in them */
+    public final AtomicLong requests = new AtomicLong();
+    public final AtomicLong queries = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public SIMBADStandIn(LocalCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /* The fixtures, plus made-up values for each one of the objects in the
+     * list that they do not include, so that every one of them is found */
+    public static LocalCatalog fixtures(Path fixtures, Path objects) throws IOException {
+        LocalCatalog catalog = LocalCatalog.load(fixtures);
+        if (objects != null)
+            SIMBADStandIn.synthesize(catalog, Files.readAllLines(objects, StandardCharsets.UTF_8));
+        return catalog;
+    }
+
+    public static LocalCatalog fixtures() throws IOException {
+        return SIMBADStandIn.fixtures(Paths.get(FIXTURES_PATH), Paths.get(OBJECTS_PATH));
+    }
+
+    /* Deterministic, so that the same name always gets the same values */
+    public static void synthesize(LocalCatalog catalog, List<String> targetNames) {
+        for (String line : targetNames) {
+            String targetName = line.trim();
+            if (targetName.isEmpty() || targetName.startsWith("#") || catalog.find(targetName) != -1)
+                continue;
+            long seed = ResolutionKey.normalize(targetName).hashCode() * 0x9E3779B97F4A7C15L;
+            Random random = new Random(seed);
+            double ra_deg = random.nextDouble() * 360.0;
+            double dec_deg = Math.toDegrees(Math.asin(2.0 * random.nextDouble() - 1.0));
+            double pm_ra = Math.rint((random.nextGaussian() * 50.0) * 100.0) / 100.0;
+            double pm_dec = Math.rint((random.nextGaussian() * 50.0) * 100.0) / 100.0;
+            catalog.add(new String[] {targetName}, ra_deg, dec_deg, pm_ra, pm_dec, "Star");
+        }
+    }
+
+    /* Starts listening on the loopback interface; port zero means any */
+    public synchronized SIMBADStandIn start(int port) throws IOException {
+        /* Otherwise, Nagle's algorithm and delayed ACKs add some 40 ms to
+         * each response. Read only once, when the first server is created. */
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "simbad-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+        return this;
+    }
+
+    public SIMBADStandIn start() throws IOException {
+        return this.start(0);
+    }
+
+    public synchronized void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.executor.shutdownNow();
+            this.server = null;
+        }
+    }
+
+    /* The value for SIMBADQuerier._simbadBaseURL */
+    public String url() {
+        InetSocketAddress address = this.server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + PATH + "?script=";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            this.requests.incrementAndGet();
+            String script = SIMBADStandIn.script(exchange);
+
+            long delay = this.latency;
+            if (this.jitter > 0)
+                delay += ThreadLocalRandom.current().nextLong(this.jitter);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    return;  /* the server is being stopped */
+                }
+            }
+
+            if (script == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            if (this.fail_next.getAndUpdate(n -> Math.max(n - 1, 0)) > 0 ||
+                    ThreadLocalRandom.current().nextDouble() < this.failure_rate) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            byte[] body = this.run(script).getBytes(StandardCharsets.UTF_8);
+            String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (this.gzip && encoding != null && encoding.contains("gzip")) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                GZIPOutputStream compressed = new GZIPOutputStream(buffer);
+                compressed.write(body);
+                compressed.close();
+                body = buffer.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /* The 'script' parameter, from the query string or the form posted */
+    private static String script(HttpExchange exchange) throws IOException {
+        String parameters;
+        if ("POST".equals(exchange.getRequestMethod()))
+            parameters = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        else
+            parameters = exchange.getRequestURI().getRawQuery();
+        if (parameters == null)
+            return null;
+        for (String parameter : parameters.split("&")) {
+            if (parameter.startsWith("script="))
+                return URLDecoder.decode(parameter.substring(7), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /* Runs the script, returning what SIMBAD would */
+    public String run(String script) {
+
+        String[] lines = script.split("\n", -1);
+        List<String> format = new ArrayList<String>();
+        StringBuilder errors = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+
+        for (int index = 0; index < lines.length; index++) {
+            String line = lines[index].trim();
+            int lineNumber = index + 1;  /* SIMBAD counts from one */
+            if (line.startsWith("format ")) {
+                int open = line.indexOf('"');
+                int close = line.lastIndexOf('"');
+                if (open == -1 || close <= open) {
+                    errors.append("[" + lineNumber + "] Invalid format\n\n");
+                    continue;
+                }
+                format.clear();
+                for (String item : line.substring(open + 1, close).split("\\\\n", -1))
+                    format.add(item);
+            } else if (line.startsWith("query id")) {
+                this.queries.incrementAndGet();
+                String targetName = line.substring("query id".length()).trim();
+                int row = this.catalog.find(targetName);
+                if (row == -1) {
+                    errors.append("[" + lineNumber + "] Identifier not found in the database : " +
+                                  targetName + "\n\n");
+                } else if (ThreadLocalRandom.current().nextDouble() < this.error_rate) {
+                    errors.append("[" + lineNumber + "] Unable to process the query : " +
+                                  targetName + "\n\n");
+                } else {
+                    this.evaluate(format, this.catalog.get(row, targetName),
+                                  this.catalog.identifiers(row), data);
+                }
+            }
+        }
+
+        if (errors.length() == 0)
+            return data.toString();
+        if (data.length() == 0)
+            return ERROR_SECTION + errors;
+        return ERROR_SECTION + errors + DATA_SECTION + data;
+    }
+
+    /* Appends one line per item of the format, with the data items replaced
+     * by their values for the object, or "~" if they are not known. The
+     * identifiers are those of the catalog, normalized, the first of which
+     * plays the part of the main identifier. */
+    private void evaluate(List<String> format, TargetInformation info, String[] identifiers,
+                          StringBuilder output) {
+        for (String item : format) {
+            Matcher matcher = FIELD.matcher(item);
+            StringBuffer line = new StringBuffer();
+            while (matcher.find()) {
+                String value = SIMBADStandIn.field(matcher.group(1), matcher.group(2), info, identifiers);
+                matcher.appendReplacement(line, Matcher.quoteReplacement(value));
+            }
+            matcher.appendTail(line);
+            output.append(line).append('\n');
+        }
+    }
+
+    private static String field(String name, String options, TargetInformation info,
+                                String[] identifiers) {
+        String[] parts = (options == null) ? new String[0] : options.split(";");
+        switch (name) {
+        case "COO":
+            return SIMBADStandIn.coordinate(parts, info);
+        case "OTYPE":
+            return (info.object_type == null) ? "~" : info.object_type;
+        case "PM":
+            Double pm = (parts.length > 0 && parts[0].trim().equals("D")) ? info.pm_dec : info.pm_ra;
+            return SIMBADStandIn.number(pm);
+        case "MAIN_ID":
+            return (identifiers.length == 0) ? "~" : identifiers[0];
+        case "IDLIST":  /* one per line, as SIMBAD does */
+            return (identifiers.length == 0) ? "~" : String.join("\n", identifiers);
+        default:
+            return "~";
+        }
+    }
+
+    /* %COO(format;element;frame;epoch;equinox), only in decimal degrees */
+    private static String coordinate(String[] parts, TargetInformation info) {
+        if (parts.length < 2)
+            return "~";
+        if (parts.length >= 5) {
+            try {
+                ReferenceSystem system = ReferenceSystem.valueOf(parts[2].trim());
+                int epoch = (int) Double.parseDouble(parts[3].trim().replaceFirst("^[JB]", ""));
+                int equinox = (int) Double.parseDouble(parts[4].trim());
+                if (system != info.system || epoch != info.epoch || equinox != info.equinox)
+                    info = CoordinateConverter.transform(info, system, epoch, equinox);
+            } catch (IllegalArgumentException ex) {
+                return "~";  /* NumberFormatException is one, too */
+            }
+        }
+        return SIMBADStandIn.number(parts[1].trim().equals("D") ? info.dec_deg : info.ra_deg);
+    }
+
+    private static String number(Double value) {
+        return (value == null) ? "~" : Double.toString(value);
+    }
+
+    /* Runs the stand-in on its own, so that other processes can be pointed
+     * at it: [port [fixtures [objects]]] */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 0;
+        Path fixtures = Paths.get((args.length > 1) ? args[1] : FIXTURES_PATH);
+        Path objects = Paths.get((args.length > 2) ? args[2] : OBJECTS_PATH);
+
+        SIMBADStandIn standIn = new SIMBADStandIn(SIMBADStandIn.fixtures(fixtures, objects));
+        standIn.latency = Long.getLong("standin.latency", 0);
+        standIn.jitter = Long.getLong("standin.jitter", 0);
+        standIn.failure_rate = Double.parseDouble(System.getProperty("standin.failure_rate", "0"));
+        standIn.error_rate = Double.parseDouble(System.getProperty("standin.error_rate", "0"));
+        standIn.start(port);
+        System.out.println("-Dsimbad.url=" + standIn.url());
+    }
+}
@@ -0,0 +1,532 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* The resolver against SIMBADStandIn, instead of the real SIMBAD: the values
+ * must be those of the fixtures, whatever the injected latency and errors */
+
+public class SIMBADStandInTest {
+
+    private static SIMBADStandIn standIn;
+    private static String simbadBaseURL;
+
+    /* Maximum delta between real numbers for which they are considered equal */
+    private static double delta = 0.001;
+
+    @BeforeClass
+    public static void SetUp() throws IOException {
+        standIn = new SIMBADStandIn(SIMBADStandIn.fixtures()).start();
+        simbadBaseURL = SIMBADQuerier._simbadBaseURL;
+        SIMBADQuerier._simbadBaseURL = standIn.url();
+    }
+
+    @AfterClass
+    public static void TearDown() {
+        SIMBADQuerier._simbadBaseURL = simbadBaseURL;
+        standIn.stop();
+    }
+
+    /* Nothing injected, at the start of each test */
+    private static void reset() {
+        standIn.latency = 0;
+        standIn.jitter = 0;
+        standIn.failure_rate = 0;
+        standIn.error_rate = 0;
+        standIn.fail_next.set(0);
+        standIn.gzip = false;
+        CircuitBreaker.SIMBAD.reset();
+        AdaptiveTimeout.SIMBAD.reset();
+    }
+
+    @Test
+    public void testReturnedValues() throws SIMBADQueryException,
+                                            TargetNotFoundException {
+        reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+
+        TargetInformation info = resolver.submit("Trumpler 37");
+        assertEquals(324.5362, info.ra_deg, delta);
+        assertEquals(57.4467, info.dec_deg, delta);
+        assertEquals("21 38 08.69", info.ra);
+        assertEquals("+57 26 48.1", info.dec);
+        assertEquals(-2.30, info.pm_ra, delta);
+        assertEquals(-3.81, info.pm_dec, delta);
+        assertEquals("Open (galactic) Cluster", info.object_type);
+
+        /* Any of the identifiers, and unknown proper motions */
+        info = resolver.submit("NGC 5457");
+        assertEquals("14 03 12.51", info.ra);
+        assertEquals("+54 20 53.1", info.dec);
+        assertNull(info.pm_ra);
+        assertNull(info.pm_dec);
+
+        try {
+            resolver.submit(TargetResolverTest.randomString());
+            fail("random string resolved");
+        } catch (TargetNotFoundException e) {}
+    }
+
+    /* The coordinates are converted to the reference system, epoch and
+     * equinox of the script, as SIMBAD does */
+    @Test
+    public void testReferenceSystem() throws SIMBADQueryException,
+                                             TargetNotFoundException {
+        reset();
+        TargetInformation icrs = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000).submit("Wolf 359");
+        TargetInformation expected = CoordinateConverter.transform(icrs, ReferenceSystem.GAL, 2020, 2000);
+        TargetInformation info = new TargetResolver(ReferenceSystem.GAL, 2020, 2000).submit("Wolf 359");
+        assertEquals(expected.ra_deg, info.ra_deg, delta);
+        assertEquals(expected.dec_deg, info.dec_deg, delta);
+        assertEquals(icrs.pm_ra, info.pm_ra, delta);
+    }
+
+    @Test
+    public void testSubmitAll() throws IOException {
+        reset();
+        standIn.gzip = true;
+        ArrayList<String> names = new ArrayList<String>();
+        names.add("Mirach");
+        names.add(TargetResolverTest.randomString());
+        names.add("Betelgeuse");
+        names.addAll(TargetResolverTest.loadTargetsFile(SIMBADStandIn.OBJECTS_PATH));
+
+        List<Resolution> results = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000).submitAll(names);
+        assertEquals(names.size(), results.size());
+        assertEquals("01 09 43.92", results.get(0).info.ra);
+        assertTrue(results.get(1).error instanceof TargetNotFoundException);
+        assertEquals("+07 24 25.4", results.get(2).info.dec);
+        for (int index = 3 ; index < results.size() ; index++)
+            assertTrue(results.get(index).name, results.get(index).found());
+    }
+
+    /* Once one of the identifiers of an object has been resolved, the rest,
+     * however spelled, must be answered without querying SIMBAD again */
+    @Test
+    public void testAliases() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        AliasTargetResolver resolver =
+            new AliasTargetResolver(new TargetResolver(ReferenceSystem.ICRS, 2000, 2000));
+        long queries = standIn.queries.get();
+        TargetInformation info = resolver.submit("M101");
+        assertEquals("m101", info.main_id);
+        assertEquals(2, info.identifiers.length);
+        assertEquals(queries + 1, standIn.queries.get());
+
+        for (String alias : new String[] {"NGC 5457", "m 101", " ngc5457", "M101"}) {
+            TargetInformation cached = resolver.submit(alias);
+            assertEquals(alias, cached.name);
+            assertEquals(info.ra_deg, cached.ra_deg, delta);
+        }
+        assertEquals(queries + 1, standIn.queries.get());
+
+        resolver.submit("Mirach");
+        assertEquals("Variable Star", resolver.submit("*  BET  AND").object_type);
+        assertEquals(queries + 2, standIn.queries.get());
+    }
+
+    /* An identifier claimed by two objects must not be mapped to either of
+     * them, but resolved by SIMBAD, whatever was cached before */
+    @Test
+    public void testAmbiguousAlias() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        AliasIndex index = new AliasIndex();
+        index.add("M 101", "NGC 5457");
+        assertEquals("M 101", index.canonical("ngc5457"));
+        index.add("m  101", "NGC 5457");
+        assertEquals("m  101", index.canonical("NGC 5457"));
+        index.add("NGC 5866", "NGC 5457", "M 102");
+        assertNull(index.canonical("NGC 5457"));
+        assertEquals("NGC 5866", index.canonical("M 102"));
+        index.add("M 101", "NGC 5457");
+        assertNull(index.canonical("NGC 5457"));
+
+        AliasTargetResolver resolver =
+            new AliasTargetResolver(new TargetResolver(ReferenceSystem.ICRS, 2000, 2000));
+        long queries = standIn.queries.get();
+        resolver.submit("M101");
+        resolver.aliases.add("Mirach", "m 101");
+        assertNull(resolver.aliases.canonical("M101"));
+        TargetInformation info = resolver.submit("M101");
+        assertEquals("m101", info.main_id);
+        assertEquals(queries + 2, standIn.queries.get());
+    }
+
+    /* Identifiers are only asked for, and parsed, for AliasTargetResolver */
+    @Test
+    public void testNoIdentifiers() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        TargetInformation info = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000).submit("M101");
+        assertNull(info.main_id);
+        assertNull(info.identifiers);
+        assertEquals("M101", info.name);
+    }
+
+    /* The timeout of the querier must be honoured */
+    @Test
+    public void testLatency() throws SIMBADQueryException {
+        reset();
+        standIn.latency = 500;
+        standIn.jitter = 100;
+        SIMBADQuerier querier = new SIMBADQuerier("M52", ReferenceSystem.ICRS, 2000, 2000);
+        try {
+            SIMBADQuerier.await(querier.query_SIMBAD_async("M52", Duration.ofMillis(100)));
+            fail("timeout not honoured");
+        } catch (SIMBADQueryException e) {}
+        byte[] output = SIMBADQuerier.await(querier.query_SIMBAD_async("M52", Duration.ofSeconds(5)));
+        assertFalse(SIMBADOutputParser.is_error(output));
+    }
+
+    /* Failed requests are connection errors, while errors in the output of
+     * the script mean that the target was not found */
+    @Test
+    public void testFailures() throws SIMBADQueryException {
+        reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        standIn.failure_rate = 1.0;
+        try {
+            resolver.submit("M52");
+            fail("failed request not reported");
+        } catch (SIMBADQueryException e) {
+        } catch (TargetNotFoundException e) {
+            fail("failed request reported as not found");
+        }
+
+        reset();
+        standIn.error_rate = 1.0;
+        try {
+            resolver.submit("M52");
+            fail("error not reported");
+        } catch (TargetNotFoundException e) {}
+        reset();
+    }
+
+    /* Each outcome must be counted once, and be visible over JMX */
+    @Test
+    public void testMetrics() throws Exception {
+        reset();
+        ResolverMetrics metrics = ResolverMetrics.METRICS;
+        metrics.reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        resolver.submit("Betelgeuse");
+        try {
+            resolver.submit(TargetResolverTest.randomString());
+        } catch (TargetNotFoundException e) {}
+
+        standIn.latency = 500;
+        SIMBADQuerier querier = new SIMBADQuerier("M52", ReferenceSystem.ICRS, 2000, 2000);
+        try {
+            SIMBADQuerier.await(querier.query_SIMBAD_async("M52", Duration.ofMillis(100)));
+        } catch (SIMBADQueryException e) {}
+        reset();
+
+        assertEquals(1, metrics.getSuccesses());
+        assertEquals(1, metrics.getNotFound());
+        assertEquals(1, metrics.getTimeouts());
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(3, metrics.script_build.getCount());
+        assertEquals(2, metrics.transfer.getCount());
+        assertEquals(1, metrics.parse.getCount());
+        assertEquals(1, metrics.total.getCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(
+                new ObjectName("TargetResolver:type=ResolverMetrics"), "NotFound"));
+        assertEquals(2L, server.getAttribute(
+                new ObjectName("TargetResolver:type=Latency,name=connect"), "Count"));
+    }
+
+    /* Concurrent lookups of the same target, under any spelling, share the
+     * same query, but each caller gets its own copy, under its own name */
+    @Test
+    public void testCoalescing() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        standIn.latency = 200;
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        String[] targetNames = {"M52", "m52", "  M52 ", "M52\t", "m52", "M52", "M52", "m52"};
+
+        long queries = standIn.queries.get();
+        List<CompletableFuture<TargetInformation>> futures = new ArrayList<CompletableFuture<TargetInformation>>();
+        for (String targetName : targetNames)
+            futures.add(resolver.submitAsync(targetName));
+        List<TargetInformation> infos = new ArrayList<TargetInformation>();
+        for (CompletableFuture<TargetInformation> future : futures)
+            infos.add(TargetResolver.await(future));
+
+        assertEquals(1, standIn.queries.get() - queries);
+        for (int index = 0; index < targetNames.length; index++) {
+            TargetInformation info = infos.get(index);
+            assertEquals(targetNames[index], info.name);
+            assertEquals("+61 35 34.8", info.dec);
+            for (int other = 0; other < index; other++)
+                assertNotSame(infos.get(other), info);
+        }
+        reset();
+    }
+
+    /* Resolvers with settings of their own do not join the queries of the
+     * others, as they would be sent differently */
+    @Test
+    public void testCoalescingSettings() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        standIn.latency = 200;
+        TargetResolver first = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        TargetResolver second = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        TargetResolver patient = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        patient.retries = new RetryPolicy(5, 10, 20);
+        TargetResolver isolated = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        isolated.breaker = new CircuitBreaker(10, 60000);
+
+        long requests = standIn.requests.get();
+        List<CompletableFuture<TargetInformation>> futures = new ArrayList<CompletableFuture<TargetInformation>>();
+        TargetResolver[] resolvers = {first, second, patient, isolated, patient};
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(Duration.ofSeconds(2), Duration.ofSeconds(5));
+        for (TargetResolver resolver : resolvers) {
+            resolver.endpoints = null;  /* no hedging, which would count twice */
+            resolver.timeouts = timeouts;
+            futures.add(resolver.submitAsync("M52"));
+        }
+        for (CompletableFuture<TargetInformation> future : futures)
+            assertEquals("+61 35 34.8", TargetResolver.await(future).dec);
+        /* Requests, counted as they arrive, unlike the queries, which a timed
+         * out request of another test may still add to once answered */
+        assertEquals(3, standIn.requests.get() - requests);
+        reset();
+    }
+
+    /* A query that cannot even be sent fails the lookup, and later ones of
+     * the same target do not wait on it forever */
+    @Test
+    public void testQueryThrows() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        TargetResolver broken = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        broken.breaker = null;
+        try {
+            TargetResolver.await(broken.submitAsync("Mirach").orTimeout(5, TimeUnit.SECONDS));
+            fail("the query could not be sent");
+        } catch (SIMBADQueryException e) {}
+
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        TargetInformation info = TargetResolver.await(resolver.submitAsync("Mirach")
+                                                              .orTimeout(5, TimeUnit.SECONDS));
+        assertEquals("Mirach", info.name);
+    }
+
+    /* A slow or failing endpoint must not delay the resolution, and the
+     * fastest one must end up being preferred */
+    @Test
+    public void testHedging() throws IOException, SIMBADQueryException,
+                                     TargetNotFoundException {
+        reset();
+        SIMBADStandIn mirror = new SIMBADStandIn(standIn.catalog).start();
+        try {
+            /* The first query of the JVM takes about a second on its own
+             * (loading the classes of the HTTP client and the resolver), which
+             * has nothing to do with hedging: get it out of the way first */
+            new TargetResolver(ReferenceSystem.ICRS, 2000, 2000).submit("Mirach");
+
+            standIn.latency = 2000;
+            SIMBADEndpoints endpoints = new SIMBADEndpoints(standIn.url(), mirror.url());
+            endpoints.initial_hedge_delay = 100;
+            TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+            resolver.endpoints = endpoints;
+
+            long start = System.nanoTime();
+            assertEquals("+61 35 34.8", resolver.submit("M52").dec);
+            assertTrue(System.nanoTime() - start < 1000000000L);
+            assertEquals(endpoints.toString(), mirror.url(), endpoints.ranked().get(0).url);
+
+            /* Failures are retried on the next endpoint right away */
+            reset();
+            mirror.failure_rate = 1.0;
+            assertEquals("+07 00 52.8", resolver.submit("Wolf 359").dec);
+            assertEquals(endpoints.toString(), standIn.url(), endpoints.ranked().get(0).url);
+            assertTrue(resolver.submitAll(Arrays.asList("Mirach")).get(0).found());
+
+            standIn.failure_rate = 1.0;
+            try {
+                resolver.submit("Betelgeuse");
+                fail("all the endpoints failed");
+            } catch (SIMBADQueryException e) {}
+        } finally {
+            reset();
+            mirror.stop();
+        }
+    }
+
+    /* A request that throws instead of returning a future is just a failed
+     * attempt: the next endpoint is tried, and if there is none the result
+     * completes exceptionally, instead of never */
+    @Test
+    public void testRequestThrows() throws Exception {
+        SIMBADEndpoints endpoints = new SIMBADEndpoints("first", "second");
+        byte[] body = "answer".getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<byte[]> result = endpoints.send((url, timing) -> {
+            if (url.equals("first"))
+                throw new IllegalStateException(url);
+            return CompletableFuture.completedFuture(body);
+        }, new HttpTransport.Timing(), true);
+        assertSame(body, result.get(5, TimeUnit.SECONDS));
+
+        result = endpoints.send((url, timing) -> {
+            throw new IllegalStateException(url);
+        }, new HttpTransport.Timing(), false);
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("every request threw");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /* A query that cannot even be sent counts as a failure for the breaker,
+     * whose probe would otherwise never be answered, and is retried */
+    @Test
+    public void testMalformedURL() throws Exception {
+        reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        resolver.retries = new RetryPolicy(2, 10, 20);
+        resolver.breaker = new CircuitBreaker(1, 50);
+        resolver.breaker.failure();
+        Thread.sleep(60);  /* the next query is the probe */
+        String url = SIMBADQuerier._simbadBaseURL;
+        SIMBADQuerier._simbadBaseURL = "http://not a host/?script=";
+        try {
+            resolver.submitAsync("M52").get(5, TimeUnit.SECONDS);
+            fail("malformed URL not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SIMBADQueryException);
+        } finally {
+            SIMBADQuerier._simbadBaseURL = url;
+        }
+        assertEquals(CircuitBreaker.State.OPEN, resolver.breaker.state());
+
+        resolver.breaker = new CircuitBreaker(10, 60000);
+        SIMBADQuerier._simbadBaseURL = "http://not a host/?script=";
+        try {
+            resolver.submitAsync("M52").get(5, TimeUnit.SECONDS);
+            fail("malformed URL not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SIMBADQueryException);
+        } finally {
+            SIMBADQuerier._simbadBaseURL = url;
+        }
+        assertEquals("23 24 48.00", resolver.submit("M52").ra);
+    }
+
+    /* Failed queries are attempted again, up to the limit */
+    @Test
+    public void testRetries() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        resolver.retries = new RetryPolicy(3, 10, 20);
+        resolver.breaker = new CircuitBreaker(10, 60000);
+        standIn.failure_rate = 1.0;
+        long requests = standIn.requests.get();
+        try {
+            resolver.submit("M52");
+            fail("failed request not reported");
+        } catch (SIMBADQueryException e) {}
+        assertEquals(requests + 3, standIn.requests.get());
+
+        standIn.failure_rate = 0;
+        standIn.fail_next.set(2);
+        requests = standIn.requests.get();
+        assertEquals("23 24 48.00", resolver.submit("M52").ra);
+        assertEquals(requests + 3, standIn.requests.get());
+        reset();
+    }
+
+    /* If SIMBAD becomes slower than the timeout, the queries that time out
+     * make it longer, instead of all of them timing out from then on */
+    @Test
+    public void testTimeoutGrows() throws SIMBADQueryException, TargetNotFoundException {
+        reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        resolver.retries = RetryPolicy.NONE;
+        resolver.breaker = new CircuitBreaker(100, 60000);
+        resolver.timeouts = new AdaptiveTimeout(Duration.ofMillis(100), Duration.ofSeconds(5));
+        for (int index = 0; index < AdaptiveTimeout.MIN_SAMPLES; index++)
+            resolver.timeouts.record(10, TimeUnit.MILLISECONDS);
+        assertEquals(Duration.ofMillis(100), resolver.timeouts.timeout());
+
+        standIn.latency = 250;
+        try {
+            resolver.submit("M52");
+            fail("the query did not time out");
+        } catch (SIMBADQueryException e) {}
+        assertTrue(resolver.timeouts.timeout().toMillis() > 250);
+        assertEquals("23 24 48.00", resolver.submit("M52").ra);
+        reset();
+    }
+
+    /* While SIMBAD is down, queries fail at once, without being sent, and
+     * the cache answers with what it has, even if outdated */
+    @Test
+    public void testCircuitBreaker() throws InterruptedException, SIMBADQueryException,
+                                            TargetNotFoundException {
+        reset();
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        resolver.retries = RetryPolicy.NONE;
+        resolver.breaker = new CircuitBreaker(2, 200);
+        CachingTargetResolver cached = new CachingTargetResolver(
+                resolver, new ResolutionCache(10, 50, 50, 60000));
+        assertEquals("01 09 43.92", cached.submit("Mirach").ra);
+        Thread.sleep(100);  /* expired, but not stale */
+
+        standIn.failure_rate = 1.0;
+        for (int index = 0 ; index < 2 ; index++) {
+            try {
+                resolver.submit("M52");
+                fail("failed request not reported");
+            } catch (SIMBADQueryException e) {}
+        }
+        assertEquals(CircuitBreaker.State.OPEN, resolver.breaker.state());
+
+        long requests = standIn.requests.get();
+        try {
+            resolver.submit("Betelgeuse");
+            fail("the breaker is open");
+        } catch (SIMBADQueryException e) {}
+        assertEquals("01 09 43.92", cached.submit("Mirach").ra);
+        assertEquals("01 09 43.92", cached.submitAll(Arrays.asList("Mirach")).get(0).info.ra);
+        assertEquals(requests, standIn.requests.get());
+
+        /* The probe, once open_time has elapsed */
+        reset();
+        Thread.sleep(250);
+        assertEquals("+07 24 25.4", resolver.submit("Betelgeuse").dec);
+        assertEquals(CircuitBreaker.State.CLOSED, resolver.breaker.state());
+    }
+}
@@ -0,0 +1,145 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.IOException;
+
+/* Formats right ascensions as hours, minutes and seconds ("21 38 08.69") and
+ * declinations as degrees, arcminutes and arcseconds ("+57 26 48.1"), writing
+ * the characters directly into a char[] or an Appendable supplied by the
+ * caller, so that exporting a catalog with hundreds of thousands of rows
+ * creates no garbage at all -- unlike String.format(), which is also one of
+ * the slowest ways of formatting numbers in the JDK.
+ *
+ * The coordinates are rounded to the last decimal place shown before being
+ * split into their parts, so the carry propagates as it should: 59.999
+ * seconds become the next minute (and 24 hours, zero hours), instead of the
+ * "60.00" that rounding only the seconds would give. The sign of the
+ * declination is kept even if the degrees are zero (e.g., "-00 30  0.0").
+ * As they always have been, the arcseconds are padded with a space, not with
+ * a zero, when below ten (e.g., "+63 45  2.3"). */
+
+public final class SexagesimalFormat {
+
+    /* The number of characters written for each coordinate */
+    public static final int RA_LENGTH = 11;   /* "HH MM SS.ss" */
+    public static final int DEC_LENGTH = 11;  /* "+DD MM SS.s" */
+
+    private static final long CENTISECONDS_PER_DAY = 24L * 3600 * 100;
+
+    private SexagesimalFormat() {}
+
+    /* The right ascension in hundredths of a second of time, in [0, 24h) */
+    private static long ra_units(double ra_deg) {
+        long units = Math.round(ra_deg / 15.0 * 3600.0 * 100.0) % CENTISECONDS_PER_DAY;
+        return (units < 0) ? units + CENTISECONDS_PER_DAY : units;
+    }
+
+    /* The absolute value of the declination in tenths of an arcsecond */
+    private static long dec_units(double dec_deg) {
+        return Math.round(Math.abs(dec_deg) * 3600.0 * 10.0);
+    }
+
+    private static int two_digits(char[] dst, int offset, long value) {
+        dst[offset] = (char) ('0' + value / 10);
+        dst[offset + 1] = (char) ('0' + value % 10);
+        return offset + 2;
+    }
+
+    /* The same, but with a space instead of a leading zero */
+    private static int space_padded(char[] dst, int offset, long value) {
+        dst[offset] = (value < 10) ? ' ' : (char) ('0' + value / 10);
+        dst[offset + 1] = (char) ('0' + value % 10);
+        return offset + 2;
+    }
+
+    /* Writes the right ascension, in decimal degrees, into dst[offset], and
+     * returns the position right after the last character written */
+    public static int format_ra(double ra_deg, char[] dst, int offset) {
+        long units = SexagesimalFormat.ra_units(ra_deg);
+        offset = SexagesimalFormat.two_digits(dst, offset, units / 360000);
+        dst[offset++] = ' ';
+        offset = SexagesimalFormat.two_digits(dst, offset, units / 6000 % 60);
+        dst[offset++] = ' ';
+        offset = SexagesimalFormat.two_digits(dst, offset, units / 100 % 60);
+        dst[offset++] = '.';
+        return SexagesimalFormat.two_digits(dst, offset, units % 100);
+    }
+
+    /* The same, for the declination, which must be within [-90, +90] */
+    public static int format_dec(double dec_deg, char[] dst, int offset) {
+        long units = SexagesimalFormat.dec_units(dec_deg);
+        dst[offset++] = (dec_deg < 0 && units != 0) ? '-' : '+';
+        offset = SexagesimalFormat.two_digits(dst, offset, units / 36000);
+        dst[offset++] = ' ';
+        offset = SexagesimalFormat.two_digits(dst, offset, units / 600 % 60);
+        dst[offset++] = ' ';
+        offset = SexagesimalFormat.space_padded(dst, offset, units / 10 % 60);
+        dst[offset++] = '.';
+        dst[offset++] = (char) ('0' + units % 10);
+        return offset;
+    }
+
+    private static void two_digits(Appendable out, long value) throws IOException {
+        out.append((char) ('0' + value / 10));
+        out.append((char) ('0' + value % 10));
+    }
+
+    private static void space_padded(Appendable out, long value) throws IOException {
+        out.append((value < 10) ? ' ' : (char) ('0' + value / 10));
+        out.append((char) ('0' + value % 10));
+    }
+
+    /* Appends the right ascension, in decimal degrees, to 'out' */
+    public static void append_ra(Appendable out, double ra_deg) throws IOException {
+        long units = SexagesimalFormat.ra_units(ra_deg);
+        SexagesimalFormat.two_digits(out, units / 360000);
+        out.append(' ');
+        SexagesimalFormat.two_digits(out, units / 6000 % 60);
+        out.append(' ');
+        SexagesimalFormat.two_digits(out, units / 100 % 60);
+        out.append('.');
+        SexagesimalFormat.two_digits(out, units % 100);
+    }
+
+    /* Appends the declination, in decimal degrees, to 'out' */
+    public static void append_dec(Appendable out, double dec_deg) throws IOException {
+        long units = SexagesimalFormat.dec_units(dec_deg);
+        out.append((dec_deg < 0 && units != 0) ? '-' : '+');
+        SexagesimalFormat.two_digits(out, units / 36000);
+        out.append(' ');
+        SexagesimalFormat.two_digits(out, units / 600 % 60);
+        out.append(' ');
+        SexagesimalFormat.space_padded(out, units / 10 % 60);
+        out.append('.');
+        out.append((char) ('0' + units % 10));
+    }
+
+    /* For when a String is needed anyway, such as for TargetInformation */
+    public static String ra(double ra_deg) {
+        char[] chars = new char[RA_LENGTH];
+        SexagesimalFormat.format_ra(ra_deg, chars, 0);
+        return new String(chars);
+    }
+
+    public static String dec(double dec_deg) {
+        char[] chars = new char[DEC_LENGTH];
+        SexagesimalFormat.format_dec(dec_deg, chars, 0);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,77 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class SexagesimalFormatTest {
+
+    @Test
+    public void testRA() {
+        assertEquals("00 00 00.00", SexagesimalFormat.ra(0.0));
+        assertEquals("23 24 48.00", SexagesimalFormat.ra(351.2));
+        assertEquals("21 38 08.69", SexagesimalFormat.ra(324.5362));
+        assertEquals("01 09 43.92", SexagesimalFormat.ra(17.433016));
+
+        /* 59.999 seconds round up to the next minute, hour and day */
+        assertEquals("01 00 00.00", SexagesimalFormat.ra((59 * 60 + 59.999) / 3600.0 * 15));
+        assertEquals("00 00 00.00", SexagesimalFormat.ra(359.99999999));
+        assertEquals("00 00 00.00", SexagesimalFormat.ra(360.0));
+    }
+
+    @Test
+    public void testDec() {
+        assertEquals("+61 35 34.8", SexagesimalFormat.dec(61.593));
+        assertEquals("+07 24 25.4", SexagesimalFormat.dec(7.407064));
+        assertEquals("-78 49 48.0", SexagesimalFormat.dec(-78.83));
+        assertEquals("+90 00  0.0", SexagesimalFormat.dec(90.0));
+        assertEquals("-90 00  0.0", SexagesimalFormat.dec(-90.0));
+        assertEquals("+00 00  0.0", SexagesimalFormat.dec(0.0));
+        assertEquals("+00 00  0.0", SexagesimalFormat.dec(-0.00000001));
+
+        /* Between 0 and -1 degrees, the sign must not be lost */
+        assertEquals("-00 30  0.0", SexagesimalFormat.dec(-0.5));
+        assertEquals("-00 00  5.3", SexagesimalFormat.dec(-5.3 / 3600));
+
+        /* As with String.format("%4.1f"), a space instead of a leading zero */
+        assertEquals("+63 45  2.3", SexagesimalFormat.dec(63 + (45 * 60 + 2.3) / 3600.0));
+        assertEquals(String.format("%+03d %02d %4.1f", 7, 24, 5.4), SexagesimalFormat.dec(7.401500));
+
+        /* 59.96 arcseconds round up to the next arcminute and degree */
+        assertEquals("+11 00  0.0", SexagesimalFormat.dec(10 + (59 * 60 + 59.96) / 3600.0));
+    }
+
+    @Test
+    public void testAppendable() throws IOException {
+        StringBuilder row = new StringBuilder();
+        SexagesimalFormat.append_ra(row, 164.120271);
+        row.append(' ');
+        SexagesimalFormat.append_dec(row, 7.014658);
+        assertEquals("10 56 28.87 +07 00 52.8", row.toString());
+
+        char[] chars = new char[SexagesimalFormat.RA_LENGTH + 1 + SexagesimalFormat.DEC_LENGTH];
+        int offset = SexagesimalFormat.format_ra(164.120271, chars, 0);
+        chars[offset++] = ' ';
+        assertEquals(chars.length, SexagesimalFormat.format_dec(7.014658, chars, offset));
+        assertEquals("10 56 28.87 +07 00 52.8", new String(chars));
+    }
+}
@@ -0,0 +1,247 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/* A spatial index over the coordinates of resolved targets, which answers
+ * positional queries such as "which known targets are within 10 arcmin of
+ * this pointing" without scanning all of them. The sky is divided into zones
+ * of declination, each one of them with its targets sorted by right ascension,
+ * so only the targets in a narrow range of right ascension of a few zones
+ * have to be checked. All the targets must be in the same reference system
+ * (those without coordinates are ignored), as must be the positions given to
+ * the queries. Once built, the index cannot be modified, so it is safe for
+ * use by multiple threads. */
+
+public class SkyIndex {
+
+    /* The default height of the declination zones, in degrees */
+    public static final double DEFAULT_ZONE_HEIGHT = 0.5;
+
+    /* A target matched by a query, at 'distance' degrees from its center */
+    public static class Match {
+        public final TargetInformation info;
+        public final double distance;
+
+        Match(TargetInformation info, double distance) {
+            this.info = info;
+            this.distance = distance;
+        }
+
+        public String toString() {
+            return String.format("%s (%.6f deg)", this.info.name, this.distance);
+        }
+    }
+
+    private static final Comparator<Match> BY_DISTANCE = new Comparator<Match>() {
+        public int compare(Match a, Match b) {
+            return Double.compare(a.distance, b.distance);
+        }
+    };
+
+    public final double zone_height;
+
+    /* The targets, and the unit vectors of their positions */
+    private final TargetInformation[] targets;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+
+    /* For each zone, the targets in it sorted by right ascension, and their
+     * right ascensions, so that we can search them */
+    private final int[][] zones;
+    private final double[][] zone_ra;
+
+    public SkyIndex(Collection<TargetInformation> targets, double zone_height) {
+
+        if (!(zone_height > 0 && zone_height <= 180))
+            throw new IllegalArgumentException("invalid zone height");
+        this.zone_height = zone_height;
+
+        List<TargetInformation> located = new ArrayList<TargetInformation>(targets.size());
+        for (TargetInformation info : targets) {
+            if (info.ra_deg != null && info.dec_deg != null)
+                located.add(info);
+        }
+
+        /* Sort by right ascension, so that each zone ends up sorted, too */
+        Collections.sort(located, new Comparator<TargetInformation>() {
+            public int compare(TargetInformation a, TargetInformation b) {
+                return Double.compare(SkyIndex.normalize_ra(a.ra_deg),
+                                      SkyIndex.normalize_ra(b.ra_deg));
+            }
+        });
+
+        int ntargets = located.size();
+        this.targets = located.toArray(new TargetInformation[ntargets]);
+        this.x = new double[ntargets];
+        this.y = new double[ntargets];
+        this.z = new double[ntargets];
+
+        int nzones = (int) Math.ceil(180.0 / zone_height);
+        int[] sizes = new int[nzones];
+        for (int index = 0; index < ntargets; index++) {
+            double ra = Math.toRadians(this.targets[index].ra_deg);
+            double dec = Math.toRadians(this.targets[index].dec_deg);
+            this.x[index] = Math.cos(dec) * Math.cos(ra);
+            this.y[index] = Math.cos(dec) * Math.sin(ra);
+            this.z[index] = Math.sin(dec);
+            sizes[this.zone(this.targets[index].dec_deg)]++;
+        }
+
+        this.zones = new int[nzones][];
+        this.zone_ra = new double[nzones][];
+        for (int zone = 0; zone < nzones; zone++) {
+            this.zones[zone] = new int[sizes[zone]];
+            this.zone_ra[zone] = new double[sizes[zone]];
+            sizes[zone] = 0;
+        }
+        for (int index = 0; index < ntargets; index++) {
+            int zone = this.zone(this.targets[index].dec_deg);
+            this.zones[zone][sizes[zone]] = index;
+            this.zone_ra[zone][sizes[zone]++] = SkyIndex.normalize_ra(this.targets[index].ra_deg);
+        }
+    }
+
+    public SkyIndex(Collection<TargetInformation> targets) {
+        this(targets, DEFAULT_ZONE_HEIGHT);
+    }
+
+    /* The number of targets in the index */
+    public int size() {
+        return this.targets.length;
+    }
+
+    private static double normalize_ra(double ra_deg) {
+        double ra = ra_deg % 360.0;
+        return (ra < 0) ? ra + 360.0 : ra;
+    }
+
+    private int zone(double dec_deg) {
+        int zone = (int) Math.floor((dec_deg + 90.0) / this.zone_height);
+        return Math.max(0, Math.min(this.zones_count() - 1, zone));
+    }
+
+    private int zones_count() {
+        return (int) Math.ceil(180.0 / this.zone_height);
+    }
+
+    /* Returns the targets within 'radius' degrees of the given position, in
+     * decimal degrees, sorted by their distance to it */
+    public List<Match> cone(double ra_deg, double dec_deg, double radius) {
+
+        List<Match> matches = new ArrayList<Match>();
+        if (radius < 0 || this.targets.length == 0)
+            return matches;
+        radius = Math.min(radius, 180.0);
+
+        double ra = Math.toRadians(ra_deg);
+        double dec = Math.toRadians(dec_deg);
+        double x0 = Math.cos(dec) * Math.cos(ra);
+        double y0 = Math.cos(dec) * Math.sin(ra);
+        double z0 = Math.sin(dec);
+
+        /* The largest chord, between unit vectors, within the radius */
+        double max_chord = 2 * Math.sin(Math.toRadians(radius) / 2);
+        double max_chord2 = max_chord * max_chord * (1 + 1e-12);
+
+        /* The half-width in right ascension of the circle, which grows with
+         * the declination, or the whole zone if it contains one of the poles */
+        double alpha = 180.0;
+        if (dec_deg + radius < 90.0 && dec_deg - radius > -90.0) {
+            double r = Math.toRadians(radius);
+            double cos_product = Math.abs(Math.cos(dec - r) * Math.cos(dec + r));
+            alpha = Math.toDegrees(Math.atan(Math.sin(r) / Math.sqrt(cos_product)));
+        }
+
+        double center = SkyIndex.normalize_ra(ra_deg);
+        int first = this.zone(dec_deg - radius);
+        int last = this.zone(dec_deg + radius);
+        for (int zone = first; zone <= last; zone++) {
+            if (alpha >= 180.0) {
+                this.scan(zone, 0, 360.0, x0, y0, z0, max_chord2, matches);
+            } else {
+                double low = center - alpha;
+                double high = center + alpha;
+                if (low < 0) {
+                    this.scan(zone, low + 360.0, 360.0, x0, y0, z0, max_chord2, matches);
+                    low = 0;
+                }
+                if (high > 360.0) {
+                    this.scan(zone, 0, high - 360.0, x0, y0, z0, max_chord2, matches);
+                    high = 360.0;
+                }
+                this.scan(zone, low, high, x0, y0, z0, max_chord2, matches);
+            }
+        }
+
+        Collections.sort(matches, BY_DISTANCE);
+        return matches;
+    }
+
+    /* Checks the targets of the zone with right ascension in [low, high] */
+    private void scan(int zone, double low, double high, double x0, double y0, double z0,
+                      double max_chord2, List<Match> matches) {
+
+        double[] ras = this.zone_ra[zone];
+        int index = Arrays.binarySearch(ras, low);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            while (index > 0 && ras[index - 1] == low)  /* the first one */
+                index--;
+        }
+
+        int[] members = this.zones[zone];
+        for (; index < ras.length && ras[index] <= high; index++) {
+            int target = members[index];
+            double dx = this.x[target] - x0;
+            double dy = this.y[target] - y0;
+            double dz = this.z[target] - z0;
+            double chord2 = dx * dx + dy * dy + dz * dz;
+            if (chord2 <= max_chord2) {
+                double distance = Math.toDegrees(2 * Math.asin(Math.min(1.0, Math.sqrt(chord2) / 2)));
+                matches.add(new Match(this.targets[target], distance));
+            }
+        }
+    }
+
+    /* Returns the (at most) k targets nearest to the given position, sorted
+     * by their distance to it. The search starts with a small radius, which
+     * is doubled until enough targets are found. */
+    public List<Match> nearest(double ra_deg, double dec_deg, int k) {
+
+        if (k <= 0 || this.targets.length == 0)
+            return new ArrayList<Match>();
+        k = Math.min(k, this.targets.length);
+
+        double radius = this.zone_height;
+        while (true) {
+            List<Match> matches = this.cone(ra_deg, dec_deg, radius);
+            if (matches.size() >= k || radius >= 180.0)
+                return new ArrayList<Match>(matches.subList(0, Math.min(k, matches.size())));
+            radius = Math.min(180.0, radius * 2);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2012 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SkyIndexTest {
+
+    private static Random generator = new Random(31415);
+
+    /* Uniformly distributed over the sphere */
+    private static ArrayList<TargetInformation> random_targets(int n) {
+        ArrayList<TargetInformation> targets = new ArrayList<TargetInformation>(n);
+        for (int index = 0; index < n; index++) {
+            TargetInformation info = new TargetInformation("T" + index);
+            info.ra_deg = generator.nextDouble() * 360.0;
+            info.dec_deg = Math.toDegrees(Math.asin(2 * generator.nextDouble() - 1));
+            targets.add(info);
+        }
+        return targets;
+    }
+
+    /* The angular distance between two positions, in degrees */
+    private static double distance(double ra1, double dec1, double ra2, double dec2) {
+        double a1 = Math.toRadians(ra1), d1 = Math.toRadians(dec1);
+        double a2 = Math.toRadians(ra2), d2 = Math.toRadians(dec2);
+        double sin_dd = Math.sin((d2 - d1) / 2), sin_da = Math.sin((a2 - a1) / 2);
+        double h = sin_dd * sin_dd + Math.cos(d1) * Math.cos(d2) * sin_da * sin_da;
+        return Math.toDegrees(2 * Math.asin(Math.min(1.0, Math.sqrt(h))));
+    }
+
+    private static int brute_force(List<TargetInformation> targets, double ra,
+                                   double dec, double radius) {
+        int count = 0;
+        for (TargetInformation info : targets) {
+            if (distance(ra, dec, info.ra_deg, info.dec_deg) <= radius)
+                count++;
+        }
+        return count;
+    }
+
+    /* The cone searches must find exactly the same targets as a linear scan,
+     * including around the poles and where the right ascension wraps around */
+
+    @Test
+    public void testCone() {
+
+        ArrayList<TargetInformation> targets = random_targets(20000);
+        SkyIndex index = new SkyIndex(targets);
+        assertEquals(20000, index.size());
+
+        double[][] centers = {{0.0, 0.0}, {359.9, 10.0}, {0.1, -30.0}, {180.0, 89.9},
+                              {45.0, -89.5}, {210.80212, 54.34808}};
+        double[] radii = {0.0, 1.0 / 6, 1.0, 5.0, 30.0};
+
+        for (double[] center : centers) {
+            for (double radius : radii) {
+                List<SkyIndex.Match> matches = index.cone(center[0], center[1], radius);
+                assertEquals(brute_force(targets, center[0], center[1], radius), matches.size());
+                for (int i = 1; i < matches.size(); i++)
+                    assertTrue(matches.get(i - 1).distance <= matches.get(i).distance);
+            }
+        }
+    }
+
+    @Test
+    public void testNearest() {
+
+        ArrayList<TargetInformation> targets = random_targets(5000);
+        targets.add(new TargetInformation("no coordinates"));
+        SkyIndex index = new SkyIndex(targets, 2.0);
+        assertEquals(5000, index.size());
+
+        List<SkyIndex.Match> nearest = index.nearest(100.0, 20.0, 10);
+        assertEquals(10, nearest.size());
+
+        /* No target outside the result may be closer than the last one in it */
+        double farthest = nearest.get(9).distance;
+        assertEquals(10, brute_force(targets.subList(0, 5000), 100.0, 20.0, farthest));
+
+        assertEquals(5000, index.nearest(0.0, 0.0, 10000).size());
+    }
+}
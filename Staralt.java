@@ -18,14 +18,18 @@
  **********************************************************************/
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.Calendar;
+import java.util.concurrent.CompletionException;
 
 
 public class Staralt {
@@ -82,24 +86,64 @@ public class Staralt {
       }
 
 
-    /* Receives the path to a Staralt plot and downloads it to the default
-     * temporary-file directory. Returns a File object which encapsulates that
-     * to which the plot was saved. Bear in mind that you are responsible for
-     * the deletion of the file when it is no longer needed (for example, you
-     * could choose to use the deleteOnExit() method to arrange for it to be
-     * removed automatically). The plot is saved to a file with the .gif
-     * extension, as that is the format being currently used by Staralt */
+    /* The maximum time to wait for Staralt to start sending a plot */
+    public static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /* The size of the buffer through which the plots are streamed */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* Receives the path to a Staralt plot and streams it into 'channel', as
+     * it arrives, whatever its size, returning the number of bytes written.
+     * The channel is not closed, so that the plot can be, for example, sent
+     * straight to the client of a web server, without going through disk. */
+
+    public static long download(String url, WritableByteChannel channel) throws IOException {
+        long written = 0;
+        try (ReadableByteChannel plot = Channels.newChannel(HttpTransport.open(url, TIMEOUT))) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (plot.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    written += channel.write(buffer);
+                buffer.clear();
+            }
+        }
+        return written;
+    }
+
+    /* The plot, in memory, as a read-only buffer */
+    public static ByteBuffer fetch(String url) throws IOException {
+        try {
+            byte[] plot = HttpTransport.get(url, TIMEOUT).join();
+            return ByteBuffer.wrap(plot).asReadOnlyBuffer();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            throw new IOException("cannot download " + url, ex.getCause());
+        }
+    }
+
+    /* Downloads the plot to the default temporary-file directory. Returns a
+     * File object which encapsulates that to which the plot was saved. Bear
+     * in mind that you are responsible for the deletion of the file when it
+     * is no longer needed (for example, you could choose to use the
+     * deleteOnExit() method to arrange for it to be removed automatically,
+     * although in long-running JVMs download(String, WritableByteChannel) or
+     * fetch(String) are better choices). The plot is saved to a file with
+     * the .gif extension, as that is the format being currently used by
+     * Staralt. If the download fails, no file is left behind. */
 
     public static
     File download(String url) throws IOException{
 
-        /* As seen at: http://stackoverflow.com/a/921400 */
-        URL staralt = new URL(url);
-        ReadableByteChannel rbc = Channels.newChannel(staralt.openStream());
         File dst = File.createTempFile("staralt_", ".gif");
-        FileOutputStream fos = new FileOutputStream(dst);
-        fos.getChannel().transferFrom(rbc, 0, 1 << 24);
-        fos.close();
+        try (FileChannel file = FileChannel.open(dst.toPath(), StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            Staralt.download(url, file);
+        } catch (IOException | RuntimeException ex) {
+            dst.delete();
+            throw ex;
+        }
         return dst;
     }
 
@@ -115,6 +159,15 @@ public class Staralt {
 
     }
 
+    /* The same, but streamed into 'channel' instead of saved to a file */
+    public long plot(TargetInformation info, int day, int month, int year,
+                     WritableByteChannel channel) throws IOException {
+        String url = Staralt.build_query_url(info, day, month, year,
+                                             this.longitude, this.latitude,
+                                             this.altitude);
+        return Staralt.download(url, channel);
+    }
+
     /* If the date is not given, default to today */
     public File plot(TargetInformation info) throws IOException {
 
@@ -128,6 +181,12 @@ public class Staralt {
         return this.plot(info, day, month, year);
     }
 
+    /* The altitude, airmass and hour angle of targets on the night of this
+     * date, computed locally (see Ephemeris) instead of plotted by Staralt */
+    public Ephemeris ephemeris(int day, int month, int year) {
+        return Ephemeris.night(this, day, month, year);
+    }
+
     /* An illustration of how Staralt might be used in real code */
     public static void main(String[] args) throws IOException {
 
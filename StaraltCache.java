@@ -0,0 +1,352 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A cache of Staralt plots on disk, as observers open the plot of the same
+ * target and night over and over. The plots are content-addressed: the name
+ * of each file is the SHA-256 hash of the URL returned by build_query_url(),
+ * which contains everything that the plot depends on (coordinates, date and
+ * site), so entries never need to be invalidated, only evicted. When the
+ * plots take more than 'max_bytes', the least recently used are deleted; the
+ * time of last use is the modification time of the file, so the cache, and
+ * its order, survive restarts of the JVM.
+ *
+ * Plots are downloaded to a temporary file and then moved into place, so the
+ * files in the cache are always complete, and the same plot is not
+ * downloaded twice at the same time. prefetch() downloads the plots for a
+ * whole schedule, several at once, over the pooled connections of
+ * HttpTransport. Safe for use by multiple threads (but not processes). */
+
+public class StaraltCache {
+
+    /* The default maximum size of the plots in the cache, in bytes */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /* The default number of plots downloaded at the same time by prefetch() */
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    private static final String EXTENSION = ".gif";
+
+    public final Path directory;
+    public final long max_bytes;
+
+    /* The size of each file, by hash, in access order */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long bytes = 0;  /* guarded, as 'entries', by 'entries' */
+
+    /* The plots being downloaded, so that they are downloaded only once */
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> inflight =
+            new ConcurrentHashMap<String, CompletableFuture<Path>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /* Opens the cache in 'directory', which is created if needed, taking
+     * over the plots that it already contains */
+    public StaraltCache(Path directory, long max_bytes) throws IOException {
+        if (max_bytes < 1)
+            throw new IllegalArgumentException("max_bytes must be positive");
+        this.directory = directory;
+        this.max_bytes = max_bytes;
+        Files.createDirectories(directory);
+
+        /* Downloads interrupted by the end of the JVM are of no use */
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(directory, "*.part")) {
+            for (Path part : parts)
+                Files.deleteIfExists(part);
+        }
+
+        /* Oldest first, so that they are the first ones evicted */
+        final Map<Path, FileTime> used = new HashMap<Path, FileTime>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files)
+                used.put(file, Files.getLastModifiedTime(file));
+        }
+        List<Path> plots = new ArrayList<Path>(used.keySet());
+        plots.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+
+        synchronized (this.entries) {
+            for (Path file : plots) {
+                String name = file.getFileName().toString();
+                long size = Files.size(file);
+                this.entries.put(name.substring(0, name.length() - EXTENSION.length()), size);
+                this.bytes += size;
+            }
+        }
+        this.evict();
+    }
+
+    public StaraltCache() throws IOException {
+        this(Paths.get(System.getProperty("java.io.tmpdir"), "staralt-cache"), DEFAULT_MAX_BYTES);
+    }
+
+    /* The name of the plot in the cache, hex-encoded SHA-256 of the URL */
+    public static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(2 * digest.length);
+            for (byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is always available", ex);
+        }
+    }
+
+    private Path path(String hash) {
+        return this.directory.resolve(hash + EXTENSION);
+    }
+
+    /* Whether the plot is in the cache, without counting it as a use */
+    public boolean contains(String url) {
+        synchronized (this.entries) {
+            return this.entries.containsKey(StaraltCache.hash(url));
+        }
+    }
+
+    /* The file with the plot, downloaded first if it is not in the cache.
+     * The file belongs to the cache: do not modify or delete it, and bear
+     * in mind that it may be evicted at any time after it is returned. */
+    public CompletableFuture<Path> get_async(final String url) {
+
+        final String hash = StaraltCache.hash(url);
+        final Path path = this.path(hash);
+        if (this.hit(hash, path))
+            return CompletableFuture.completedFuture(path);
+
+        final CompletableFuture<Path> download = new CompletableFuture<Path>();
+        CompletableFuture<Path> inflight = this.inflight.putIfAbsent(hash, download);
+        if (inflight != null) {
+            this.misses.incrementAndGet();
+            return inflight;
+        }
+        /* A download may have finished, and left 'inflight', after the plot
+         * was looked up above: it is in the cache already, then */
+        if (this.hit(hash, path)) {
+            this.inflight.remove(hash, download);
+            download.complete(path);
+            return download;
+        }
+
+        this.misses.incrementAndGet();
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(this.directory, hash, ".part");
+        } catch (IOException ex) {
+            this.inflight.remove(hash, download);
+            download.completeExceptionally(ex);
+            return download;
+        }
+        HttpTransport.download(url, temporary, Staralt.TIMEOUT).whenComplete((file, ex) -> {
+            try {
+                if (ex != null)
+                    throw ex;
+                Files.move(file, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                this.add(hash, Files.size(path));
+                download.complete(path);
+            } catch (Throwable failure) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    /* Left behind, but it will not be mistaken for a plot */
+                }
+                download.completeExceptionally(StaraltCache.unwrap(failure));
+            } finally {
+                this.inflight.remove(hash, download);
+            }
+        });
+        return download;
+    }
+
+    /* Whether the plot is in the cache, counting it as a use if it is */
+    private boolean hit(String hash, Path path) {
+        boolean cached;
+        synchronized (this.entries) {
+            cached = this.entries.get(hash) != null;
+        }
+        if (!cached || !Files.exists(path))
+            return false;
+        this.hits.incrementAndGet();
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            /* Only the order of eviction after a restart is affected */
+        }
+        return true;
+    }
+
+    /* Blocking version of get_async() */
+    public Path get(String url) throws IOException {
+        try {
+            return this.get_async(url).join();
+        } catch (CompletionException ex) {
+            Throwable cause = StaraltCache.unwrap(ex);
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("cannot download " + url, cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        while (ex instanceof CompletionException && ex.getCause() != null)
+            ex = ex.getCause();
+        return ex;
+    }
+
+    /* The plot that the Staralt instance would download, from the cache */
+    public Path plot(Staralt staralt, TargetInformation info, int day, int month, int year)
+            throws IOException {
+        return this.get(Staralt.build_query_url(info, day, month, year, staralt.longitude,
+                                                staralt.latitude, staralt.altitude));
+    }
+
+    /* Downloads the plots that are not in the cache yet, 'concurrency' of
+     * them at a time. The future completes once all of them have been tried,
+     * with the number of plots that could not be downloaded. */
+    public CompletableFuture<Integer> prefetch(Collection<String> urls, int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive");
+        final Iterator<String> pending = new ArrayList<String>(urls).iterator();
+        final AtomicLong failed = new AtomicLong();
+        List<CompletableFuture<Void>> workers = new ArrayList<CompletableFuture<Void>>();
+        for (int worker = 0; worker < concurrency; worker++)
+            workers.add(this.next(pending, failed));
+        return CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> (int) failed.get());
+    }
+
+    /* Each worker downloads one plot after another, until none are left.
+     * Plots already in the cache complete synchronously, so they are skipped
+     * over in a loop: chaining them would nest one call per plot in the same
+     * stack, and a large, mostly cached schedule would overflow it. */
+    private CompletableFuture<Void> next(final Iterator<String> pending, final AtomicLong failed) {
+        while (true) {
+            String url;
+            synchronized (pending) {
+                if (!pending.hasNext())
+                    return CompletableFuture.completedFuture(null);
+                url = pending.next();
+            }
+            CompletableFuture<Path> plot = this.get_async(url);
+            if (!plot.isDone()) {
+                return plot.handle((path, ex) -> {
+                    if (ex != null)
+                        failed.incrementAndGet();
+                    return null;
+                }).thenCompose(done -> this.next(pending, failed));
+            }
+            if (plot.isCompletedExceptionally())
+                failed.incrementAndGet();
+        }
+    }
+
+    /* The plots for the targets of a night's schedule */
+    public CompletableFuture<Integer> prefetch(Staralt staralt, Collection<TargetInformation> targets,
+                                               int day, int month, int year) {
+        List<String> urls = new ArrayList<String>(targets.size());
+        for (TargetInformation info : targets) {
+            urls.add(Staralt.build_query_url(info, day, month, year, staralt.longitude,
+                                             staralt.latitude, staralt.altitude));
+        }
+        return this.prefetch(urls, DEFAULT_CONCURRENCY);
+    }
+
+    private void add(String hash, long size) {
+        synchronized (this.entries) {
+            Long previous = this.entries.put(hash, size);
+            this.bytes += size - ((previous == null) ? 0 : previous);
+        }
+        this.evict();
+    }
+
+    /* Deletes the least recently used plots until they fit into max_bytes,
+     * keeping at least the most recent one, however large */
+    private void evict() {
+        List<String> evicted = new ArrayList<String>();
+        synchronized (this.entries) {
+            Iterator<Map.Entry<String, Long>> it = this.entries.entrySet().iterator();
+            while (this.bytes > this.max_bytes && this.entries.size() > 1 && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                this.bytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (String hash : evicted) {
+            try {
+                Files.deleteIfExists(this.path(hash));
+                this.evictions.incrementAndGet();
+            } catch (IOException ex) {
+                /* Not in the index any more, so it will be replaced if needed */
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /* The total size of the plots in the cache */
+    public long bytes() {
+        synchronized (this.entries) {
+            return this.bytes;
+        }
+    }
+
+    public long hits() {
+        return this.hits.get();
+    }
+
+    public long misses() {
+        return this.misses.get();
+    }
+
+    public long evictions() {
+        return this.evictions.get();
+    }
+
+    public String toString() {
+        return String.format("%d plots (%d bytes), %d hits, %d misses, %d evictions",
+                             this.size(), this.bytes(), this.hits(), this.misses(), this.evictions());
+    }
+}
@@ -0,0 +1,193 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/* The cache of plots, downloaded from a local server instead of Staralt */
+
+public class StaraltCacheTest {
+
+    private static HttpServer server;
+    private static String url;
+    private static final AtomicInteger requests = new AtomicInteger();
+
+    /* The plot /plot?<n> has n kilobytes, all of them with value n */
+    @BeforeClass
+    public static void SetUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plot", exchange -> {
+            requests.incrementAndGet();
+            int size = Integer.parseInt(exchange.getRequestURI().getQuery());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) { }
+            byte[] body = new byte[size * 1024];
+            Arrays.fill(body, (byte) size);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterClass
+    public static void TearDown() {
+        server.stop(0);
+    }
+
+    private static String plot(int kilobytes) {
+        return url + "/plot?" + kilobytes;
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        StaraltCache cache = new StaraltCache(Files.createTempDirectory("staralt"), 1 << 20);
+        int before = requests.get();
+        Path first = cache.get(plot(3));
+        Path second = cache.get(plot(3));
+        assertEquals(first, second);
+        assertEquals(before + 1, requests.get());
+        assertEquals(3 * 1024, Files.size(first));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertTrue(cache.contains(plot(3)));
+        assertEquals(StaraltCache.hash(plot(3)) + ".gif", first.getFileName().toString());
+    }
+
+    /* Many requests for the same plot at once, a single download */
+    @Test
+    public void testSingleFlight() throws IOException {
+        StaraltCache cache = new StaraltCache(Files.createTempDirectory("staralt"), 1 << 20);
+        int before = requests.get();
+        List<CompletableFuture<Path>> futures = new ArrayList<CompletableFuture<Path>>();
+        for (int index = 0; index < 20; index++)
+            futures.add(cache.get_async(plot(5)));
+        for (CompletableFuture<Path> future : futures)
+            assertEquals(futures.get(0).join(), future.join());
+        assertEquals(before + 1, requests.get());
+    }
+
+    /* The least recently used plots go first, also after reopening it, when
+     * the order is that of the modification times of the files */
+    @Test
+    public void testEviction() throws IOException {
+        Path directory = Files.createTempDirectory("staralt");
+        StaraltCache cache = new StaraltCache(directory, 10 * 1024);
+        cache.get(plot(4));
+        cache.get(plot(3));
+        cache.get(plot(4));  /* now the most recently used */
+        cache.get(plot(2));
+        assertEquals(9 * 1024, cache.bytes());
+
+        cache.get(plot(6));
+        assertTrue(cache.contains(plot(6)));
+        assertTrue(cache.contains(plot(2)));
+        assertFalse(cache.contains(plot(3)));
+        assertFalse(cache.contains(plot(4)));
+        assertEquals(2, cache.evictions());
+        assertEquals(8 * 1024, cache.bytes());
+
+        /* Set explicitly, as file systems may only keep whole seconds: the
+         * plot of 6 KB, the most recently used above, is now the oldest */
+        Files.setLastModifiedTime(directory.resolve(StaraltCache.hash(plot(6)) + ".gif"),
+                                  FileTime.fromMillis(1000000000000L));
+        Files.setLastModifiedTime(directory.resolve(StaraltCache.hash(plot(2)) + ".gif"),
+                                  FileTime.fromMillis(1500000000000L));
+        Files.write(directory.resolve("interrupted.part"), new byte[100]);
+        StaraltCache reopened = new StaraltCache(directory, 10 * 1024);
+        assertEquals(2, reopened.size());
+        assertEquals(8 * 1024, reopened.bytes());
+        assertFalse(Files.exists(directory.resolve("interrupted.part")));
+        reopened.get(plot(3));
+        assertFalse(reopened.contains(plot(6)));
+        assertTrue(reopened.contains(plot(2)));
+        assertTrue(reopened.contains(plot(3)));
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        Path directory = Files.createTempDirectory("staralt");
+        StaraltCache cache = new StaraltCache(directory, 1 << 20);
+        List<String> urls = new ArrayList<String>();
+        for (int kilobytes = 1; kilobytes <= 30; kilobytes++)
+            urls.add(plot(kilobytes));
+        urls.add(url + "/missing");
+        urls.add(plot(1));
+
+        assertEquals(1, (int) cache.prefetch(urls, 4).join());
+        assertEquals(30, cache.size());
+        assertEquals(30 * 31 / 2 * 1024, cache.bytes());
+        try {
+            cache.get(url + "/missing");
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("404"));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(30, files.count());  /* no partial downloads left */
+        }
+    }
+
+    /* Plots that are already cached must not deepen the stack one by one */
+    @Test
+    public void testPrefetchCached() throws IOException {
+        StaraltCache cache = new StaraltCache(Files.createTempDirectory("staralt"), 1 << 20);
+        cache.get(plot(1));
+        int before = requests.get();
+        List<String> urls = new ArrayList<String>();
+        for (int index = 0; index < 100000; index++)
+            urls.add(plot(1));
+        urls.add(plot(2));
+        for (int index = 0; index < 100000; index++)
+            urls.add(plot(1));
+
+        assertEquals(0, (int) cache.prefetch(urls, 1).join());
+        assertEquals(before + 1, requests.get());
+        assertEquals(200000, cache.hits());
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,127 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/* The download of the plots, from a local server instead of Staralt */
+
+public class StaraltTest {
+
+    private static HttpServer server;
+    private static String url;
+
+    /* Larger than the 16 MB to which downloads used to be truncated */
+    private static final byte[] PLOT = new byte[17 * 1024 * 1024 + 123];
+
+    @BeforeClass
+    public static void SetUp() throws IOException {
+        for (int index = 0; index < PLOT.length; index++)
+            PLOT[index] = (byte) (index * 31 + (index >> 13));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plot", exchange -> {
+            boolean gzip = exchange.getRequestURI().getQuery() != null;
+            byte[] body = PLOT;
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                    out.write(PLOT);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterClass
+    public static void TearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        for (String path : new String[] {"/plot", "/plot?gzip"}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(PLOT.length, Staralt.download(url + path, Channels.newChannel(out)));
+            assertTrue(path, Arrays.equals(PLOT, out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testFetch() throws IOException {
+        ByteBuffer plot = Staralt.fetch(url + "/plot");
+        assertTrue(plot.isReadOnly());
+        assertEquals(ByteBuffer.wrap(PLOT), plot);
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File plot = Staralt.download(url + "/plot");
+        try {
+            assertTrue(Arrays.equals(PLOT, Files.readAllBytes(plot.toPath())));
+        } finally {
+            plot.delete();
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        try {
+            Staralt.download(url + "/missing", Channels.newChannel(new ByteArrayOutputStream()));
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("404"));
+        }
+        try {
+            Staralt.fetch(url + "/missing");
+            fail("IOException expected");
+        } catch (IOException ex) { }
+        try {
+            Staralt.download(url + "/missing");
+            fail("IOException expected");
+        } catch (IOException ex) { }
+    }
+}
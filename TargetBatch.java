@@ -0,0 +1,300 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/* The results of resolving many targets, such as those of a survey, stored
+ * column by column, in arrays of primitives, as LocalCatalog does: a million
+ * targets take tens of megabytes, instead of the hundreds that a million
+ * TargetInformation instances (each with a dozen boxed values and strings)
+ * would need. The names are stored one after another in a single array of
+ * bytes, the object types once each, the values that are missing in a
+ * bitmask per row (with the bits of TargetRecord) and the sexagesimal
+ * coordinates are formatted only when asked for.
+ *
+ * Targets that were not found, or whose resolution failed, are also kept,
+ * with their status, so that rows correspond to the targets submitted. Not
+ * safe for use by multiple threads. */
+
+public class TargetBatch {
+
+    /* The outcome of the resolution of each row */
+    public static final byte FOUND = 0;
+    public static final byte NOT_FOUND = 1;
+    public static final byte FAILED = 2;
+
+    private int rows = 0;
+    private byte[] status;
+    private byte[] present;
+    private double[] ra_deg;
+    private double[] dec_deg;
+    private double[] pm_ra;
+    private double[] pm_dec;
+    private int[] epoch;
+    private int[] equinox;
+    private byte[] system;  /* the ordinal of the ReferenceSystem */
+    private int[] type;     /* an index into 'types' */
+
+    private String[] types = new String[64];
+    private int ntypes = 0;
+    private final HashMap<String, Integer> type_codes = new HashMap<String, Integer>();
+
+    /* The name of row i, in UTF-8, is at [name_start[i], name_start[i + 1]) */
+    private byte[] names;
+    private int names_length = 0;
+    private int[] name_start;
+
+    private static final ReferenceSystem[] SYSTEMS = ReferenceSystem.values();
+
+    public TargetBatch(int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.status = new byte[capacity];
+        this.present = new byte[capacity];
+        this.ra_deg = new double[capacity];
+        this.dec_deg = new double[capacity];
+        this.pm_ra = new double[capacity];
+        this.pm_dec = new double[capacity];
+        this.epoch = new int[capacity];
+        this.equinox = new int[capacity];
+        this.system = new byte[capacity];
+        this.type = new int[capacity];
+        this.names = new byte[capacity * 16];
+        this.name_start = new int[capacity + 1];
+    }
+
+    public TargetBatch() {
+        this(1024);
+    }
+
+    /* Collects the results of, for example, BulkResolver.resolve() */
+    public static TargetBatch of(Iterator<Resolution> resolutions) {
+        TargetBatch batch = new TargetBatch();
+        while (resolutions.hasNext())
+            batch.add(resolutions.next());
+        return batch;
+    }
+
+    /* Each of these methods returns the row of the target added */
+    public int add(Resolution resolution) {
+        if (resolution.found())
+            return this.add(resolution.name, resolution.info);
+        byte status = (resolution.error instanceof TargetNotFoundException) ? NOT_FOUND : FAILED;
+        return this.add(resolution.name, status, 0, Double.NaN, Double.NaN, 0, 0, null,
+                        Double.NaN, Double.NaN, null);
+    }
+
+    /* Under 'targetName', which may not be the same as info.name (e.g., with
+     * the easter egg), so that rows are always named as they were submitted */
+    public int add(String targetName, TargetInformation info) {
+        return this.add(targetName, FOUND, TargetRecord.mask(info),
+                        (info.ra_deg == null) ? Double.NaN : info.ra_deg,
+                        (info.dec_deg == null) ? Double.NaN : info.dec_deg,
+                        (info.epoch == null) ? 0 : info.epoch,
+                        (info.equinox == null) ? 0 : info.equinox, info.system,
+                        (info.pm_ra == null) ? Double.NaN : info.pm_ra,
+                        (info.pm_dec == null) ? Double.NaN : info.pm_dec,
+                        info.object_type);
+    }
+
+    public int add(TargetRecord record) {
+        return this.add(record.name(), FOUND, record.mask(), record.ra_deg(), record.dec_deg(),
+                        record.epoch(), record.equinox(), record.system(),
+                        record.pm_ra(), record.pm_dec(), record.object_type());
+    }
+
+    private int add(String targetName, byte status, int present, double ra_deg, double dec_deg,
+                    int epoch, int equinox, ReferenceSystem system,
+                    double pm_ra, double pm_dec, String object_type) {
+
+        if (this.rows == this.status.length)
+            this.grow(Math.max(this.rows * 2, 16));  /* trim() may have left it empty */
+
+        int row = this.rows++;
+        this.status[row] = status;
+        this.present[row] = (byte) present;
+        this.ra_deg[row] = ra_deg;
+        this.dec_deg[row] = dec_deg;
+        this.pm_ra[row] = pm_ra;
+        this.pm_dec[row] = pm_dec;
+        this.epoch[row] = epoch;
+        this.equinox[row] = equinox;
+        this.system[row] = (system == null) ? -1 : (byte) system.ordinal();
+        this.type[row] = ((present & TargetRecord.OBJECT_TYPE) != 0) ? this.type_code(object_type) : -1;
+
+        byte[] name = (targetName == null) ? new byte[0] : targetName.getBytes(StandardCharsets.UTF_8);
+        if (this.names_length + name.length > this.names.length)
+            this.names = Arrays.copyOf(this.names, Math.max(this.names.length * 2,
+                                                            this.names_length + name.length));
+        System.arraycopy(name, 0, this.names, this.names_length, name.length);
+        this.name_start[row] = this.names_length;
+        this.names_length += name.length;
+        this.name_start[row + 1] = this.names_length;
+        return row;
+    }
+
+    private void grow(int capacity) {
+        this.status = Arrays.copyOf(this.status, capacity);
+        this.present = Arrays.copyOf(this.present, capacity);
+        this.ra_deg = Arrays.copyOf(this.ra_deg, capacity);
+        this.dec_deg = Arrays.copyOf(this.dec_deg, capacity);
+        this.pm_ra = Arrays.copyOf(this.pm_ra, capacity);
+        this.pm_dec = Arrays.copyOf(this.pm_dec, capacity);
+        this.epoch = Arrays.copyOf(this.epoch, capacity);
+        this.equinox = Arrays.copyOf(this.equinox, capacity);
+        this.system = Arrays.copyOf(this.system, capacity);
+        this.type = Arrays.copyOf(this.type, capacity);
+        this.name_start = Arrays.copyOf(this.name_start, capacity + 1);
+    }
+
+    private int type_code(String object_type) {
+        Integer code = this.type_codes.get(object_type);
+        if (code == null) {
+            if (this.ntypes == this.types.length)
+                this.types = Arrays.copyOf(this.types, this.ntypes * 2);
+            code = this.ntypes;
+            this.types[this.ntypes++] = TargetRecord.intern(object_type);
+            this.type_codes.put(object_type, code);
+        }
+        return code;
+    }
+
+    /* Releases the unused capacity, once no more targets are to be added
+     * (they still can, but the arrays will have to grow again) */
+    public void trim() {
+        this.grow(this.rows);
+        this.names = Arrays.copyOf(this.names, this.names_length);
+    }
+
+    public int size() {
+        return this.rows;
+    }
+
+    /* The number of different object types */
+    public int types() {
+        return this.ntypes;
+    }
+
+    public String name(int row) {
+        this.check(row);
+        int start = this.name_start[row];
+        return new String(this.names, start, this.name_start[row + 1] - start,
+                          StandardCharsets.UTF_8);
+    }
+
+    public byte status(int row) {
+        this.check(row);
+        return this.status[row];
+    }
+
+    public boolean found(int row) {
+        return this.status(row) == FOUND;
+    }
+
+    /* Whether the value or values with the given bits of TargetRecord are
+     * present; never for the targets that were not found */
+    public boolean has(int row, int bits) {
+        this.check(row);
+        return (this.present[row] & bits) == bits;
+    }
+
+    /* NaN if missing */
+    public double ra_deg(int row) {
+        this.check(row);
+        return this.ra_deg[row];
+    }
+
+    public double dec_deg(int row) {
+        this.check(row);
+        return this.dec_deg[row];
+    }
+
+    public double pm_ra(int row) {
+        this.check(row);
+        return this.pm_ra[row];
+    }
+
+    public double pm_dec(int row) {
+        this.check(row);
+        return this.pm_dec[row];
+    }
+
+    /* Zero if missing: use has() to tell */
+    public int epoch(int row) {
+        this.check(row);
+        return this.epoch[row];
+    }
+
+    public int equinox(int row) {
+        this.check(row);
+        return this.equinox[row];
+    }
+
+    /* null if missing */
+    public ReferenceSystem system(int row) {
+        this.check(row);
+        byte ordinal = this.system[row];
+        return (ordinal == -1) ? null : SYSTEMS[ordinal];
+    }
+
+    public String object_type(int row) {
+        this.check(row);
+        int code = this.type[row];
+        return (code == -1) ? null : this.types[code];
+    }
+
+    /* Formatted anew every time, as they are not stored */
+    public String ra(int row) {
+        return this.has(row, TargetRecord.RA_DEG) ? SexagesimalFormat.ra(this.ra_deg[row]) : null;
+    }
+
+    public String dec(int row) {
+        return this.has(row, TargetRecord.DEC_DEG) ? SexagesimalFormat.dec(this.dec_deg[row]) : null;
+    }
+
+    /* The target in the row, which must have been found */
+    public TargetRecord record(int row) {
+        if (!this.found(row))
+            throw new IllegalArgumentException("row " + row + " was not resolved");
+        return new TargetRecord(this.name(row), this.present[row], this.ra_deg[row],
+                                this.dec_deg[row], this.epoch[row], this.equinox[row],
+                                this.system(row), this.pm_ra[row], this.pm_dec[row],
+                                this.object_type(row));
+    }
+
+    /* The row as the Resolution from which it was added, although the
+     * message of the exception, if any, is not kept */
+    public Resolution resolution(int row) {
+        switch (this.status(row)) {
+        case FOUND:
+            return new Resolution(this.name(row), this.record(row).info());
+        case NOT_FOUND:
+            return new Resolution(this.name(row), new TargetNotFoundException());
+        default:
+            return new Resolution(this.name(row), new SIMBADQueryException());
+        }
+    }
+
+    private void check(int row) {
+        if (row < 0 || row >= this.rows)
+            throw new IndexOutOfBoundsException("row " + row + ", size " + this.rows);
+    }
+}
@@ -0,0 +1,157 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TargetBatchTest {
+
+    /* Maximum delta between real numbers for which they are considered equal */
+    private static double delta = 0.001;
+
+    /* M101, whose proper motions SIMBAD does not know */
+    private static TargetInformation m101() {
+        TargetInformation info = new TargetInformation("M101");
+        info.ra_deg = 210.80212;
+        info.dec_deg = 54.34808;
+        info.ra = TargetResolver.format_ra(info.ra_deg);
+        info.dec = TargetResolver.format_dec(info.dec_deg);
+        info.epoch = 2012;
+        info.equinox = 2000;
+        info.system = ReferenceSystem.ICRS;
+        info.object_type = "Interacting Galaxies";
+        return info;
+    }
+
+    private static void assertSame(TargetInformation expected, TargetInformation actual) {
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testRecord() {
+        TargetInformation info = m101();
+        TargetRecord record = new TargetRecord(info);
+        assertTrue(record.has(TargetRecord.RA_DEG | TargetRecord.DEC_DEG));
+        assertFalse(record.has(TargetRecord.PM_RA));
+        assertFalse(record.has(TargetRecord.RA_DEG | TargetRecord.PM_DEC));
+        assertTrue(Double.isNaN(record.pm_ra()));
+        assertEquals(2012, record.epoch());
+        assertEquals(info.ra, record.ra());
+        assertEquals(info.dec, record.dec());
+        assertSame(info, record.info());
+
+        /* Zero is a value like any other */
+        info.ra_deg = 0.0;
+        info.ra = TargetResolver.format_ra(0.0);
+        info.epoch = null;
+        record = new TargetRecord(info);
+        assertTrue(record.has(TargetRecord.RA_DEG));
+        assertFalse(record.has(TargetRecord.EPOCH));
+        assertSame(info, record.info());
+        assertNull(record.info().epoch);
+
+        TargetInformation empty = new TargetInformation("3fed6a57652ea9b7");
+        record = new TargetRecord(empty);
+        assertEquals(0, record.mask());
+        assertNull(record.ra());
+        assertSame(empty, record.info());
+    }
+
+    @Test
+    public void testInterned() {
+        TargetInformation first = m101();
+        TargetInformation second = m101();
+        second.object_type = new String(first.object_type);
+        assertTrue(new TargetRecord(first).object_type() == new TargetRecord(second).object_type());
+    }
+
+    @Test
+    public void testBatch() {
+        TargetBatch batch = new TargetBatch(4);
+        List<Resolution> resolutions = new ArrayList<Resolution>();
+        for (int index = 0; index < 1000; index++) {
+            TargetInformation info = m101();
+            info.name = "Galaxy " + index;
+            info.ra_deg = index * 0.3;
+            info.ra = TargetResolver.format_ra(info.ra_deg);
+            info.object_type = (index % 3 == 0) ? "Galaxy" : "Interacting Galaxies";
+            if (index % 7 == 0)
+                info.pm_ra = -index / 10.0;
+            resolutions.add(new Resolution(info.name, info));
+        }
+        resolutions.add(new Resolution("Wolf 3.6e6", new TargetNotFoundException("no such object")));
+        resolutions.add(new Resolution("M52", new SIMBADQueryException()));
+        for (Resolution resolution : resolutions)
+            batch.add(resolution);
+        batch.trim();
+
+        assertEquals(1002, batch.size());
+        assertEquals(2, batch.types());
+        for (int row = 0; row < 1000; row++) {
+            TargetInformation info = resolutions.get(row).info;
+            assertTrue(batch.found(row));
+            assertEquals(info.name, batch.name(row));
+            assertEquals(info.ra_deg, batch.ra_deg(row), delta);
+            assertEquals(info.ra, batch.ra(row));
+            assertEquals(row % 7 == 0, batch.has(row, TargetRecord.PM_RA));
+            assertEquals(ReferenceSystem.ICRS, batch.system(row));
+            assertSame(info, batch.resolution(row).info);
+        }
+
+        assertEquals(TargetBatch.NOT_FOUND, batch.status(1000));
+        assertEquals("Wolf 3.6e6", batch.name(1000));
+        assertTrue(batch.resolution(1000).error instanceof TargetNotFoundException);
+        assertNull(batch.ra(1000));
+        assertNull(batch.object_type(1000));
+        assertEquals(TargetBatch.FAILED, batch.status(1001));
+        assertTrue(batch.resolution(1001).error instanceof SIMBADQueryException);
+
+        try {
+            batch.record(1001);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) { }
+        try {
+            batch.name(1002);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) { }
+    }
+
+    /* Targets can still be added after trimming, even an empty batch */
+    @Test
+    public void testTrim() {
+        TargetBatch batch = new TargetBatch(4);
+        batch.trim();
+        assertEquals(0, batch.size());
+        for (int index = 0; index < 40; index++) {
+            TargetInformation info = m101();
+            info.name = "Galaxy " + index;
+            batch.add(new Resolution(info.name, info));
+            if (index % 10 == 0)
+                batch.trim();
+        }
+        assertEquals(40, batch.size());
+        assertEquals("Galaxy 39", batch.name(39));
+        assertEquals("Galaxy 10", batch.name(10));
+        assertEquals(1, batch.types());
+    }
+}
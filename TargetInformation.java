@@ -37,6 +37,8 @@ public class TargetInformation {
     public Double pm_ra           = null;  /* Proper motion, for right ascension ... */
     public Double pm_dec          = null;  /* and declination */
     public String object_type     = null;  /* The classification of the object */
+    public String main_id         = null;  /* Its main identifier in SIMBAD ... */
+    public String[] identifiers   = null;  /* and all of them (e.g., M 101, NGC 5457) */
 
     /* The name of the target is always known (as that is what we will use as
      * input to SIMBAD!), so it must always be provided to the constructor */
@@ -44,6 +46,24 @@ public class TargetInformation {
         this.name = name;
     }
 
+    /* A copy of another instance, so that the information can be handed out
+     * (for example, by a cache) without anyone else's changes affecting it */
+    public TargetInformation(TargetInformation other) {
+        this.name        = other.name;
+        this.ra_deg      = other.ra_deg;
+        this.dec_deg     = other.dec_deg;
+        this.ra          = other.ra;
+        this.dec         = other.dec;
+        this.epoch       = other.epoch;
+        this.equinox     = other.equinox;
+        this.system      = other.system;
+        this.pm_ra       = other.pm_ra;
+        this.pm_dec      = other.pm_dec;
+        this.object_type = other.object_type;
+        this.main_id     = other.main_id;
+        this.identifiers = (other.identifiers == null) ? null : other.identifiers.clone();
+    }
+
     /* System-independent newline character */
     public static String newline = System.getProperty("line.separator");
 
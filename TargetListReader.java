@@ -0,0 +1,92 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/* Reads a list of targets in the format of SIMBAD_objects (one name per
+ * line; lines whose first non-blank character is '#' are comments) one
+ * line at a time, so that lists of millions of names can be processed
+ * without having to load them into memory first. Blank lines are skipped.
+ * The names are returned as they are, including any surrounding whitespace,
+ * as SIMBAD does not care about it. */
+
+public class TargetListReader implements Iterator<String>, Closeable {
+
+    private final BufferedReader reader;
+    private String next = null;
+    private long nextLine = 0;
+    private long lineNumber = 0;  /* of the line of the last name returned */
+    private long read = 0;        /* lines read so far */
+
+    public TargetListReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    public static TargetListReader open(Path path) throws IOException {
+        return new TargetListReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+    }
+
+    /* IOExceptions are rethrown as UncheckedIOException, as Iterator does
+     * not allow for checked exceptions */
+    public boolean hasNext() {
+        try {
+            while (this.next == null) {
+                String line = this.reader.readLine();
+                if (line == null)
+                    return false;
+                this.read++;
+                String stripped = line.trim();
+                if (!stripped.isEmpty() && !stripped.startsWith("#")) {
+                    this.next = line;
+                    this.nextLine = this.read;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public String next() {
+        if (!this.hasNext())
+            throw new NoSuchElementException();
+        String targetName = this.next;
+        this.next = null;
+        this.lineNumber = this.nextLine;
+        return targetName;
+    }
+
+    /* The number, starting at one, of the line of the file in which the
+     * name last returned by next() was found */
+    public long line() {
+        return this.lineNumber;
+    }
+
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
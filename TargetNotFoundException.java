@@ -23,4 +23,13 @@ public class TargetNotFoundException extends Exception {
     /* Eclipse's "Add general serial version ID" quick fix */
     private static final long serialVersionUID = -7533425965318849397L;
 
+    public TargetNotFoundException() {
+        super();
+    }
+
+    /* The message is the error reported by SIMBAD, if any */
+    public TargetNotFoundException(String message) {
+        super(message);
+    }
+
 }
@@ -0,0 +1,214 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/* A compact, immutable version of TargetInformation, for when many targets
+ * must be kept in memory. TargetInformation boxes every value (so that null
+ * can tell a missing one apart) and stores the coordinates both in degrees
+ * and in sexagesimal, which amounts to about ten objects per target. Here
+ * the values are primitives, which of them are present is recorded in a
+ * bitmask, the sexagesimal coordinates are formatted only when asked for,
+ * and object types, of which there are only a couple hundred in SIMBAD, are
+ * interned, so that each one is stored once, however many targets share it.
+ * The identifiers of the object (see AliasIndex) are not kept.
+ *
+ * For really large numbers of targets, such as the results of a survey, see
+ * TargetBatch, which stores them column by column. */
+
+public final class TargetRecord {
+
+    /* The bits of the mask, one per value that may be missing */
+    public static final int RA_DEG      = 1;
+    public static final int DEC_DEG     = 1 << 1;
+    public static final int EPOCH       = 1 << 2;
+    public static final int EQUINOX     = 1 << 3;
+    public static final int SYSTEM      = 1 << 4;
+    public static final int PM_RA       = 1 << 5;
+    public static final int PM_DEC      = 1 << 6;
+    public static final int OBJECT_TYPE = 1 << 7;
+
+    /* Beyond this many, object types are no longer interned, so that a
+     * rogue input cannot make the table grow without limit */
+    static final int MAX_INTERNED = 4096;
+    private static final ConcurrentHashMap<String, String> types =
+        new ConcurrentHashMap<String, String>();
+
+    private final String name;
+    private final double ra_deg;
+    private final double dec_deg;
+    private final double pm_ra;
+    private final double pm_dec;
+    private final int epoch;
+    private final int equinox;
+    private final ReferenceSystem system;
+    private final String object_type;
+    private final byte present;
+
+    /* Formatted the first time they are needed. Strings are immutable, so
+     * the worst that can happen if two threads race is that both format
+     * the coordinates. */
+    private String ra = null;
+    private String dec = null;
+
+    /* The values that are missing are ignored, whatever they are */
+    public TargetRecord(String name, int present, double ra_deg, double dec_deg,
+                        int epoch, int equinox, ReferenceSystem system,
+                        double pm_ra, double pm_dec, String object_type) {
+        this.name = name;
+        this.present = (byte) present;
+        this.ra_deg = ((present & RA_DEG) != 0) ? ra_deg : Double.NaN;
+        this.dec_deg = ((present & DEC_DEG) != 0) ? dec_deg : Double.NaN;
+        this.epoch = ((present & EPOCH) != 0) ? epoch : 0;
+        this.equinox = ((present & EQUINOX) != 0) ? equinox : 0;
+        this.system = ((present & SYSTEM) != 0) ? system : null;
+        this.pm_ra = ((present & PM_RA) != 0) ? pm_ra : Double.NaN;
+        this.pm_dec = ((present & PM_DEC) != 0) ? pm_dec : Double.NaN;
+        this.object_type = ((present & OBJECT_TYPE) != 0) ? TargetRecord.intern(object_type) : null;
+    }
+
+    /* The sexagesimal coordinates of 'info' are not kept, as they are
+     * formatted again from the decimal degrees when needed */
+    public TargetRecord(TargetInformation info) {
+        this(info.name, TargetRecord.mask(info),
+             TargetRecord.unboxed(info.ra_deg), TargetRecord.unboxed(info.dec_deg),
+             (info.epoch == null) ? 0 : info.epoch,
+             (info.equinox == null) ? 0 : info.equinox, info.system,
+             TargetRecord.unboxed(info.pm_ra), TargetRecord.unboxed(info.pm_dec),
+             info.object_type);
+    }
+
+    /* Which of the values of 'info' are present */
+    public static int mask(TargetInformation info) {
+        int present = 0;
+        if (info.ra_deg != null) present |= RA_DEG;
+        if (info.dec_deg != null) present |= DEC_DEG;
+        if (info.epoch != null) present |= EPOCH;
+        if (info.equinox != null) present |= EQUINOX;
+        if (info.system != null) present |= SYSTEM;
+        if (info.pm_ra != null) present |= PM_RA;
+        if (info.pm_dec != null) present |= PM_DEC;
+        if (info.object_type != null) present |= OBJECT_TYPE;
+        return present;
+    }
+
+    private static double unboxed(Double value) {
+        return (value == null) ? Double.NaN : value;
+    }
+
+    /* The shared instance of the object type, unless there are too many */
+    static String intern(String object_type) {
+        if (object_type == null)
+            return null;
+        String interned = types.get(object_type);
+        if (interned != null)
+            return interned;
+        if (types.size() >= MAX_INTERNED)
+            return object_type;
+        interned = types.putIfAbsent(object_type, object_type);
+        return (interned == null) ? object_type : interned;
+    }
+
+    /* Whether the value or values with the given bits are all present */
+    public boolean has(int bits) {
+        return (this.present & bits) == bits;
+    }
+
+    public int mask() {
+        return this.present & 0xFF;
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    /* NaN if missing */
+    public double ra_deg() {
+        return this.ra_deg;
+    }
+
+    public double dec_deg() {
+        return this.dec_deg;
+    }
+
+    public double pm_ra() {
+        return this.pm_ra;
+    }
+
+    public double pm_dec() {
+        return this.pm_dec;
+    }
+
+    /* Zero if missing: use has() to tell */
+    public int epoch() {
+        return this.epoch;
+    }
+
+    public int equinox() {
+        return this.equinox;
+    }
+
+    /* null if missing */
+    public ReferenceSystem system() {
+        return this.system;
+    }
+
+    public String object_type() {
+        return this.object_type;
+    }
+
+    /* The coordinates in sexagesimal, as in TargetInformation; null if missing */
+    public String ra() {
+        String ra = this.ra;
+        if (ra == null && this.has(RA_DEG))
+            this.ra = ra = SexagesimalFormat.ra(this.ra_deg);
+        return ra;
+    }
+
+    public String dec() {
+        String dec = this.dec;
+        if (dec == null && this.has(DEC_DEG))
+            this.dec = dec = SexagesimalFormat.dec(this.dec_deg);
+        return dec;
+    }
+
+    /* A new TargetInformation with the same values, missing ones as null */
+    public TargetInformation info() {
+        TargetInformation info = new TargetInformation(this.name);
+        if (this.has(RA_DEG)) {
+            info.ra_deg = this.ra_deg;
+            info.ra = this.ra();
+        }
+        if (this.has(DEC_DEG)) {
+            info.dec_deg = this.dec_deg;
+            info.dec = this.dec();
+        }
+        if (this.has(EPOCH)) info.epoch = this.epoch;
+        if (this.has(EQUINOX)) info.equinox = this.equinox;
+        info.system = this.system;
+        if (this.has(PM_RA)) info.pm_ra = this.pm_ra;
+        if (this.has(PM_DEC)) info.pm_dec = this.pm_dec;
+        info.object_type = this.object_type;
+        return info;
+    }
+
+    public String toString() {
+        return this.info().toString();
+    }
+}
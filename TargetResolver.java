@@ -17,16 +17,23 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  **********************************************************************/
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.StringTokenizer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /* The mandatory acknowledgment: the process of writing this class was heavily
  * simplified by the fact that the Jean-Marie Mariotti Center has a Java class
@@ -45,9 +52,18 @@ public class TargetResolver {
      * in seconds. If this time is exceeded the connection will be aborted and
      * the SIMBADQueryException thrown. The SIMBAD database is reliable enough
      * as to be expected to be online at all times, but at the very least this
-     * will prevent our code from hanging up in case network access is lost */
+     * will prevent our code from hanging up in case network access is lost.
+     * This is now the longest timeout: the one actually used is derived from
+     * the latencies of the last queries (see AdaptiveTimeout) */
     public static final long TIMEOUT = 5;
 
+    /* The maximum number of targets sent to SIMBAD in the same script by
+     * submitAll(), and the maximum time to wait, in seconds, for each one of
+     * these scripts to complete. Larger lists are split into several scripts,
+     * so that neither the output nor the wait become arbitrarily long */
+    public static final int BATCH_SIZE = 250;
+    public static final long BATCH_TIMEOUT = 60;
+
 
     /* These are the default values that TargetResolver uses in order to extract
      * the coordinates of an object from the SIMBAD database. In case different
@@ -63,6 +79,77 @@ public class TargetResolver {
     public int epoch;
     public int equinox;
 
+    /* See the Easter egg in submit(String) */
+    private static final String _easterEggTargetName = "Trantor";
+    private static final String _easterEggTargetId = "Sagittarius A*";
+
+    /* The SIMBAD servers to query; if null, only SIMBADQuerier._simbadBaseURL */
+    public SIMBADEndpoints endpoints = SIMBADEndpoints.DEFAULT;
+
+    /* How long to wait for each query, how many times to attempt it if it
+     * fails, and when not to even try, as SIMBAD is down */
+    public AdaptiveTimeout timeouts = AdaptiveTimeout.SIMBAD;
+    public RetryPolicy retries = RetryPolicy.DEFAULT;
+    public CircuitBreaker breaker = CircuitBreaker.SIMBAD;
+
+    /* Whether to ask SIMBAD for the main identifier and all the identifiers
+     * of each object, filling in TargetInformation.main_id and identifiers.
+     * Off by default, as they are many and only AliasTargetResolver, which
+     * sets it on its delegates, needs them. */
+    public boolean identifiers = false;
+
+    /* The queries being resolved at this very moment, by any instance */
+    private static final ConcurrentHashMap<Flight, CompletableFuture<TargetInformation>> inflight =
+            new ConcurrentHashMap<Flight, CompletableFuture<TargetInformation>>();
+
+    /* What makes two lookups the same query: not only the target, reference
+     * system, epoch and equinox (the ResolutionKey), but also whether the
+     * identifiers are asked for, and the endpoints, timeouts, retry policy
+     * and circuit breaker with which it is sent, compared by identity, so
+     * that a resolver with settings of its own never joins the query of one
+     * with different settings. Those that keep the defaults all share them. */
+    private static final class Flight {
+
+        private final ResolutionKey key;
+        private final boolean identifiers;
+        private final SIMBADEndpoints endpoints;
+        private final AdaptiveTimeout timeouts;
+        private final RetryPolicy retries;
+        private final CircuitBreaker breaker;
+
+        Flight(String targetName, TargetResolver resolver) {
+            this.key = new ResolutionKey(targetName, resolver);
+            this.identifiers = resolver.identifiers;
+            this.endpoints = resolver.endpoints;
+            this.timeouts = resolver.timeouts;
+            this.retries = resolver.retries;
+            this.breaker = resolver.breaker;
+        }
+
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof Flight))
+                return false;
+            Flight flight = (Flight) other;
+            return this.key.equals(flight.key) &&
+                   this.identifiers == flight.identifiers &&
+                   this.endpoints == flight.endpoints &&
+                   this.timeouts == flight.timeouts &&
+                   this.retries == flight.retries &&
+                   this.breaker == flight.breaker;
+        }
+
+        public int hashCode() {
+            int hash = this.key.hashCode();
+            hash = 31 * hash + (this.identifiers ? 1 : 0);
+            hash = 31 * hash + System.identityHashCode(this.endpoints);
+            hash = 31 * hash + System.identityHashCode(this.timeouts);
+            hash = 31 * hash + System.identityHashCode(this.retries);
+            return 31 * hash + System.identityHashCode(this.breaker);
+        }
+    }
+
     public TargetResolver() {
         this.system  = DEFAULT_SYSTEM;
         this.epoch   = DEFAULT_EPOCH;
@@ -86,6 +173,18 @@ public class TargetResolver {
 
     public TargetInformation submit (String targetName)
             throws SIMBADQueryException, TargetNotFoundException {
+        return TargetResolver.await(this.submitAsync(targetName));
+    }
+
+
+    /* The non-blocking version of submit(String): the query is sent to SIMBAD
+     * and a future returned immediately, which will be completed with the
+     * TargetInformation once the output is received and parsed, or completed
+     * exceptionally with SIMBADQueryException or TargetNotFoundException.
+     * The queries share the same HTTP client and pool of threads, so there
+     * can be hundreds of them in flight at the same time. */
+
+    public CompletableFuture<TargetInformation> submitAsync(String targetName) {
 
         /* What follows is an Easter egg, as understood by an admirer of Isaac
          * Asimov: if asked to resolve the target "Trantor", the resolved
@@ -94,125 +193,364 @@ public class TargetResolver {
          * In case you do not fully understand this hidden message, I humbly
          * urge you to read Asimov's "Foundation" (1951) */
 
-        final String _easterEggTargetName = "Trantor";
-        if (targetName != null &&
-                targetName.toLowerCase().equals(_easterEggTargetName.toLowerCase())) {
-            TargetInformation easterInfo = new TargetResolver().submit("Sagittarius A*");
-            easterInfo.name = _easterEggTargetName;
-            easterInfo.object_type = "Capital of the Galactic Empire";
-            return easterInfo;
+        if (TargetResolver.is_easter_egg(targetName)) {
+            TargetResolver resolver = new TargetResolver();
+            resolver.endpoints = this.endpoints;
+            resolver.timeouts = this.timeouts;
+            resolver.retries = this.retries;
+            resolver.breaker = this.breaker;
+            return resolver.submitAsync(_easterEggTargetId)
+                    .thenApply(easterInfo -> TargetResolver.easter_egg(easterInfo));
+        }
+
+
+        /* If the same target (in the same reference system, epoch and
+         * equinox, and with the same settings: see Flight) is already being
+         * resolved, by this or any other instance, there is no need to ask
+         * SIMBAD again: just wait for that query to complete and share its
+         * outcome. Each caller gets a copy of the information, though, under
+         * the name that it asked for. */
+
+        final Flight key = new Flight(targetName, this);
+        final CompletableFuture<TargetInformation> query = new CompletableFuture<TargetInformation>();
+        final ConcurrentHashMap<Flight, CompletableFuture<TargetInformation>> queries = TargetResolver.inflight;
+        CompletableFuture<TargetInformation> inflight = queries.putIfAbsent(key, query);
+
+        if (inflight == null) {
+            inflight = query;
+
+            /* If the query cannot even be sent, the entry must be removed all
+             * the same, or every later lookup of the target would wait on it */
+            CompletableFuture<TargetInformation> lookup;
+            try {
+                lookup = this.query(targetName);
+            } catch (RuntimeException ex) {
+                lookup = CompletableFuture.failedFuture(ex);
+            }
+            lookup.whenComplete((info, ex) -> {
+                /* Queries for the target from now on must go to SIMBAD again */
+                queries.remove(key, query);
+                if (ex != null)
+                    query.completeExceptionally(TargetResolver.unwrap(ex));
+                else
+                    query.complete(info);
+            });
         }
 
+        final long start = System.nanoTime();
+        CompletableFuture<TargetInformation> resolution = inflight.thenApply(info -> {
+            TargetInformation copy = new TargetInformation(info);
+            copy.name = targetName;
+            return copy;
+        });
+
+        /* Also if the caller cancels it, which does not affect the query */
+        resolution.whenComplete((info, ex) -> {
+            ResolverMetrics.METRICS.outcome(ex);
+            if (ex == null)
+                ResolverMetrics.METRICS.total.record_since(start);
+        });
+        return resolution;
+    }
+
 
-        /* Run our query to SIMBAD in a thread and retrieve the result. But do
-         * not wait endlessly for the query to complete; after TIMEOUT seconds,
-         * we give up and the wait times out. */
+    /* Submits the query for the target to SIMBAD and parses its output */
 
-        Callable<String> querier =
+    private CompletableFuture<TargetInformation> query(final String targetName) {
+
+        /* Do not wait endlessly for the query to complete; after the
+         * timeout, we give up and the future completes exceptionally. */
+
+        final SIMBADQuerier querier =
                 new SIMBADQuerier(targetName, this.system, this.epoch, this.equinox);
+        querier.endpoints = this.endpoints;
+        querier.identifiers = this.identifiers;
+
+        return this.resilient(timeout -> querier.query_SIMBAD_async(targetName, timeout), true)
+                .thenApply(simbadResult -> {
+
+            /* There possibly are many things that could go wrong (I have been
+             * unable to find a list with all the error codes on the SIMBAD
+             * website) but, since the syntax of the script submitted to the
+             * database has been thoroughly tested and is known to be correct,
+             * we can safely assume that errors will only (most of the time, at
+             * least) happen when the object cannot be found. That is why we return
+             * a TargetNotFoundException: although a different error could have
+             * occurred, for our purposes in the PANIC Observation Tool it is
+             * equivalent to the object not being found. */
+
+            if (SIMBADOutputParser.is_error(simbadResult))
+                throw new CompletionException(new TargetNotFoundException());
+
+            long start = System.nanoTime();
+            TargetInformation info = this.parse(targetName, simbadResult, 0);
+            ResolverMetrics.METRICS.parse.record_since(start);
+            return info;
+        });
+    }
 
-        ExecutorService threadExecutor = Executors.newSingleThreadExecutor();
-        Future<String> threadResult = threadExecutor.submit(querier);
-        threadExecutor.shutdown();
 
-        String simbadResult;
+    /* Sends a query to SIMBAD, through the circuit breaker, attempting it
+     * again, after a jittered delay, as many times as the retry policy says
+     * if it fails. 'query' sends it with the given timeout: the adaptive one
+     * for single targets, whose latencies are then recorded, or BATCH_TIMEOUT
+     * for batches, which take much longer. */
+
+    private CompletableFuture<byte[]> resilient(
+            Function<Duration, CompletableFuture<byte[]>> query, boolean single) {
+        CompletableFuture<byte[]> output = new CompletableFuture<byte[]>();
+        this.attempt(query, single, 0, output);
+        return output;
+    }
 
+    private void attempt(final Function<Duration, CompletableFuture<byte[]>> query,
+                         final boolean single, final int attempt,
+                         final CompletableFuture<byte[]> output) {
+
+        if (output.isDone())  /* e.g., cancelled while waiting to retry */
+            return;
+        if (!this.breaker.allow()) {
+            ResolverMetrics.METRICS.rejections.incrementAndGet();
+            output.completeExceptionally(new SIMBADQueryException("SIMBAD is down: " + this.breaker));
+            return;
+        }
+
+        final Duration timeout = single ? this.timeouts.timeout()
+                                        : Duration.ofSeconds(TargetResolver.BATCH_TIMEOUT);
+        final long start = System.nanoTime();
+        /* A query that throws (e.g., a malformed simbad.url) fails like any
+         * other: the breaker must hear about it, or its probe would never be
+         * answered, and 'output' must complete, also when retrying */
+        CompletableFuture<byte[]> response;
         try {
-            simbadResult = threadResult.get(TargetResolver.TIMEOUT, TimeUnit.SECONDS);
+            response = query.apply(timeout);
+        } catch (RuntimeException ex) {
+            response = CompletableFuture.failedFuture(ex);
+        }
+        response.whenComplete((simbadResult, ex) -> {
+            if (ex == null) {
+                this.breaker.success();
+                if (single)
+                    this.timeouts.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                output.complete(simbadResult);
+            } else {
+                if (single && ResolverMetrics.is_timeout(ex))
+                    this.timeouts.timed_out(timeout);
+                this.breaker.failure();
+                if (attempt + 1 < this.retries.max_attempts) {
+                    ResolverMetrics.METRICS.retries.incrementAndGet();
+                    CompletableFuture.delayedExecutor(this.retries.delay(attempt), TimeUnit.MILLISECONDS,
+                                                      HttpTransport.EXECUTOR)
+                            .execute(() -> this.attempt(query, single, attempt + 1, output));
+                } else {
+                    output.completeExceptionally(TargetResolver.unwrap(ex));
+                }
+            }
+        });
+    }
+
+
+    /* Waits for the future returned by submitAsync(String) and returns its
+     * value, rethrowing the exception with which it failed, if any */
+
+    public static TargetInformation await(Future<TargetInformation> future)
+            throws SIMBADQueryException, TargetNotFoundException {
+        try {
+            return future.get();
         } catch (InterruptedException ex) {
+            future.cancel(true);
             throw new SIMBADQueryException();
         } catch (ExecutionException ex) {
-            throw new SIMBADQueryException();
-        } catch (TimeoutException ex) {
-            threadResult.cancel(true);
-            throw new SIMBADQueryException();
+            Exception cause = TargetResolver.unwrap(ex);
+            if (cause instanceof TargetNotFoundException)
+                throw (TargetNotFoundException) cause;
+            throw (SIMBADQueryException) cause;
         }
+    }
 
+    /* The exception with which an asynchronous resolution failed, once
+     * unwrapped: either TargetNotFoundException or SIMBADQueryException */
+    public static Exception unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException)
+                && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        if (ex instanceof TargetNotFoundException || ex instanceof SIMBADQueryException)
+            return (Exception) ex;
+        return new SIMBADQueryException();
+    }
 
-        /* There possibly are many things that could go wrong (I have been
-         * unable to find a list with all the error codes on the SIMBAD
-         * website) but, since the syntax of the script submitted to the
-         * database has been thoroughly tested and is known to be correct,
-         * we can safely assume that errors will only (most of the time, at
-         * least) happen when the object cannot be found. That is why we return
-         * a TargetNotFoundException: although a different error could have
-         * occurred, for our purposes in the PANIC Observation Tool it is
-         * equivalent to the object not being found. */
 
-        if (simbadResult.startsWith(TargetResolver._simbadErrorStart))
-            throw new TargetNotFoundException();
+    /* Encapsulates the output of SIMBAD for an object that was found, whose
+     * data items start at 'offset', as a TargetInformation instance, using
+     * the reference system, epoch and equinox of the resolver, as these are
+     * the ones used in the query. The data items that SIMBAD does not know
+     * (for which it returns "~") are left as null. Package-private, so that
+     * the benchmarks can measure it without going through the network. */
+
+    TargetInformation parse(String targetName, byte[] simbadResult, int offset) {
 
         final TargetInformation info = new TargetInformation(targetName);
         info.epoch   = this.epoch;
         info.equinox = this.equinox;
         info.system  = this.system;
 
-        /* Parse the output of SIMBAD, line by line */
-        StringTokenizer lineTokenizer = new StringTokenizer(simbadResult, "\n");
+        SIMBADOutputParser.parse_object(simbadResult, offset, info);
+        info.ra = TargetResolver.format_ra(info.ra_deg);
+        info.dec = TargetResolver.format_dec(info.dec_deg);
+        return info;
+    }
 
-        /* For what so far I have seen, SIMBAD seems to always return "~" when
-         * a data item is not known. That is why we need to catch the exceptions
-         * that may be thrown if a conversion to Double fails and do nothing,
-         * so that the missing attributes of the class keep being null */
 
-        try {
-            /* First line of the output: right ascension, in decimal degrees */
-            info.ra_deg = Double.parseDouble(lineTokenizer.nextToken());
-        } catch (NumberFormatException ex) {}
+    /* Convert the decimal degrees of the right ascension to hours, minutes
+     * and seconds, and format them as a string such as "21 38 08.74. Yes,
+     * we could obtain the coordinates in sexagesimal directly from SIMBAD,
+     * but doing the conversion ourselves gives us total control over how
+     * these coordinates are formatted " */
+
+    public static String format_ra(Double ra_deg) {
+        return (ra_deg == null) ? null : SexagesimalFormat.ra(ra_deg);
+    }
+
+    /* Decimal degrees of the declination to degrees, arcminutes and
+     * arcseconds, and format them as a string such as "+63 45 22.3 " */
+
+    public static String format_dec(Double dec_deg) {
+        return (dec_deg == null) ? null : SexagesimalFormat.dec(dec_deg);
+    }
+
+
+    private static boolean is_easter_egg(String targetName) {
+        return targetName != null &&
+               targetName.toLowerCase().equals(_easterEggTargetName.toLowerCase());
+    }
+
+    private static TargetInformation easter_egg(TargetInformation easterInfo) {
+        easterInfo.name = _easterEggTargetName;
+        easterInfo.object_type = "Capital of the Galactic Empire";
+        easterInfo.main_id = null;  /* not one of the identifiers of Sgr A* */
+        easterInfo.identifiers = null;
+        return easterInfo;
+    }
 
-        /* Convert the decimal degrees of the right ascension to hours, minutes
-         * and seconds, and format them as a string such as "21 38 08.74. Yes,
-         * we could obtain the coordinates in sexagesimal directly from SIMBAD,
-         * but doing the conversion ourselves gives us total control over how
-         * these coordinates are formatted " */
 
-        double coords[] = null;
-        if (info.ra_deg == null) {
-            info.ra = null;
+    /* Resolves several targets at once: instead of one query per object, a
+     * single SIMBAD script with a 'query id' line for each one of them (up to
+     * BATCH_SIZE; longer lists are split into several scripts) is submitted.
+     * The output is then split back into one Resolution per target, in the
+     * same order in which they were received, with either the corresponding
+     * TargetInformation or the exception that submit(String) would have
+     * thrown for it: TargetNotFoundException, with the error reported by
+     * SIMBAD as message, if the object could not be found, and
+     * SIMBADQueryException if the connection to SIMBAD failed. Duplicate
+     * names are resolved only once, but reported as many times as given. */
+
+    public List<Resolution> submitAll(Collection<String> targetNames) {
+
+        /* The distinct names that must be sent to SIMBAD, in order */
+        LinkedHashSet<String> pending = new LinkedHashSet<String>();
+        for (String targetName : targetNames) {
+            if (TargetResolver.is_valid_identifier(targetName))
+                pending.add(targetName);
         }
 
-        else {
-            coords = SIMBADQuerier.DD_to_HMS(info.ra_deg);
-            int hours = (int) coords[0];
-            int minutes = (int) coords[1];
-            double seconds = coords[2];
-            info.ra = String.format("%02d %02d %05.2f", hours, minutes, seconds);
+        Map<String, Resolution> resolutions = new HashMap<String, Resolution>();
+        List<String> chunk = new ArrayList<String>(BATCH_SIZE);
+        Iterator<String> it = pending.iterator();
+        while (it.hasNext()) {
+            chunk.add(it.next());
+            if (chunk.size() == BATCH_SIZE || !it.hasNext()) {
+                this.submit_chunk(chunk, resolutions);
+                chunk.clear();
+            }
         }
 
-        try {
-            /* Second line: declination, in decimal degrees */
-            info.dec_deg = Double.parseDouble(lineTokenizer.nextToken());
-        } catch (NumberFormatException ex) {}
+        List<Resolution> results = new ArrayList<Resolution>(targetNames.size());
+        for (String targetName : targetNames) {
+            Resolution resolution = resolutions.get(targetName);
+            if (resolution == null) /* e.g., null or empty identifier */
+                resolution = new Resolution(targetName, new TargetNotFoundException());
+            ResolverMetrics.METRICS.outcome(resolution.error);
+            results.add(resolution);
+        }
+        return results;
+    }
+
+    /* Identifiers that cannot be part of a SIMBAD script: as each query goes
+     * in a line of its own, these would break the rest of the script. Empty
+     * identifiers would not be found anyway, so there is no need to ask. */
+    private static boolean is_valid_identifier(String targetName) {
+        return targetName != null && targetName.trim().length() > 0 &&
+               targetName.indexOf('\n') == -1 && targetName.indexOf('\r') == -1;
+    }
 
-        /* Decimal degrees of the declination to degrees, arcminutes and
-         * arcseconds, and format them as a string such as "+63 45 22.3 " */
+    /* Resolves, with a single SIMBAD script, the targets in 'chunk', adding
+     * to 'resolutions' the outcome for each one of them */
 
-        if (info.dec_deg == null) {
-            info.dec = null;
-        }
+    private void submit_chunk(List<String> chunk, Map<String, Resolution> resolutions) {
 
-        else {
-            coords = SIMBADQuerier.DD_to_DMS(info.dec_deg);
-            int degrees = (int) coords[0];
-            int arcmins = (int) coords[1];
-            double arcsecs = coords[2];
-            info.dec = String.format("%+03d %02d %4.1f", degrees, arcmins, arcsecs);
+        /* The identifiers actually queried, where our Easter egg is replaced
+         * with the name of the object whose coordinates it borrows */
+        final List<String> identifiers = new ArrayList<String>(chunk.size());
+        for (String targetName : chunk) {
+            identifiers.add(TargetResolver.is_easter_egg(targetName) ? _easterEggTargetId : targetName);
         }
 
-        /* Third line: classification of the object */
-        info.object_type = lineTokenizer.nextToken();
+        final SIMBADQuerier querier =
+                new SIMBADQuerier(null, this.system, this.epoch, this.equinox);
+        querier.endpoints = this.endpoints;
+        querier.identifiers = this.identifiers;
 
+        byte[] simbadResult = null;
+        SIMBADQueryException failure = null;
         try {
-            /* Fourth line: proper motion on the right ascension axis */
-            info.pm_ra = Double.parseDouble(lineTokenizer.nextToken());
-        } catch (NumberFormatException ex) {}
+            simbadResult = SIMBADQuerier.await(this.resilient(
+                    timeout -> querier.query_SIMBAD_async(identifiers, timeout), false));
+        } catch (SIMBADQueryException ex) {
+            failure = ex;
+        }
 
-        try {
-            /* Fifth line: proper motion on the declination axis */
-            info.pm_dec = Double.parseDouble(lineTokenizer.nextToken());
-        } catch (NumberFormatException ex) {}
+        if (simbadResult == null) {
+            for (String targetName : chunk) {
+                resolutions.put(targetName, new Resolution(targetName, failure));
+            }
+            return;
+        }
 
-        return info;
+        /* Errors are reported as "[line] message", where line is that of the
+         * script in which the 'query id' for the target was found, and listed
+         * before the data items of the objects, each one of them preceded by
+         * the _batchObjectStart marker line. */
+
+        SIMBADOutputParser.Batch batch = SIMBADOutputParser.split_batch(simbadResult);
+
+        /* If the number of objects does not match that of the queries without
+         * errors, something unexpected happened, so we cannot know for sure
+         * which target each object belongs to. Better safe than sorry. */
+
+        if (batch.objects.size() + batch.errors.size() != chunk.size()) {
+            for (String targetName : chunk) {
+                resolutions.put(targetName, new Resolution(targetName, new SIMBADQueryException()));
+            }
+            return;
+        }
+
+        Iterator<Integer> objectIt = batch.objects.iterator();
+        for (int index = 0; index < chunk.size(); index++) {
+            String targetName = chunk.get(index);
+            String error = batch.errors.get(SIMBADQuerier._batchFirstQueryLine + index);
+            if (error != null) {
+                resolutions.put(targetName, new Resolution(targetName, new TargetNotFoundException(error)));
+                continue;
+            }
+
+            long start = System.nanoTime();
+            TargetInformation info = this.parse(targetName, simbadResult, objectIt.next());
+            ResolverMetrics.METRICS.parse.record_since(start);
+            if (TargetResolver.is_easter_egg(targetName))
+                info = TargetResolver.easter_egg(info);
+            resolutions.put(targetName, new Resolution(targetName, info));
+        }
     }
 
 
@@ -233,6 +571,8 @@ public class TargetResolver {
             System.out.println("not found!");
         } catch (SIMBADQueryException e) {
             System.out.println("connection failed");
+            /* How long it took and whether it was a timeout, at least */
+            System.out.println(ResolverMetrics.METRICS);
         }
 
         System.exit(0);
@@ -0,0 +1,109 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/* A TargetResolver that may be able to answer some of the queries on its own
+ * (for example, from a cache) and passes the rest on to another resolver,
+ * being told of the outcome so that it can be remembered for the next time.
+ * The reference system, epoch and equinox are those of the other resolver, as
+ * it is the one that actually submits the queries. */
+
+public abstract class TargetResolverDecorator extends TargetResolver {
+
+    public final TargetResolver delegate;
+
+    protected TargetResolverDecorator(TargetResolver delegate) {
+        super(delegate.system, delegate.epoch, delegate.equinox);
+        this.delegate = delegate;
+    }
+
+    /* Returns the outcome for the target if it is known locally, or null if
+     * the query must be passed on to the delegate. The TargetInformation, if
+     * any, must be one that the caller is free to modify. */
+    protected abstract Resolution lookup(String targetName);
+
+    /* Called with the outcome of every query passed on to the delegate */
+    protected abstract void record(Resolution resolution);
+
+    /* Returns what to use instead if the delegate could not connect to
+     * SIMBAD (e.g., outdated information), or null to report the failure */
+    protected Resolution fallback(String targetName) {
+        return null;
+    }
+
+    public CompletableFuture<TargetInformation> submitAsync(final String targetName) {
+
+        Resolution known = this.lookup(targetName);
+        if (known != null) {
+            if (known.found())
+                return CompletableFuture.completedFuture(known.info);
+            return CompletableFuture.failedFuture(known.error);
+        }
+
+        return this.delegate.submitAsync(targetName).handle((info, ex) -> {
+            if (ex == null) {
+                this.record(new Resolution(targetName, info));
+                return CompletableFuture.completedFuture(info);
+            }
+            Exception error = TargetResolver.unwrap(ex);
+            this.record(new Resolution(targetName, error));
+            Resolution fallback = (error instanceof SIMBADQueryException) ? this.fallback(targetName) : null;
+            if (fallback != null)
+                return fallback.found() ? CompletableFuture.completedFuture(fallback.info)
+                                        : CompletableFuture.<TargetInformation>failedFuture(fallback.error);
+            return CompletableFuture.<TargetInformation>failedFuture(error);
+        }).thenCompose(future -> future);
+    }
+
+    /* Only the targets that are not known locally are passed on */
+    public List<Resolution> submitAll(Collection<String> targetNames) {
+
+        List<Resolution> results = new ArrayList<Resolution>(targetNames.size());
+        List<String> missing = new ArrayList<String>();
+        for (String targetName : targetNames) {
+            Resolution known = this.lookup(targetName);
+            if (known == null)
+                missing.add(targetName);
+            results.add(known);  /* those still null are filled in below */
+        }
+
+        if (missing.isEmpty())
+            return results;
+
+        List<Resolution> resolved = this.delegate.submitAll(missing);
+        int next = 0;
+        for (int index = 0; index < results.size(); index++) {
+            if (results.get(index) == null) {
+                Resolution resolution = resolved.get(next++);
+                this.record(resolution);
+                if (resolution.error instanceof SIMBADQueryException) {
+                    Resolution fallback = this.fallback(resolution.name);
+                    if (fallback != null)
+                        resolution = fallback;
+                }
+                results.set(index, resolution);
+            }
+        }
+        return results;
+    }
+}
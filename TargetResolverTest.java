@@ -26,7 +26,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 
 public class TargetResolverTest {
@@ -46,6 +48,9 @@ public class TargetResolverTest {
     /* Maximum delta between real numbers for which they are considered equal */
     private static double delta = 0.001;
 
+    /* Only if the tests are run against it; see SetUp() */
+    private static SIMBADStandIn standIn;
+
 
     /* Receives the path to the file containing the list of targets, one per
      * line, and returns them as an ArrayList of Strings. Lines whose first
@@ -88,10 +93,18 @@ public class TargetResolverTest {
      * For each object, a different instance of TargetResolver is used: the
      * celestial reference frame is randomly selected from those that SIMBAD
      * allows, namely ICRS, FK5, FK4, GAL, SGAL and ECL. For the epoch and
-     * equinox, a random year between zero and the current one is used. */
+     * equinox, a random year between zero and the current one is used.
+     *
+     * With -Dsimbad.standin=true, the queries go to a SIMBADStandIn instead
+     * of the real SIMBAD, so that the tests can be run offline. */
 
     @org.junit.BeforeClass
     public static void SetUp() throws FileNotFoundException, IOException {
+        if (Boolean.getBoolean("simbad.standin")) {
+            standIn = new SIMBADStandIn(SIMBADStandIn.fixtures()).start();
+            SIMBADQuerier._simbadBaseURL = standIn.url();
+        }
+
         TargetResolverTest.targetNames = TargetResolverTest.loadTargetsFile(OBJECTS_PATH);
         targetNames.add("Trantor"); /* easter egg in TargetResolver.submit(String) */
         targetNames.add(null);
@@ -113,6 +126,12 @@ public class TargetResolverTest {
         assert (targetNames.size() == targetResolvers.size());
     }
 
+    @org.junit.AfterClass
+    public static void TearDown() {
+        if (standIn != null)
+            standIn.stop();
+    }
+
 
     /* Make sure that, right after invoking the constructor, all the attributes
      * of the instance, expect for the name of the target, are null */
@@ -285,4 +304,73 @@ public class TargetResolverTest {
         assertEquals(-3842, info.pm_ra, delta);
         assertEquals(-2725, info.pm_dec, delta);
     }
-}
\ No newline at end of file
+
+    /* Resolving several targets at once must return exactly the same values
+     * as resolving them one by one, in the same order in which they were
+     * given, and report those that do not exist as not found */
+
+    @Test
+    public void testSubmitAll() throws SIMBADQueryException,
+                                       TargetNotFoundException {
+
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        ArrayList<String> names = new ArrayList<String>();
+        names.add("M52");
+        names.add(randomString());
+        names.add("Trantor");
+        names.add(null);
+        names.add("Wolf 359");
+        names.add("M52");
+
+        List<Resolution> results = resolver.submitAll(names);
+        assertEquals(names.size(), results.size());
+        for (int index = 0 ; index < names.size() ; index++)
+            assertEquals(names.get(index), results.get(index).name);
+
+        assertTrue(results.get(1).error instanceof TargetNotFoundException);
+        assertTrue(results.get(3).error instanceof TargetNotFoundException);
+        assertEquals("Capital of the Galactic Empire", results.get(2).info.object_type);
+
+        TargetInformation info = results.get(0).info;
+        assertEquals(351.2, info.ra_deg, delta);
+        assertEquals(61.593, info.dec_deg, delta);
+        assertEquals("23 24 48.00", info.ra);
+        assertEquals("+61 35 34.8", info.dec);
+        assertEquals(info.ra_deg, results.get(5).info.ra_deg, delta);
+
+        TargetInformation single = resolver.submit("Wolf 359");
+        info = results.get(4).info;
+        assertEquals(single.ra_deg, info.ra_deg, delta);
+        assertEquals(single.dec_deg, info.dec_deg, delta);
+        assertEquals(single.object_type, info.object_type);
+        assertEquals(single.pm_ra, info.pm_ra, delta);
+        assertEquals(single.pm_dec, info.pm_dec, delta);
+    }
+
+    /* Many queries in flight at the same time, all of them on the shared
+     * client, must return the same values as if submitted one by one */
+
+    @Test
+    public void testSubmitAsync() throws SIMBADQueryException,
+                                         TargetNotFoundException {
+
+        TargetResolver resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        ArrayList<CompletableFuture<TargetInformation>> futures =
+                new ArrayList<CompletableFuture<TargetInformation>>();
+        for (int index = 0 ; index < 50 ; index++)
+            futures.add(resolver.submitAsync(index % 2 == 0 ? "Betelgeuse" : randomString()));
+
+        for (int index = 0 ; index < futures.size() ; index++) {
+            if (index % 2 == 0) {
+                TargetInformation info = TargetResolver.await(futures.get(index));
+                assertEquals(88.792939, info.ra_deg, delta);
+                assertEquals("+07 24 25.4", info.dec);
+            } else {
+                try {
+                    TargetResolver.await(futures.get(index));
+                    fail("random string resolved");
+                } catch (TargetNotFoundException e) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/* Screens a whole catalog of targets for a night, instead of looking at their
+ * Staralt plots one by one: a target is observable at a point of the grid of
+ * the Ephemeris if the Sun is below the twilight, the target is above the
+ * minimum altitude and, if the Moon is up, at least 'moon_distance' degrees
+ * away from it. The points at which a target is observable make its windows
+ * of visibility, and the targets are ranked by how long they are observable,
+ * and then by how high they get in the meantime.
+ *
+ * Everything that does not depend on the target (where the Sun and the Moon
+ * are, which points of the grid are dark) is computed once, when the filter
+ * is created. For each target only the dark points are evaluated, and with
+ * the sine of the altitude, compared to that of the limit, so that no arc
+ * sine is needed but for the highest point. rank() splits the catalog in the
+ * common fork-join pool: each half is ranked separately and the two lists
+ * are then merged, recursively, as in a merge sort. */
+
+public class VisibilityFilter {
+
+    /* The altitude of the Sun, in degrees, below which it is dark enough */
+    public enum Twilight {
+
+        CIVIL(-6.0), NAUTICAL(-12.0), ASTRONOMICAL(-18.0);
+
+        public final double altitude;
+
+        Twilight(double altitude) {
+            this.altitude = altitude;
+        }
+    }
+
+    /* Staralt's default is ten degrees, which is for most instruments too low
+     * to be useful: thirty degrees is an airmass of two */
+    public static final double DEFAULT_ALTITUDE = 30.0;
+    public static final double DEFAULT_MOON_DISTANCE = 30.0;
+
+    /* Fewer targets than this are ranked without splitting them any further */
+    private static final int THRESHOLD = 64;
+
+    public final Ephemeris night;
+    public final Twilight twilight;
+    public double min_altitude = DEFAULT_ALTITUDE;     /* degrees */
+    public double moon_distance = DEFAULT_MOON_DISTANCE;  /* degrees */
+    public Duration min_duration = Duration.ZERO;  /* rank() leaves out those shorter */
+
+    /* The points of the grid at which the Sun is below the twilight, and the
+     * sine and cosine of the local sidereal time at each of them */
+    private final int[] dark;
+    private final double[] sin_lst;
+    private final double[] cos_lst;
+
+    /* Whether the Moon is up at each dark point and, if so, where, as a unit vector */
+    private final boolean[] moon_up;
+    private final double[] moon_x;
+    private final double[] moon_y;
+    private final double[] moon_z;
+
+    private final double sin_latitude;
+    private final double cos_latitude;
+    private final double illumination;
+
+    /* When a target can be observed, from the first to the last point of the
+     * grid, both included */
+    public static class Window {
+
+        public final Instant start;
+        public final Instant end;
+
+        Window(Instant start, Instant end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public Duration duration() {
+            return Duration.between(this.start, this.end);
+        }
+
+        public String toString() {
+            return this.start + "/" + this.end;
+        }
+    }
+
+    /* How well a target can be observed during the night. Instances are
+     * ordered from best to worst. */
+    public static class Visibility implements Comparable<Visibility> {
+
+        public final TargetInformation info;
+        public final Duration duration;    /* zero if never observable */
+        public final double max_altitude;  /* while observable; NaN if never */
+        public final Instant best;         /* when it is highest; null if never */
+        public final List<Window> windows;
+
+        Visibility(TargetInformation info, Duration duration, double max_altitude,
+                   Instant best, List<Window> windows) {
+            this.info = info;
+            this.duration = duration;
+            this.max_altitude = max_altitude;
+            this.best = best;
+            this.windows = windows;
+        }
+
+        public boolean observable() {
+            return !this.windows.isEmpty();
+        }
+
+        public int compareTo(Visibility other) {
+            int order = other.duration.compareTo(this.duration);
+            if (order != 0)
+                return order;
+            /* NaN, never observable, is greater than any altitude */
+            return Double.compare(VisibilityFilter.nan_last(other.max_altitude),
+                                  VisibilityFilter.nan_last(this.max_altitude));
+        }
+
+        public String toString() {
+            return String.format("%s: %d min, up to %.1f deg at %s", this.info.name,
+                                 this.duration.toMinutes(), this.max_altitude, this.best);
+        }
+    }
+
+    public VisibilityFilter(Ephemeris night, Twilight twilight) {
+
+        this.night = night;
+        this.twilight = twilight;
+        double latitude = Math.toRadians(night.site.latitude);
+        this.sin_latitude = Math.sin(latitude);
+        this.cos_latitude = Math.cos(latitude);
+
+        int[] dark = new int[night.size()];
+        int count = 0;
+        for (int index = 0; index < night.size(); index++) {
+            double[] sun = Ephemeris.sun(night.millis(index));
+            if (night.altitude(sun, index) < twilight.altitude)
+                dark[count++] = index;
+        }
+        this.dark = Arrays.copyOf(dark, count);
+
+        this.sin_lst = new double[count];
+        this.cos_lst = new double[count];
+        this.moon_up = new boolean[count];
+        this.moon_x = new double[count];
+        this.moon_y = new double[count];
+        this.moon_z = new double[count];
+        for (int point = 0; point < count; point++) {
+            int index = this.dark[point];
+            double lst = night.lst(index) * Math.PI / 12.0;
+            this.sin_lst[point] = Math.sin(lst);
+            this.cos_lst[point] = Math.cos(lst);
+
+            double[] moon = Ephemeris.moon(night.millis(index));
+            double altitude = night.altitude(moon, index);
+            if (altitude - moon[2] * Math.cos(Math.toRadians(altitude)) > 0) {
+                double[] v = CoordinateConverter.vector(moon[0], moon[1]);
+                this.moon_up[point] = true;
+                this.moon_x[point] = v[0];
+                this.moon_y[point] = v[1];
+                this.moon_z[point] = v[2];
+            }
+        }
+
+        /* Half of one minus the cosine of the elongation, in the middle of the grid */
+        long middle = night.millis(night.size() / 2);
+        double[] sun = CoordinateConverter.vector(Ephemeris.sun(middle)[0], Ephemeris.sun(middle)[1]);
+        double[] moon = CoordinateConverter.vector(Ephemeris.moon(middle)[0], Ephemeris.moon(middle)[1]);
+        this.illumination = (1.0 - (sun[0] * moon[0] + sun[1] * moon[1] + sun[2] * moon[2])) / 2.0;
+    }
+
+    public VisibilityFilter(Ephemeris night) {
+        this(night, Twilight.ASTRONOMICAL);
+    }
+
+    /* The fraction of the Moon that is illuminated, from zero (new) to one (full) */
+    public double illumination() {
+        return this.illumination;
+    }
+
+    /* How long it is dark, i.e. the Sun below the twilight */
+    public Duration darkness() {
+        return this.night.step.multipliedBy(this.dark.length);
+    }
+
+    /* The visibility of a single target. Those without coordinates are
+     * never observable. */
+    public Visibility compute(TargetInformation info) {
+
+        double[] position = this.night.of_date(info);
+        if (position == null)
+            return new Visibility(info, Duration.ZERO, Double.NaN, null, Collections.<Window>emptyList());
+
+        double ra = Math.toRadians(position[0]);
+        double dec = Math.toRadians(position[1]);
+        double sin_ra = Math.sin(ra);
+        double cos_ra = Math.cos(ra);
+        double a = this.sin_latitude * Math.sin(dec);
+        double b = this.cos_latitude * Math.cos(dec);
+        double x = Math.cos(dec) * cos_ra;
+        double y = Math.cos(dec) * sin_ra;
+        double z = Math.sin(dec);
+        double limit = Math.sin(Math.toRadians(this.min_altitude));
+        double moon = Math.cos(Math.toRadians(this.moon_distance));
+
+        List<Window> windows = new ArrayList<Window>(2);
+        int points = 0;
+        int first = -1;  /* of the current window */
+        int last = -1;
+        int highest = -1;
+        double max = -2.0;
+        for (int point = 0; point < this.dark.length; point++) {
+            double sin_altitude = a + b * (this.cos_lst[point] * cos_ra + this.sin_lst[point] * sin_ra);
+            boolean observable = sin_altitude >= limit && (!this.moon_up[point] ||
+                x * this.moon_x[point] + y * this.moon_y[point] + z * this.moon_z[point] <= moon);
+            if (!observable)
+                continue;
+
+            int index = this.dark[point];
+            if (first != -1 && index != last + 1) {
+                windows.add(this.window(first, last));
+                first = -1;
+            }
+            if (first == -1)
+                first = index;
+            last = index;
+            points++;
+            if (sin_altitude > max) {
+                max = sin_altitude;
+                highest = index;
+            }
+        }
+        if (first != -1)
+            windows.add(this.window(first, last));
+
+        if (points == 0)
+            return new Visibility(info, Duration.ZERO, Double.NaN, null, Collections.<Window>emptyList());
+        return new Visibility(info, this.night.step.multipliedBy(points),
+                              Math.toDegrees(Math.asin(Math.min(1.0, max))),
+                              this.night.time(highest), windows);
+    }
+
+    private Window window(int first, int last) {
+        return new Window(this.night.time(first), this.night.time(last));
+    }
+
+    /* The visibility of all the targets, in the same order, computed in
+     * parallel in the common fork-join pool */
+    public Visibility[] compute(List<TargetInformation> targets) {
+        Visibility[] visibilities = new Visibility[targets.size()];
+        IntStream.range(0, visibilities.length).parallel()
+                 .forEach(index -> visibilities[index] = this.compute(targets.get(index)));
+        return visibilities;
+    }
+
+    /* The targets observable for at least 'min_duration', best first */
+    public List<Visibility> rank(List<TargetInformation> targets) {
+        return Arrays.asList(ForkJoinPool.commonPool().invoke(new Ranking(targets, 0, targets.size())));
+    }
+
+    private class Ranking extends RecursiveTask<Visibility[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<TargetInformation> targets;
+        private final int from;
+        private final int to;
+
+        Ranking(List<TargetInformation> targets, int from, int to) {
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Visibility[] compute() {
+
+            if (this.to - this.from <= THRESHOLD) {
+                Visibility[] ranked = new Visibility[this.to - this.from];
+                int count = 0;
+                for (int index = this.from; index < this.to; index++) {
+                    Visibility visibility = VisibilityFilter.this.compute(this.targets.get(index));
+                    if (visibility.observable() &&
+                        visibility.duration.compareTo(VisibilityFilter.this.min_duration) >= 0)
+                        ranked[count++] = visibility;
+                }
+                Arrays.sort(ranked, 0, count);
+                return Arrays.copyOf(ranked, count);
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            Ranking left = new Ranking(this.targets, this.from, middle);
+            left.fork();
+            Visibility[] right = new Ranking(this.targets, middle, this.to).compute();
+            return VisibilityFilter.merge(left.join(), right);
+        }
+    }
+
+    /* Two ranked lists into one; on ties, the first list goes first */
+    static Visibility[] merge(Visibility[] first, Visibility[] second) {
+        Visibility[] merged = new Visibility[first.length + second.length];
+        int i = 0, j = 0, k = 0;
+        while (i < first.length && j < second.length)
+            merged[k++] = (second[j].compareTo(first[i]) < 0) ? second[j++] : first[i++];
+        while (i < first.length)
+            merged[k++] = first[i++];
+        while (j < second.length)
+            merged[k++] = second[j++];
+        return merged;
+    }
+
+    private static double nan_last(double value) {
+        return Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value;
+    }
+
+    /* An illustration of how VisibilityFilter might be used in real code:
+     * the targets, in the format of SIMBAD_objects, are read from the file
+     * given as first argument, and ranked for the night of the given date */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 4) {
+            System.err.println("usage: VisibilityFilter <targets> <day> <month> <year>");
+            System.exit(2);
+        }
+
+        List<String> names = new ArrayList<String>();
+        try (TargetListReader reader = TargetListReader.open(Paths.get(args[0]))) {
+            reader.forEachRemaining(names::add);
+        }
+        List<TargetInformation> targets = new ArrayList<TargetInformation>();
+        BulkResolver.Results results = new BulkResolver(new TargetResolver()).resolve(names);
+        while (results.hasNext()) {
+            Resolution resolution = results.next();
+            if (resolution.found())
+                targets.add(resolution.info);
+        }
+
+        Ephemeris night = new Staralt().ephemeris(Integer.parseInt(args[1]),
+                                                  Integer.parseInt(args[2]),
+                                                  Integer.parseInt(args[3]));
+        VisibilityFilter filter = new VisibilityFilter(night);
+        for (Visibility visibility : filter.rank(targets))
+            System.out.println(visibility);
+        System.exit(0);
+    }
+}
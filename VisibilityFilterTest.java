@@ -0,0 +1,165 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VisibilityFilterTest {
+
+    private static final Ephemeris night = new Staralt().ephemeris(15, 10, 2026);
+
+    private static List<TargetInformation> catalog(int size) {
+        Random random = new Random(1041);
+        List<TargetInformation> targets = new ArrayList<TargetInformation>();
+        for (int index = 0; index < size; index++) {
+            double dec = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            targets.add(EphemerisTest.target("T" + index, 360 * random.nextDouble(), dec));
+        }
+        return targets;
+    }
+
+    /* Meeus, Astronomical Algorithms, examples 25.a and 47.a */
+    @Test
+    public void testSunAndMoon() {
+        double[] sun = Ephemeris.sun(Instant.parse("1992-10-13T00:00:00Z").toEpochMilli());
+        assertEquals(198.38083, sun[0], 0.01);
+        assertEquals(-7.78507, sun[1], 0.01);
+        double[] moon = Ephemeris.moon(Instant.parse("1992-04-12T00:00:00Z").toEpochMilli());
+        assertEquals(134.688470, moon[0], 0.3);
+        assertEquals(13.768368, moon[1], 0.3);
+        assertEquals(0.991990, moon[2], 0.01);
+    }
+
+    /* In mid-October, at CAHA, astronomical twilight ends at about 19:00 UT
+     * and begins at about 04:50; the Moon is five days old */
+    @Test
+    public void testDarkness() {
+        VisibilityFilter astronomical = new VisibilityFilter(night);
+        VisibilityFilter nautical = new VisibilityFilter(night, VisibilityFilter.Twilight.NAUTICAL);
+        VisibilityFilter civil = new VisibilityFilter(night, VisibilityFilter.Twilight.CIVIL);
+        assertEquals(Duration.ofMinutes(595).toMinutes(), astronomical.darkness().toMinutes(), 10);
+        assertTrue(astronomical.darkness().compareTo(nautical.darkness()) < 0);
+        assertTrue(nautical.darkness().compareTo(civil.darkness()) < 0);
+        assertEquals(0.26, astronomical.illumination(), 0.05);
+    }
+
+    @Test
+    public void testVisibility() {
+        VisibilityFilter filter = new VisibilityFilter(night);
+
+        /* Polaris is always at about the latitude of the site */
+        VisibilityFilter.Visibility polaris =
+            filter.compute(EphemerisTest.target("Polaris", 37.95, 89.26));
+        assertEquals(filter.darkness(), polaris.duration);
+        assertEquals(1, polaris.windows.size());
+        assertEquals(37.2, polaris.max_altitude, 1.0);
+
+        /* Never above thirty degrees */
+        VisibilityFilter.Visibility south =
+            filter.compute(EphemerisTest.target("South", 10.0, -40.0));
+        assertFalse(south.observable());
+        assertEquals(Duration.ZERO, south.duration);
+        assertTrue(Double.isNaN(south.max_altitude));
+        assertNull(south.best);
+
+        /* Nor without coordinates */
+        assertFalse(filter.compute(new TargetInformation("Nowhere")).observable());
+
+        /* The windows add up to the duration */
+        for (VisibilityFilter.Visibility visibility : filter.compute(catalog(500))) {
+            Duration total = Duration.ZERO;
+            for (VisibilityFilter.Window window : visibility.windows)
+                total = total.plus(window.duration()).plus(night.step);
+            assertEquals(visibility.duration, total);
+            if (visibility.observable())
+                assertTrue(visibility.max_altitude >= filter.min_altitude);
+        }
+    }
+
+    /* A target next to the Moon, when it is up, is not observable */
+    @Test
+    public void testMoon() {
+        int index = 0;
+        while (night.time(index).isBefore(Instant.parse("2026-10-15T19:15:00Z")))
+            index++;
+        double[] moon = Ephemeris.moon(night.millis(index));
+        /* A fraction of a degree off */
+        TargetInformation info = EphemerisTest.target("Moon", moon[0], moon[1]);
+
+        VisibilityFilter filter = new VisibilityFilter(night);
+        filter.min_altitude = 0.0;
+        VisibilityFilter.Visibility visibility = filter.compute(info);
+        for (VisibilityFilter.Window window : visibility.windows)
+            assertTrue(window.end.isBefore(night.time(index)) || window.start.isAfter(night.time(index)));
+
+        filter.moon_distance = 0.0;
+        visibility = filter.compute(info);
+        boolean observable = false;
+        for (VisibilityFilter.Window window : visibility.windows)
+            observable |= !window.start.isAfter(night.time(index)) && !window.end.isBefore(night.time(index));
+        assertTrue(observable);
+    }
+
+    /* Ranking in parallel must be the same as sorting sequentially */
+    @Test
+    public void testRank() {
+        List<TargetInformation> targets = catalog(1041);
+        VisibilityFilter filter = new VisibilityFilter(night);
+        filter.min_duration = Duration.ofHours(2);
+
+        List<VisibilityFilter.Visibility> expected = new ArrayList<VisibilityFilter.Visibility>();
+        for (VisibilityFilter.Visibility visibility : filter.compute(targets)) {
+            if (visibility.observable() && visibility.duration.compareTo(filter.min_duration) >= 0)
+                expected.add(visibility);
+        }
+        expected.sort(null);
+
+        List<VisibilityFilter.Visibility> ranked = filter.rank(targets);
+        assertFalse(ranked.isEmpty());
+        assertEquals(expected.size(), ranked.size());
+        for (int index = 0; index < ranked.size(); index++) {
+            assertEquals(expected.get(index).info.name, ranked.get(index).info.name);
+            if (index > 0)
+                assertTrue(ranked.get(index - 1).compareTo(ranked.get(index)) <= 0);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        List<TargetInformation> targets = catalog(10);
+        VisibilityFilter filter = new VisibilityFilter(night);
+        filter.min_altitude = 0.0;
+        VisibilityFilter.Visibility[] all = filter.compute(targets);
+        VisibilityFilter.Visibility[] first = Arrays.copyOfRange(all, 0, 4);
+        VisibilityFilter.Visibility[] second = Arrays.copyOfRange(all, 4, 10);
+        Arrays.sort(first);
+        Arrays.sort(second);
+        VisibilityFilter.Visibility[] merged = VisibilityFilter.merge(first, second);
+        Arrays.sort(all);
+        assertArrayEquals(all, merged);
+    }
+}
@@ -0,0 +1,73 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* Resolving a target that is already cached, which is what most of the
+ * lookups during a night will do. The cache is filled beforehand, so no
+ * query is ever sent to SIMBAD. */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheBenchmark {
+
+    private CachingTargetResolver resolver;
+
+    @Setup
+    public void setUp() {
+        TargetResolver delegate = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        this.resolver = new CachingTargetResolver(delegate);
+        for (int index = 0; index < 1000; index++) {
+            String targetName = "HD " + (1000 + index);
+            this.resolver.cache.put(new ResolutionKey(targetName, delegate),
+                    delegate.parse(targetName, CannedResponses.TRUMPLER_37, 0));
+        }
+        this.resolver.cache.put_not_found(new ResolutionKey("3fed6a57652ea9b7", delegate));
+    }
+
+    @Benchmark
+    public TargetInformation hit() throws SIMBADQueryException, TargetNotFoundException {
+        return this.resolver.submit("HD 1500");
+    }
+
+    /* A different spelling of the name, which must be normalized */
+    @Benchmark
+    public TargetInformation hit_normalized() throws SIMBADQueryException, TargetNotFoundException {
+        return this.resolver.submit("  hd   1500 ");
+    }
+
+    @Benchmark
+    public boolean negative_hit() throws SIMBADQueryException {
+        try {
+            this.resolver.submit("3fed6a57652ea9b7");
+            return true;
+        } catch (TargetNotFoundException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.nio.charset.StandardCharsets;
+
+/* Outputs of SIMBAD, as returned for the scripts of SIMBADQuerier, so that
+ * the benchmarks measure our own code and not the network */
+
+public final class CannedResponses {
+
+    private CannedResponses() {}
+
+    /* Trumpler 37, with all the data items known */
+    public static final byte[] TRUMPLER_37 = bytes(
+            "324.5362\n57.4467\nOpen (galactic) Cluster\n-2.30\n-3.81\n");
+
+    /* M101, whose proper motions SIMBAD does not know */
+    public static final byte[] M101 = bytes(
+            "210.80212\n54.34808\nInteracting Galaxies\n~\n~\n");
+
+    public static final byte[] NOT_FOUND = bytes(
+            "::error:::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::\n\n" +
+            "[3] Identifier not found in the database : NAME 3FED6A57652EA9B7\n");
+
+    /* A batch of 'n' objects, one in ten of which was not found */
+    public static byte[] batch(int n) {
+        StringBuilder errors = new StringBuilder();
+        StringBuilder objects = new StringBuilder();
+        for (int index = 0; index < n; index++) {
+            if (index % 10 == 9) {
+                errors.append("[" + (SIMBADQuerier._batchFirstQueryLine + index) +
+                              "] Identifier not found in the database : NAME T" + index + "\n\n");
+            } else {
+                objects.append(SIMBADQuerier._batchObjectStart + "\n");
+                objects.append(new String(index % 2 == 0 ? TRUMPLER_37 : M101, StandardCharsets.UTF_8));
+            }
+        }
+        if (errors.length() == 0)
+            return bytes(objects.toString());
+        return bytes("::error::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::\n\n" +
+                     errors + "::data:::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::\n\n" +
+                     objects);
+    }
+
+    private static byte[] bytes(String output) {
+        return output.getBytes(StandardCharsets.UTF_8);
+    }
+}
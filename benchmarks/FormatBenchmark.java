@@ -0,0 +1,89 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* The conversion of coordinates to sexagesimal and their formatting, and
+ * the string representation of TargetInformation */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    private double ra_deg = 324.5362;
+    private double dec_deg = -0.4467;
+    private char[] chars = new char[SexagesimalFormat.RA_LENGTH];
+    private StringBuilder row = new StringBuilder(64);
+    private TargetInformation info;
+
+    @Setup
+    public void setUp() {
+        this.info = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000)
+                .parse("Trumpler 37", CannedResponses.TRUMPLER_37, 0);
+    }
+
+    @Benchmark
+    public double[] DD_to_HMS() {
+        return SIMBADQuerier.DD_to_HMS(this.ra_deg);
+    }
+
+    @Benchmark
+    public double[] DD_to_DMS() {
+        return SIMBADQuerier.DD_to_DMS(this.dec_deg);
+    }
+
+    @Benchmark
+    public char[] format_ra_chars() {
+        SexagesimalFormat.format_ra(this.ra_deg, this.chars, 0);
+        return this.chars;
+    }
+
+    @Benchmark
+    public StringBuilder append_dec() throws java.io.IOException {
+        this.row.setLength(0);
+        SexagesimalFormat.append_dec(this.row, this.dec_deg);
+        return this.row;
+    }
+
+    @Benchmark
+    public String format_ra_string() {
+        return TargetResolver.format_ra(this.ra_deg);
+    }
+
+    /* How the right ascension used to be formatted */
+    @Benchmark
+    public String legacy_format_ra() {
+        double[] coords = SIMBADQuerier.DD_to_HMS(this.ra_deg);
+        return String.format("%02d %02d %05.2f", (int) coords[0], (int) coords[1], coords[2]);
+    }
+
+    @Benchmark
+    public String target_information_toString() {
+        return this.info.toString();
+    }
+}
@@ -0,0 +1,120 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.nio.charset.StandardCharsets;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* The parsing of the output of SIMBAD into TargetInformation instances, as
+ * done by TargetResolver, compared to how it used to be done: decoding the
+ * output into a String, splitting it with a StringTokenizer and catching the
+ * NumberFormatException thrown for each missing value. Run with '-prof gc'
+ * to also compare the allocation rates. */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParserBenchmark {
+
+    private TargetResolver resolver;
+    private byte[] batch;
+
+    @Setup
+    public void setUp() {
+        this.resolver = new TargetResolver(ReferenceSystem.ICRS, 2000, 2000);
+        this.batch = CannedResponses.batch(TargetResolver.BATCH_SIZE);
+    }
+
+    @Benchmark
+    public TargetInformation complete() {
+        return this.resolver.parse("Trumpler 37", CannedResponses.TRUMPLER_37, 0);
+    }
+
+    @Benchmark
+    public TargetInformation missing_values() {
+        return this.resolver.parse("M101", CannedResponses.M101, 0);
+    }
+
+    @Benchmark
+    public boolean not_found() {
+        return SIMBADOutputParser.is_error(CannedResponses.NOT_FOUND);
+    }
+
+    @Benchmark
+    public void batch(Blackhole blackhole) {
+        SIMBADOutputParser.Batch batch = SIMBADOutputParser.split_batch(this.batch);
+        for (int offset : batch.objects)
+            blackhole.consume(this.resolver.parse("HD 1000", this.batch, offset));
+    }
+
+    @Benchmark
+    public TargetInformation legacy_complete() {
+        return ParserBenchmark.legacy_parse("Trumpler 37", CannedResponses.TRUMPLER_37);
+    }
+
+    @Benchmark
+    public TargetInformation legacy_missing_values() {
+        return ParserBenchmark.legacy_parse("M101", CannedResponses.M101);
+    }
+
+    /* The parser as it was before SIMBADOutputParser */
+    private static TargetInformation legacy_parse(String targetName, byte[] output) {
+
+        String simbadResult = new String(output, StandardCharsets.UTF_8);
+        TargetInformation info = new TargetInformation(targetName);
+        StringTokenizer lineTokenizer = new StringTokenizer(simbadResult, "\n");
+
+        try {
+            info.ra_deg = Double.parseDouble(lineTokenizer.nextToken());
+        } catch (NumberFormatException ex) {}
+        if (info.ra_deg != null) {
+            double[] coords = SIMBADQuerier.DD_to_HMS(info.ra_deg);
+            info.ra = String.format("%02d %02d %05.2f", (int) coords[0], (int) coords[1], coords[2]);
+        }
+
+        try {
+            info.dec_deg = Double.parseDouble(lineTokenizer.nextToken());
+        } catch (NumberFormatException ex) {}
+        if (info.dec_deg != null) {
+            double[] coords = SIMBADQuerier.DD_to_DMS(info.dec_deg);
+            info.dec = String.format("%+03d %02d %4.1f", (int) coords[0], (int) coords[1], coords[2]);
+        }
+
+        info.object_type = lineTokenizer.nextToken();
+
+        try {
+            info.pm_ra = Double.parseDouble(lineTokenizer.nextToken());
+        } catch (NumberFormatException ex) {}
+
+        try {
+            info.pm_dec = Double.parseDouble(lineTokenizer.nextToken());
+        } catch (NumberFormatException ex) {}
+
+        return info;
+    }
+}
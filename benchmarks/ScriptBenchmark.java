@@ -0,0 +1,59 @@
+/* SIMBAD-based target resolver for the PANIC Observation Tool
+ *
+ * Copyright (c) 2011 Victor Terron. All rights reserved.
+ * Institute of Astrophysics of Andalusia, IAA-CSIC
+ *
+ * This is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ **********************************************************************/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/* The construction of the SIMBAD scripts, for one and for many targets */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScriptBenchmark {
+
+    private SIMBADQuerier querier;
+    private List<String> targetNames;
+
+    @Setup
+    public void setUp() {
+        this.querier = new SIMBADQuerier("Trumpler 37", ReferenceSystem.FK5, 2012, 2000);
+        this.targetNames = new ArrayList<String>(TargetResolver.BATCH_SIZE);
+        for (int index = 0; index < TargetResolver.BATCH_SIZE; index++)
+            this.targetNames.add("HD " + (1000 + index));
+    }
+
+    @Benchmark
+    public String single() {
+        return this.querier.build_script("Trumpler 37");
+    }
+
+    @Benchmark
+    public String batch() {
+        return this.querier.build_script(this.targetNames);
+    }
+}